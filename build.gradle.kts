@@ -6,6 +6,16 @@ plugins {
 group = "de.dasbabypixel"
 version = "1.0"
 
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
 publishing {
     publications {
         register<MavenPublication>("maven") {
@@ -20,10 +30,43 @@ publishing {
     }
 }
 
+// Classes that need a newer JDK live in src/main/java<version> and end up in META-INF/versions/<version>
+val multiReleaseVersions = listOf(11, 21)
+val multiReleaseSourceSets = multiReleaseVersions.associateWith { version ->
+    sourceSets.create("java$version") {
+        java.setSrcDirs(listOf("src/main/java$version"))
+        compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    }
+}
+
 tasks {
     compileJava {
         options.encoding = "UTF-8"
     }
+    compileTestJava {
+        options.encoding = "UTF-8"
+    }
+    test {
+        useJUnitPlatform()
+    }
+    multiReleaseSourceSets.forEach { (version, sourceSet) ->
+        named<JavaCompile>(sourceSet.compileJavaTaskName) {
+            options.encoding = "UTF-8"
+            options.release = version
+            javaCompiler = javaToolchains.compilerFor {
+                languageVersion = JavaLanguageVersion.of(version)
+                vendor = JvmVendorSpec.ADOPTIUM
+            }
+        }
+    }
+    jar {
+        manifest.attributes("Multi-Release" to "true")
+        multiReleaseSourceSets.forEach { (version, sourceSet) ->
+            into("META-INF/versions/$version") {
+                from(sourceSet.output)
+            }
+        }
+    }
 }
 
 java {
@@ -3,6 +3,18 @@ package de.dasbabypixel.util;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<NodeDataType, WayDataType>> {
 
@@ -14,6 +26,37 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
         return new ArrayGraph<>();
     }
 
+    /**
+     * @return a linked graph that stores every connection once and lets both endpoints use it
+     * @see #undirected()
+     */
+    static <NodeDataType, WayDataType> Graph<NodeDataType, WayDataType> undirectedLinkedGraph() {
+        return new LinkedGraph<>(true);
+    }
+
+    /**
+     * @return a builder that accepts nodes and connections from multiple threads at once
+     * @see ConcurrentBuilder
+     */
+    static <NodeDataType, WayDataType> ConcurrentBuilder<NodeDataType, WayDataType> concurrentBuilder() {
+        return new ConcurrentBuilder<>(false);
+    }
+
+    /**
+     * @return a builder like {@link #concurrentBuilder()} for an {@link #undirectedLinkedGraph() undirected} graph
+     */
+    static <NodeDataType, WayDataType> ConcurrentBuilder<NodeDataType, WayDataType> undirectedConcurrentBuilder() {
+        return new ConcurrentBuilder<>(true);
+    }
+
+    /**
+     * @return a read-only copy of the graph with compressed connections, node ids stay the same
+     * @see CompressedGraph
+     */
+    static <NodeDataType, WayDataType> CompressedGraph<NodeDataType, WayDataType> compress(Graph<NodeDataType, WayDataType> graph) {
+        return CompressedGraph.of(graph);
+    }
+
     @Override
     default Iterator<Node<NodeDataType, WayDataType>> iterator() {
         return nodes().iterator();
@@ -31,6 +74,153 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
 
     void removeConnection(Node.Connection<NodeDataType, WayDataType> connection);
 
+    /**
+     * Collects the modifications the action makes on the batch and applies them in one step when it returns. The result
+     * is the same as making the calls one after another, but connections are grouped per node, storage is resized and
+     * compacted once and the {@link #version() version} changes once. If the action or the validation of the batch
+     * throws, the graph is not modified.
+     * <p>
+     * Graphs without support for batches make the calls one after another.
+     */
+    default void batch(Consumer<? super Batch<NodeDataType, WayDataType>> action) {
+        Util.MutationBatch<NodeDataType, WayDataType> batch = new Util.MutationBatch<>(data -> new Util.PendingNode<>(this, data));
+        action.accept(batch);
+        batch.applyInOrder(this);
+    }
+
+    /**
+     * Nodes have dense ids from {@code 0} to {@code nodes().size() - 1}, see {@link Node#id()}.
+     * Ids of other nodes may shift when a node is removed.
+     *
+     * The default implementation walks {@link #nodes()}, assuming it iterates in id order. The built-in graphs
+     * look the node up directly.
+     *
+     * @return the node with the given id
+     * @throws IndexOutOfBoundsException if there is no node with the given id
+     * @see FilteredGraph#node(int)
+     */
+    default Node<NodeDataType, WayDataType> node(int id) {
+        if (id >= 0) {
+            int current = 0;
+            for (Node<NodeDataType, WayDataType> node : nodes()) {
+                if (current++ == id) return node;
+            }
+        }
+        throw new IndexOutOfBoundsException("Node " + id);
+    }
+
+    /**
+     * All node ids are below this bound, use it to size arrays indexed by node id. It is {@code nodes().size()} unless
+     * the graph is a {@link #view(BitSet, EdgeFilter) view} that hides nodes.
+     */
+    default int nodeIdBound() {
+        return nodes().size();
+    }
+
+    /**
+     * Creates a read-only view that only contains the nodes in the mask and the connections the filter accepts.
+     * Nothing is copied, searches and iteration on the view skip the hidden parts.
+     *
+     * @param nodeMask   the ids of the visible nodes, or null for all nodes
+     * @param edgeFilter decides which connections between visible nodes are visible, or null for all connections
+     */
+    default FilteredGraph<NodeDataType, WayDataType> view(BitSet nodeMask, EdgeFilter<? super WayDataType> edgeFilter) {
+        return new FilteredGraph<>(this, nodeMask, edgeFilter);
+    }
+
+    default void forEachNode(IntConsumer action) {
+        int count = nodes().size();
+        for (int node = 0; node < count; node++) {
+            action.accept(node);
+        }
+    }
+
+    /**
+     * Calls the action with the id of the target node and the way of every connection of the given node.
+     * Implementations do this without allocating.
+     */
+    default void forEachNeighbor(int node, IntObjConsumer<? super WayDataType> action) {
+        for (Node.Connection<NodeDataType, WayDataType> connection : node(node).connections()) {
+            action.accept(connection.to().id(), connection.way());
+        }
+    }
+
+    /**
+     * Calls the visitor for every connection, grouped by the node they start at in node id order.
+     * Connections of an {@link #undirected() undirected} graph are visited once, from the endpoint with the lower id.
+     */
+    default void forEachEdge(EdgeVisitor<? super WayDataType> visitor) {
+        forEachNode(node -> forEachNeighbor(node, (to, way) -> visitor.visit(node, to, way)));
+    }
+
+    /**
+     * In an undirected graph every connection is stored once and shows up in the {@link Node#connections()} of both
+     * endpoints, each time with {@link Node.Connection#from()} being the node that was asked.
+     * {@link #connections()} and {@link #forEachEdge(EdgeVisitor)} contain every connection once.
+     */
+    default boolean undirected() {
+        return false;
+    }
+
+    /**
+     * Renumbers the nodes, the node with the new id {@code n} is the one that had the id {@code order.oldId(n)}.
+     * Node and connection instances stay valid.
+     *
+     * @throws UnsupportedOperationException if the graph can not be reordered
+     */
+    default void reorder(NodeOrder order) {
+        throw new UnsupportedOperationException("This graph can not be reordered");
+    }
+
+    /**
+     * Lookups are O(1) once {@link #indexData()} was called on a graph that supports it, otherwise the nodes are scanned.
+     *
+     * @return the node with the lowest id that has the given data, or null if there is none
+     */
+    default Node<NodeDataType, WayDataType> findNode(NodeDataType data) {
+        for (Node<NodeDataType, WayDataType> node : nodes()) {
+            if (Objects.equals(node.data(), data)) return node;
+        }
+        return null;
+    }
+
+    /**
+     * Builds a hash index over the node data for {@link #findNode(Object)} and keeps it up to date on every modification
+     * from now on. Lookups only read the index, so concurrent lookups are safe as long as nobody modifies the graph.
+     * Graphs that do not support it ignore the call.
+     */
+    default void indexData() {
+    }
+
+    /**
+     * Creates an index over a key derived from the node data. It is kept up to date until it is {@link NodeIndex#close() closed}.
+     *
+     * @throws UnsupportedOperationException if the graph does not support indexes
+     */
+    default <K> NodeIndex<NodeDataType, WayDataType, K> index(Function<? super NodeDataType, ? extends K> key) {
+        throw new UnsupportedOperationException("This graph does not support indexes");
+    }
+
+    /**
+     * The version changes with every modification of nodes or connections, so derived data can be cached per version.
+     *
+     * @return the current version, or {@code -1} if this graph does not track modifications
+     */
+    default long version() {
+        return -1;
+    }
+
+    /**
+     * The result is cached until the {@link #version() version} changes.
+     *
+     * @return an order where every connection leads from a lower to a higher new id
+     * @throws CycleException if the graph is not acyclic
+     * @see NodeOrder#topological(Graph)
+     */
+    default NodeOrder topologicalOrder() {
+        return NodeOrder.topological(this);
+    }
+
     default void writeAdjacencyMatrix(PrintStream writer) {
         List<Node<NodeDataType, WayDataType>> nodes = new ArrayList<>(nodes());
         int[] sizes = new int[nodes.size()];
@@ -90,15 +280,70 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
         return data.algorithm().search(this, data.data());
     }
 
+    /**
+     * Runs the search on the default search executor. That is a virtual thread per search on Java 21+
+     * and the common {@link java.util.concurrent.ForkJoinPool} otherwise.
+     *
+     * @see #searchAsync(Algorithm.AlgorithmWithData, Executor, long, TimeUnit)
+     */
+    default <AlgorithmData, CalculatedData> CompletableFuture<CalculatedData> searchAsync(Algorithm.AlgorithmWithData<AlgorithmData, NodeDataType, WayDataType, CalculatedData> data) {
+        return searchAsync(data, SearchExecutors.defaultExecutor());
+    }
+
+    /**
+     * @see #searchAsync(Algorithm.AlgorithmWithData, Executor, long, TimeUnit)
+     */
+    default <AlgorithmData, CalculatedData> CompletableFuture<CalculatedData> searchAsync(Algorithm.AlgorithmWithData<AlgorithmData, NodeDataType, WayDataType, CalculatedData> data, Executor executor) {
+        return Algorithm.SearchControl.supplyAsync(() -> search(data), executor, -1);
+    }
+
+    /**
+     * Runs the search on the given executor. The search stops at its next {@link Algorithm.SearchControl#checkpoint() checkpoint}
+     * once the returned future is completed from outside, for example by cancelling it, or once the timeout
+     * (measured from this call) has elapsed. In the latter case the future completes with a {@link TimeoutException}.
+     */
+    default <AlgorithmData, CalculatedData> CompletableFuture<CalculatedData> searchAsync(Algorithm.AlgorithmWithData<AlgorithmData, NodeDataType, WayDataType, CalculatedData> data, Executor executor, long timeout, TimeUnit unit) {
+        return Algorithm.SearchControl.supplyAsync(() -> search(data), executor, Math.max(0, unit.toNanos(timeout)));
+    }
+
     interface Node<NodeDataType, WayDataType> {
         List<Connection<NodeDataType, WayDataType>> connections();
 
+        /**
+         * The default implementation scans all {@link Graph#connections() connections} of the graph, the built-in
+         * graphs keep the origins of every node.
+         *
+         * @return the connections that lead to this node
+         */
+        default List<Connection<NodeDataType, WayDataType>> origins() {
+            List<Connection<NodeDataType, WayDataType>> origins = new ArrayList<>();
+            for (Connection<NodeDataType, WayDataType> connection : graph().connections()) {
+                if (connection.to().equals(this)) origins.add(connection);
+            }
+            return origins;
+        }
+
         Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way);
 
         void removeConnection(Connection<NodeDataType, WayDataType> connection);
 
         NodeDataType data();
 
+        /**
+         * The default implementation returns the position of this node in {@link Graph#nodes()}.
+         *
+         * @return the dense id of this node, or -1 if the node was removed
+         * @see Graph#node(int)
+         */
+        default int id() {
+            int id = 0;
+            for (Node<NodeDataType, WayDataType> node : graph().nodes()) {
+                if (node.equals(this)) return id;
+                id++;
+            }
+            return -1;
+        }
+
         Graph<NodeDataType, WayDataType> graph();
 
         void remove();
@@ -119,6 +364,400 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
     }
 
 
+    /**
+     * @see Graph#index(Function)
+     */
+    interface NodeIndex<NodeDataType, WayDataType, K> extends AutoCloseable {
+        /**
+         * @return the nodes whose data maps to the given key
+         */
+        List<Node<NodeDataType, WayDataType>> find(K key);
+
+        /**
+         * @return one of the nodes whose data maps to the given key, or null if there is none
+         */
+        default Node<NodeDataType, WayDataType> findFirst(K key) {
+            List<Node<NodeDataType, WayDataType>> nodes = find(key);
+            return nodes.isEmpty() ? null : nodes.get(0);
+        }
+
+        /**
+         * Stops maintaining this index, the graph no longer pays for it.
+         */
+        @Override
+        void close();
+    }
+
+
+    /**
+     * Modifications collected by {@link Graph#batch(Consumer)}, nothing is visible in the graph before the batch is applied.
+     */
+    interface Batch<NodeDataType, WayDataType> {
+        /**
+         * @return the node that will be added, it can be used as an endpoint in this batch right away and has the id -1
+         * until the batch is applied
+         */
+        Node<NodeDataType, WayDataType> newNode(NodeDataType data);
+
+        /**
+         * Connections of the node that were added earlier in this batch are dropped with it.
+         */
+        void removeNode(Node<NodeDataType, WayDataType> node);
+
+        /**
+         * @throws IllegalArgumentException if one of the nodes was removed earlier in this batch
+         */
+        void newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way);
+
+        /**
+         * Removing the same connection twice removes it once.
+         *
+         * @throws IllegalStateException if one of the nodes of the connection was removed earlier in this batch
+         */
+        void removeConnection(Node.Connection<NodeDataType, WayDataType> connection);
+    }
+
+
+    @FunctionalInterface
+    interface IntObjConsumer<T> {
+        void accept(int value, T t);
+    }
+
+
+    @FunctionalInterface
+    interface EdgeFilter<WayDataType> {
+        boolean accept(int from, int to, WayDataType way);
+    }
+
+
+    @FunctionalInterface
+    interface EdgeVisitor<WayDataType> {
+        void visit(int from, int to, WayDataType way);
+    }
+
+
+    /**
+     * A permutation of the node ids of a graph, see {@link Graph#reorder(NodeOrder)}. Nodes that are close in the
+     * new order are close in memory, so an order that keeps neighbors close reduces cache misses during searches.
+     * Orders computed on a {@link Graph#view(BitSet, EdgeFilter) view} cover all ids, the hidden nodes come last.
+     */
+    final class NodeOrder {
+        private final int[] newToOld;
+        private final int[] oldToNew;
+
+        /**
+         * @param newToOld the old id for every new id
+         */
+        public NodeOrder(int[] newToOld) {
+            this.newToOld = newToOld.clone();
+            this.oldToNew = new int[newToOld.length];
+            Arrays.fill(oldToNew, -1);
+            for (int newId = 0; newId < newToOld.length; newId++) {
+                int oldId = newToOld[newId];
+                if (oldId < 0 || oldId >= newToOld.length || oldToNew[oldId] != -1) {
+                    throw new IllegalArgumentException("Not a permutation, invalid or duplicate id " + oldId);
+                }
+                oldToNew[oldId] = newId;
+            }
+        }
+
+        /**
+         * Cuthill-McKee order: breadth first search from a node of minimal degree, visiting neighbors by increasing
+         * degree. Connections are followed in both directions, every component gets its own search.
+         */
+        public static NodeOrder cuthillMcKee(Graph<?, ?> graph) {
+            int[][] neighbors = undirectedNeighbors(graph);
+            int count = neighbors.length;
+            int[] degrees = new int[count];
+            for (int node = 0; node < count; node++) {
+                degrees[node] = neighbors[node].length;
+            }
+            int[] byDegree = visibleNodes(graph);
+            sortByKey(byDegree, degrees);
+            for (int[] list : neighbors) {
+                sortByKey(list, degrees);
+            }
+            int[] order = new int[count];
+            boolean[] visited = new boolean[count];
+            int head = 0;
+            int tail = 0;
+            for (int root : byDegree) {
+                if (visited[root]) continue;
+                visited[root] = true;
+                order[tail++] = root;
+                while (head < tail) {
+                    for (int neighbor : neighbors[order[head++]]) {
+                        if (visited[neighbor]) continue;
+                        visited[neighbor] = true;
+                        order[tail++] = neighbor;
+                    }
+                }
+            }
+            return completed(order, tail);
+        }
+
+        /**
+         * The reversed {@link #cuthillMcKee(Graph) Cuthill-McKee order}, which usually has a smaller profile.
+         */
+        public static NodeOrder reverseCuthillMcKee(Graph<?, ?> graph) {
+            int[] order = cuthillMcKee(graph).newToOld;
+            // Hidden nodes of a view stay at the end
+            for (int i = 0, j = graph.nodes().size() - 1; i < j; i++, j--) {
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            return new NodeOrder(order);
+        }
+
+        /**
+         * Nodes with the most connections (in both directions) first, so the hot nodes share cache lines.
+         */
+        public static NodeOrder degreeSorted(Graph<?, ?> graph) {
+            int[] degrees = new int[graph.nodeIdBound()];
+            graph.forEachEdge((from, to, way) -> {
+                degrees[from]--;
+                degrees[to]--;
+            });
+            int[] nodes = visibleNodes(graph);
+            sortByKey(nodes, degrees);
+            return completed(Arrays.copyOf(nodes, degrees.length), nodes.length);
+        }
+
+        /**
+         * Orders the nodes by a key of their data, for example the position on a space filling curve.
+         * Ties keep the current order.
+         *
+         * @see #zOrder(Graph, ToIntFunction, ToIntFunction)
+         */
+        public static <NodeDataType> NodeOrder byKey(Graph<NodeDataType, ?> graph, ToLongFunction<? super NodeDataType> key) {
+            int[] nodes = visibleNodes(graph);
+            long[] keys = new long[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                keys[i] = key.applyAsLong(graph.node(nodes[i]).data());
+            }
+            // Replace the keys by their rank among the distinct keys, so they fit next to the id in a long
+            long[] distinct = keys.clone();
+            Arrays.sort(distinct);
+            int distinctCount = 0;
+            for (int i = 0; i < distinct.length; i++) {
+                if (i == 0 || distinct[i] != distinct[distinctCount - 1]) distinct[distinctCount++] = distinct[i];
+            }
+            int[] ranks = new int[graph.nodeIdBound()];
+            for (int i = 0; i < nodes.length; i++) {
+                ranks[nodes[i]] = Arrays.binarySearch(distinct, 0, distinctCount, keys[i]);
+            }
+            sortByKey(nodes, ranks);
+            return completed(Arrays.copyOf(nodes, ranks.length), nodes.length);
+        }
+
+        /**
+         * Orders the nodes along a Z-order (Morton) curve over the given coordinates.
+         */
+        public static <NodeDataType> NodeOrder zOrder(Graph<NodeDataType, ?> graph, ToIntFunction<? super NodeDataType> x, ToIntFunction<? super NodeDataType> y) {
+            // Flip the sign bits so the signed comparison of byKey orders like the unsigned curve position
+            return byKey(graph, data -> (interleave(x.applyAsInt(data) ^ Integer.MIN_VALUE) | interleave(y.applyAsInt(data) ^ Integer.MIN_VALUE) << 1) ^ Long.MIN_VALUE);
+        }
+
+        /**
+         * Kahn's algorithm: nodes without remaining incoming connections are emitted first. Runs in O(V+E) without recursion.
+         *
+         * @throws CycleException if the graph is not acyclic
+         * @see Graph#topologicalOrder()
+         */
+        public static NodeOrder topological(Graph<?, ?> graph) {
+            if (graph.undirected() && !graph.connections().isEmpty()) {
+                Node.Connection<?, ?> connection = graph.connections().iterator().next();
+                throw new CycleException(Arrays.asList(connection.from(), connection.to()));
+            }
+            int count = graph.nodeIdBound();
+            int[] offsets = new int[count + 1];
+            int[] inDegrees = new int[count];
+            graph.forEachEdge((from, to, way) -> {
+                offsets[from + 1]++;
+                inDegrees[to]++;
+            });
+            for (int node = 0; node < count; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] targets = new int[offsets[count]];
+            int[] sizes = new int[count];
+            graph.forEachEdge((from, to, way) -> targets[offsets[from] + sizes[from]++] = to);
+            int[] order = new int[count];
+            int tail = 0;
+            for (int node = 0; node < count; node++) {
+                if (inDegrees[node] == 0) order[tail++] = node;
+            }
+            for (int head = 0; head < tail; head++) {
+                int node = order[head];
+                for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                    if (--inDegrees[targets[i]] == 0) order[tail++] = targets[i];
+                }
+            }
+            if (tail < count) throw new CycleException(findCycle(graph, inDegrees));
+            return new NodeOrder(order);
+        }
+
+        /**
+         * Every node Kahn's algorithm could not emit has a predecessor that was not emitted either.
+         * Following those predecessors backwards has to run into a cycle.
+         */
+        private static List<Node<?, ?>> findCycle(Graph<?, ?> graph, int[] inDegrees) {
+            int[] predecessors = new int[inDegrees.length];
+            Arrays.fill(predecessors, -1);
+            graph.forEachEdge((from, to, way) -> {
+                if (inDegrees[from] > 0 && inDegrees[to] > 0) predecessors[to] = from;
+            });
+            int node = 0;
+            while (inDegrees[node] == 0) node++;
+            boolean[] visited = new boolean[inDegrees.length];
+            while (!visited[node]) {
+                visited[node] = true;
+                node = predecessors[node];
+            }
+            List<Node<?, ?>> cycle = new ArrayList<>();
+            int start = node;
+            do {
+                cycle.add(graph.node(node));
+                node = predecessors[node];
+            } while (node != start);
+            Collections.reverse(cycle);
+            return cycle;
+        }
+
+        /**
+         * Spreads the 32 bits of the value to the even bits of a long.
+         */
+        private static long interleave(int value) {
+            long bits = value & 0xFFFFFFFFL;
+            bits = (bits | bits << 16) & 0x0000FFFF0000FFFFL;
+            bits = (bits | bits << 8) & 0x00FF00FF00FF00FFL;
+            bits = (bits | bits << 4) & 0x0F0F0F0F0F0F0F0FL;
+            bits = (bits | bits << 2) & 0x3333333333333333L;
+            bits = (bits | bits << 1) & 0x5555555555555555L;
+            return bits;
+        }
+
+        private static int[][] undirectedNeighbors(Graph<?, ?> graph) {
+            int count = graph.nodeIdBound();
+            int[] degrees = new int[count];
+            graph.forEachEdge((from, to, way) -> {
+                degrees[from]++;
+                if (from != to) degrees[to]++;
+            });
+            int[][] neighbors = new int[count][];
+            for (int node = 0; node < count; node++) {
+                neighbors[node] = new int[degrees[node]];
+            }
+            int[] sizes = new int[count];
+            graph.forEachEdge((from, to, way) -> {
+                neighbors[from][sizes[from]++] = to;
+                if (from != to) neighbors[to][sizes[to]++] = from;
+            });
+            return neighbors;
+        }
+
+        private static int[] visibleNodes(Graph<?, ?> graph) {
+            BitSet visible = new BitSet(graph.nodeIdBound());
+            graph.forEachNode(visible::set);
+            return visible.stream().toArray();
+        }
+
+        /**
+         * Views hide some ids, they are appended in id order so the order is a permutation of all ids of the graph.
+         *
+         * @param filled the number of ids already in the order
+         */
+        private static NodeOrder completed(int[] order, int filled) {
+            if (filled < order.length) {
+                boolean[] placed = new boolean[order.length];
+                for (int i = 0; i < filled; i++) {
+                    placed[order[i]] = true;
+                }
+                for (int node = 0; node < order.length; node++) {
+                    if (!placed[node]) order[filled++] = node;
+                }
+            }
+            return new NodeOrder(order);
+        }
+
+        /**
+         * Sorts the ids in place by their key, equal keys by id. Key and id are packed into one long, so a primitive
+         * sort does the work in O(n log n) without boxing.
+         */
+        private static void sortByKey(int[] ids, int[] keys) {
+            if (ids.length < 2) return;
+            long[] packed = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                packed[i] = (long) keys[ids[i]] << 32 | ids[i];
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (int) packed[i];
+            }
+        }
+
+        public int size() {
+            return newToOld.length;
+        }
+
+        public int newId(int oldId) {
+            return oldToNew[oldId];
+        }
+
+        public int oldId(int newId) {
+            return newToOld[newId];
+        }
+
+        /**
+         * @return the old id for every new id
+         */
+        public int[] newToOld() {
+            return newToOld.clone();
+        }
+
+        /**
+         * @return the new id for every old id
+         */
+        public int[] oldToNew() {
+            return oldToNew.clone();
+        }
+
+        /**
+         * @return the order that undoes this one
+         */
+        public NodeOrder inverse() {
+            return new NodeOrder(oldToNew);
+        }
+    }
+
+
+    /**
+     * Thrown when an operation needs an acyclic graph.
+     */
+    final class CycleException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Nodes are not serializable, a deserialized exception has no cycle.
+         */
+        private final transient List<Node<?, ?>> cycle;
+
+        public CycleException(List<Node<?, ?>> cycle) {
+            super("Graph has a cycle of " + cycle.size() + " nodes");
+            this.cycle = Collections.unmodifiableList(new ArrayList<>(cycle));
+        }
+
+        /**
+         * @return the nodes of one cycle, each node has a connection to the next one and the last to the first.
+         * Empty if this exception was deserialized
+         */
+        public List<Node<?, ?>> cycle() {
+            return cycle == null ? Collections.emptyList() : cycle;
+        }
+    }
+
+
     interface PathWriter {
         PathWriter simple = new PathWriter() {
             @Override
@@ -176,17 +815,67 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
     }
 
 
+    /**
+     * Result of a search that ran out of its {@link Algorithm.SearchBudget}. The path leads to the frontier node
+     * that would have been settled next, which is the closest node the search had not settled yet.
+     */
+    interface PartialPath<NodeDataType, WayDataType> extends Path<NodeDataType, WayDataType> {
+
+        Algorithm.SearchBudget.Reason reason();
+
+        Node<NodeDataType, WayDataType> frontier();
+
+        long frontierDistance();
+    }
+
+
     interface Algorithm<AlgorithmData, NodeDataType, WayDataType, CalculatedData> {
 
+        /**
+         * Dijkstra with the given priority queue. Bucket queues only support non-negative integer weights.
+         *
+         * @throws IllegalArgumentException during the search if the queue does not fit the weights,
+         *                                  for example {@link QueueType#DIAL} without a {@link DijkstraData#withMaxWeight(long) declared max weight}
+         */
+        static <NodeDataType, WayDataType> Algorithm<DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> dijkstra(QueueType queue) {
+            if (queue == QueueType.AUTO) return dijkstra();
+            return new Util.QueueDijkstra<>(queue);
+        }
+
         static <NodeDataType, WayDataType> Algorithm<DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> dijkstra() {
             return new Algorithm<DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>>() {
                 @Override
                 public Path<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, DijkstraData<NodeDataType, WayDataType> data) {
+                    data = data.on(graph);
+                    if (data.maxWeight() != -1) return new Util.QueueDijkstra<NodeDataType, WayDataType>(QueueType.AUTO).search(graph, data);
+                    Util.Probe probe = Util.Probe.start("dijkstra", data.stats());
+                    try {
+                        Path<NodeDataType, WayDataType> path = search(data, probe == null ? null : probe.stats);
+                        if (probe != null) probe.finish(path != null && !(path instanceof PartialPath));
+                        return path;
+                    } finally {
+                        if (probe != null) probe.abort();
+                    }
+                }
+
+                private Path<NodeDataType, WayDataType> search(DijkstraData<NodeDataType, WayDataType> data, SearchStats stats) {
+                    SearchControl control = SearchControl.current();
+                    SearchBudget.Tracker budget = SearchBudget.Tracker.start(data.budget());
                     TreeSet<Node> unchecked = new TreeSet<>();
                     unchecked.add(new Node(data.startNode(), 0));
+                    if (stats != null) {
+                        stats.queuePushes++;
+                        stats.peakQueueSize = 1;
+                    }
                     Node node;
                     HashMap<Graph.Node<NodeDataType, WayDataType>, Node> usedNodes = new HashMap<>();
                     while ((node = unchecked.pollFirst()) != null) {
+                        if (control != null) control.checkpoint();
+                        if (budget != null) {
+                            SearchBudget.Reason reason = budget.settle(node.distance);
+                            if (reason != null) return node.createPartialPath(reason);
+                        }
+                        if (stats != null) stats.nodesSettled++;
                         if (node.targetNode.equals(data.targetNode())) {
                             return node.createPath();
                         }
@@ -195,17 +884,23 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
                             Node n = new Node(node, connection, to, node.distance + data
                                     .weightCalculator()
                                     .weight(connection));
+                            if (stats != null) stats.edgesRelaxed++;
                             if (usedNodes.containsKey(to)) {
                                 Node oldNode = usedNodes.get(to);
                                 if (oldNode.distance > n.distance) {
                                     unchecked.remove(oldNode);
                                     unchecked.add(n);
                                     usedNodes.put(to, n);
+                                    if (stats != null) stats.decreaseKeys++;
                                 }
                                 continue;
                             }
                             usedNodes.put(n.targetNode, n);
                             unchecked.add(n);
+                            if (stats != null) {
+                                stats.queuePushes++;
+                                stats.peakQueueSize = Math.max(stats.peakQueueSize, unchecked.size());
+                            }
                         }
                     }
                     return null;
@@ -230,6 +925,17 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
 
                     private Path<NodeDataType, WayDataType> createPath() {
                         Util.SimplePath<NodeDataType, WayDataType> path = new Util.SimplePath<>(targetNode.graph());
+                        fill(path);
+                        return path;
+                    }
+
+                    private PartialPath<NodeDataType, WayDataType> createPartialPath(SearchBudget.Reason reason) {
+                        Util.SimplePartialPath<NodeDataType, WayDataType> path = new Util.SimplePartialPath<>(targetNode.graph(), targetNode, distance, reason);
+                        fill(path);
+                        return path;
+                    }
+
+                    private void fill(Util.SimplePath<NodeDataType, WayDataType> path) {
                         Node cur = this;
                         do {
                             if (cur.previousConnection == null) {
@@ -238,7 +944,6 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
                             path.connections.add(0, cur.previousConnection);
                             cur = cur.previous;
                         } while (cur != null);
-                        return path;
                     }
 
                     @Override
@@ -266,6 +971,87 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
             };
         }
 
+        /**
+         * Yen's algorithm for the {@code k} shortest loopless paths from the start to the target node, shortest first.
+         * One backward search from the target builds a shortest path tree, which gives the first path and serves as
+         * A* heuristic for the spur searches. Removed edges and nodes are only masked, the graph is never modified.
+         * When the budget of the data runs out, the paths found so far are returned.
+         */
+        static <NodeDataType, WayDataType> Algorithm<DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, List<Path<NodeDataType, WayDataType>>> kShortestPaths(int k) {
+            return new Util.YenKShortestPaths<>(k);
+        }
+
+        /**
+         * Parallel delta-stepping single source shortest paths on the common {@link ForkJoinPool}.
+         * The bucket width is derived from the weights of the graph.
+         *
+         * @see #deltaStepping(long, ForkJoinPool)
+         */
+        static <NodeDataType, WayDataType> Algorithm<SingleSourceData<NodeDataType, WayDataType>, NodeDataType, WayDataType, long[]> deltaStepping() {
+            return deltaStepping(0, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Parallel delta-stepping single source shortest paths. Nodes are kept in buckets of width {@code delta} by
+         * their tentative distance. The light edges (weight {@code <= delta}) of a bucket are relaxed in parallel until
+         * the bucket stays empty, then the heavy edges of all nodes settled in it are relaxed once.
+         * <p>
+         * The result holds the same distances as {@link #dijkstra()}, indexed by {@link Node#id()},
+         * and {@link Long#MAX_VALUE} for unreachable nodes.
+         *
+         * @param delta the bucket width, or {@code 0} to derive it from the weights of the graph
+         * @param pool  the pool to relax the edges on
+         */
+        static <NodeDataType, WayDataType> Algorithm<SingleSourceData<NodeDataType, WayDataType>, NodeDataType, WayDataType, long[]> deltaStepping(long delta, ForkJoinPool pool) {
+            return new Util.DeltaStepping<>(delta, pool);
+        }
+
+        /**
+         * A* search that uses the triangle inequality over precomputed landmark distances as heuristic (ALT).
+         * The weight calculator of the data must match the one the landmarks were computed with.
+         */
+        static <NodeDataType, WayDataType> Algorithm<DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> alt(Landmarks<NodeDataType, WayDataType> landmarks) {
+            return new Util.AltSearch<>(landmarks);
+        }
+
+        /**
+         * Shortest path in a directed acyclic graph. Relaxes the connections in {@link Graph#topologicalOrder() topological order}
+         * in O(V+E) without a priority queue, negative weights are allowed.
+         * <p>
+         * The distance limit of a budget does not apply, the nodes are not settled in distance order.
+         *
+         * @throws CycleException if the graph is not acyclic
+         */
+        static <NodeDataType, WayDataType> Algorithm<DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> dagShortestPath() {
+            return new Util.DagPath<>(false);
+        }
+
+        /**
+         * Longest path in a directed acyclic graph, for example the critical path of a task graph.
+         * Works like {@link #dagShortestPath()}.
+         *
+         * @throws CycleException if the graph is not acyclic
+         */
+        static <NodeDataType, WayDataType> Algorithm<DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> dagLongestPath() {
+            return new Util.DagPath<>(true);
+        }
+
+        /**
+         * @see #minimumSpanningForest(ForkJoinPool)
+         */
+        static <NodeDataType, WayDataType> Algorithm<DijkstraData.WeightCalculator<NodeDataType, WayDataType>, NodeDataType, WayDataType, SpanningForest<NodeDataType, WayDataType>> minimumSpanningForest() {
+            return minimumSpanningForest(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Minimum spanning forest, connections are treated as undirected. Uses a parallel Boruvka over a concurrent
+         * union-find, small graphs use a sequential Kruskal. Ties between equal weights are broken by edge id,
+         * so the result is deterministic.
+         */
+        static <NodeDataType, WayDataType> Algorithm<DijkstraData.WeightCalculator<NodeDataType, WayDataType>, NodeDataType, WayDataType, SpanningForest<NodeDataType, WayDataType>> minimumSpanningForest(ForkJoinPool pool) {
+            return new Util.MinimumSpanningForest<>(pool);
+        }
+
         CalculatedData search(Graph<NodeDataType, WayDataType> graph, AlgorithmData data);
 
         default AlgorithmWithData<AlgorithmData, NodeDataType, WayDataType, CalculatedData> withData(AlgorithmData data) {
@@ -276,11 +1062,65 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
             private final Node<NodeDataType, WayDataType> startNode;
             private final Node<NodeDataType, WayDataType> targetNode;
             private final WeightCalculator<NodeDataType, WayDataType> weightCalculator;
+            private final SearchStats stats;
+            private final SearchBudget budget;
+            private final long maxWeight;
 
             public DijkstraData(Node<NodeDataType, WayDataType> startNode, Node<NodeDataType, WayDataType> targetNode, WeightCalculator<NodeDataType, WayDataType> weightCalculator) {
+                this(startNode, targetNode, weightCalculator, null, null, -1);
+            }
+
+            private DijkstraData(Node<NodeDataType, WayDataType> startNode, Node<NodeDataType, WayDataType> targetNode, WeightCalculator<NodeDataType, WayDataType> weightCalculator, SearchStats stats, SearchBudget budget, long maxWeight) {
                 this.startNode = startNode;
                 this.targetNode = targetNode;
                 this.weightCalculator = weightCalculator;
+                this.stats = stats;
+                this.budget = budget;
+                this.maxWeight = maxWeight;
+            }
+
+            /**
+             * @param stats the stats to fill during the search, or null to disable collection
+             * @return a copy of this data that fills the given stats
+             */
+            public DijkstraData<NodeDataType, WayDataType> withStats(SearchStats stats) {
+                return new DijkstraData<>(startNode, targetNode, weightCalculator, stats, budget, maxWeight);
+            }
+
+            /**
+             * @param budget the budget of the search, or null for an unbounded search
+             * @return a copy of this data with the given budget
+             * @see PartialPath
+             */
+            public DijkstraData<NodeDataType, WayDataType> withBudget(SearchBudget budget) {
+                return new DijkstraData<>(startNode, targetNode, weightCalculator, stats, budget, maxWeight);
+            }
+
+            /**
+             * Declares that the weight calculator only returns weights from {@code 0} to {@code maxWeight}.
+             * Lets {@link Algorithm#dijkstra()} use a bucket queue, a larger weight fails the search.
+             *
+             * @return a copy of this data with the given max weight
+             * @see QueueType
+             */
+            public DijkstraData<NodeDataType, WayDataType> withMaxWeight(long maxWeight) {
+                if (maxWeight < 0) throw new IllegalArgumentException("Max weight must not be negative: " + maxWeight);
+                return new DijkstraData<>(startNode, targetNode, weightCalculator, stats, budget, maxWeight);
+            }
+
+            public SearchStats stats() {
+                return stats;
+            }
+
+            public SearchBudget budget() {
+                return budget;
+            }
+
+            /**
+             * @return the declared max weight, or {@code -1} if none was declared
+             */
+            public long maxWeight() {
+                return maxWeight;
             }
 
             public WeightCalculator<NodeDataType, WayDataType> weightCalculator() {
@@ -295,828 +1135,5708 @@ public interface Graph<NodeDataType, WayDataType> extends Iterable<Graph.Node<No
                 return targetNode;
             }
 
+            /**
+             * @return this data with the nodes converted to nodes of the graph the search runs on
+             * @see FilteredGraph#own(Node)
+             */
+            DijkstraData<NodeDataType, WayDataType> on(Graph<NodeDataType, WayDataType> graph) {
+                if (!(graph instanceof FilteredGraph)) return this;
+                FilteredGraph<NodeDataType, WayDataType> view = (FilteredGraph<NodeDataType, WayDataType>) graph;
+                return new DijkstraData<>(view.own(startNode), view.own(targetNode), weightCalculator, stats, budget, maxWeight);
+            }
+
             public interface WeightCalculator<NodeDataType, WayDataType> {
                 long weight(Node.Connection<NodeDataType, WayDataType> connection);
             }
         }
 
 
-        class AlgorithmWithData<AlgorithmData, NodeDataType, WayDataType, CalculatedData> {
-            private final Algorithm<AlgorithmData, NodeDataType, WayDataType, CalculatedData> algorithm;
-            private final AlgorithmData data;
+        class SingleSourceData<NodeDataType, WayDataType> {
+            private final Node<NodeDataType, WayDataType> source;
+            private final DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator;
 
-            public AlgorithmWithData(Algorithm<AlgorithmData, NodeDataType, WayDataType, CalculatedData> algorithm, AlgorithmData data) {
-                this.algorithm = algorithm;
-                this.data = data;
+            public SingleSourceData(Node<NodeDataType, WayDataType> source, DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator) {
+                this.source = source;
+                this.weightCalculator = weightCalculator;
             }
 
-            public AlgorithmData data() {
-                return data;
+            public Node<NodeDataType, WayDataType> source() {
+                return source;
             }
 
-            public Algorithm<AlgorithmData, NodeDataType, WayDataType, CalculatedData> algorithm() {
-                return algorithm;
+            public DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator() {
+                return weightCalculator;
             }
-        }
-    }
 
+            /**
+             * @see DijkstraData#on(Graph)
+             */
+            SingleSourceData<NodeDataType, WayDataType> on(Graph<NodeDataType, WayDataType> graph) {
+                if (!(graph instanceof FilteredGraph)) return this;
+                return new SingleSourceData<>(((FilteredGraph<NodeDataType, WayDataType>) graph).own(source), weightCalculator);
+            }
+        }
 
-    class LinkedGraph<NodeDataType, WayDataType> implements Graph<NodeDataType, WayDataType> {
-
-        private final ArrayList<Node<NodeDataType, WayDataType>> nodes = new ArrayList<>();
 
-        @Override
-        public Collection<Node<NodeDataType, WayDataType>> nodes() {
-            return new AbstractCollection<Node<NodeDataType, WayDataType>>() {
-                @Override
-                public Iterator<Node<NodeDataType, WayDataType>> iterator() {
-                    return new Iterator<Node<NodeDataType, WayDataType>>() {
-                        private final Iterator<Node<NodeDataType, WayDataType>> it = nodes.iterator();
-                        private Node<NodeDataType, WayDataType> node;
+        /**
+         * Distances from and to a few landmark nodes, used by {@link #alt(Landmarks)} for lower bounds.
+         * Memory is {@code 2 * count} distances per node, stored as {@code int} if all distances fit.
+         * The landmarks belong to the graph as it was when they were selected, they have to be selected again after
+         * any modification of the graph, see {@link Graph#version()}.
+         */
+        final class Landmarks<NodeDataType, WayDataType> {
+            private static final int UNREACHABLE = -1;
 
-                        @Override
-                        public void remove() {
-                            LinkedNode linkedNode = (LinkedNode) node;
-                            while (!linkedNode.connections.isEmpty()) {
-                                linkedNode.connections.get(0).remove();
-                            }
-                            while (!linkedNode.origins.isEmpty()) {
-                                linkedNode.origins.get(0).remove();
-                            }
-                            it.remove();
+            private final Graph<NodeDataType, WayDataType> graph;
+            private final long version;
+            private final int nodeCount;
+            private final int[] landmarks;
+            private final int count;
+            /**
+             * Node major: the distance from landmark {@code l} to node {@code n} is at {@code n * count + l}.
+             */
+            private final int[] fromInt;
+            private final int[] toInt;
+            private final long[] fromLong;
+            private final long[] toLong;
+
+            private Landmarks(Graph<NodeDataType, WayDataType> graph, long version, int[] landmarks, long[][] from, long[][] to) {
+                this.graph = graph;
+                this.version = version;
+                this.nodeCount = graph.nodeIdBound();
+                this.landmarks = landmarks;
+                this.count = landmarks.length;
+                long max = 0;
+                for (int landmark = 0; landmark < count; landmark++) {
+                    for (int node = 0; node < nodeCount; node++) {
+                        if (from[landmark][node] != Long.MAX_VALUE) max = Math.max(max, from[landmark][node]);
+                        if (to[landmark][node] != Long.MAX_VALUE) max = Math.max(max, to[landmark][node]);
+                    }
+                }
+                if (max < Integer.MAX_VALUE) {
+                    fromInt = new int[nodeCount * count];
+                    toInt = new int[nodeCount * count];
+                    fromLong = null;
+                    toLong = null;
+                } else {
+                    fromInt = null;
+                    toInt = null;
+                    fromLong = new long[nodeCount * count];
+                    toLong = new long[nodeCount * count];
+                }
+                for (int landmark = 0; landmark < count; landmark++) {
+                    for (int node = 0; node < nodeCount; node++) {
+                        long f = from[landmark][node] == Long.MAX_VALUE ? UNREACHABLE : from[landmark][node];
+                        long t = to[landmark][node] == Long.MAX_VALUE ? UNREACHABLE : to[landmark][node];
+                        if (fromInt != null) {
+                            fromInt[node * count + landmark] = (int) f;
+                            toInt[node * count + landmark] = (int) t;
+                        } else {
+                            fromLong[node * count + landmark] = f;
+                            toLong[node * count + landmark] = t;
                         }
+                    }
+                }
+            }
 
-                        @Override
-                        public boolean hasNext() {
-                            return it.hasNext();
-                        }
+            /**
+             * @see #select(Graph, DijkstraData.WeightCalculator, int, ForkJoinPool)
+             */
+            public static <NodeDataType, WayDataType> Landmarks<NodeDataType, WayDataType> select(Graph<NodeDataType, WayDataType> graph, DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator, int count) {
+                return select(graph, weightCalculator, count, ForkJoinPool.commonPool());
+            }
 
-                        @Override
-                        public Node<NodeDataType, WayDataType> next() {
-                            return node = it.next();
+            /**
+             * Selects the landmarks greedily: every next landmark is the node farthest away from the landmarks selected
+             * so far, nodes no landmark can reach first. That needs the forward search from every landmark, the backward
+             * searches of all landmarks run in parallel afterwards.
+             *
+             * @param count the number of landmarks, more landmarks give better bounds but cost memory and query time
+             */
+            public static <NodeDataType, WayDataType> Landmarks<NodeDataType, WayDataType> select(Graph<NodeDataType, WayDataType> graph, DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator, int count, ForkJoinPool pool) {
+                if (count < 1) throw new IllegalArgumentException("count must be positive: " + count);
+                long version = graph.version();
+                Util.WeightedAdjacency<NodeDataType, WayDataType> forward = Util.WeightedAdjacency.build(graph, weightCalculator, false, pool);
+                Util.WeightedAdjacency<NodeDataType, WayDataType> backward = forward.transpose();
+                int nodeCount = forward.nodeCount;
+                // Views hide some ids, those nodes must not become landmarks
+                BitSet visible = new BitSet(nodeCount);
+                graph.forEachNode(visible::set);
+                count = Math.min(count, visible.cardinality());
+                int[] landmarks = new int[count];
+                long[][] from = new long[count][];
+                long[][] to = new long[count][];
+                long[] closest = new long[nodeCount];
+                Arrays.fill(closest, Long.MAX_VALUE);
+                long[] seed = count == 0 ? closest : forward.shortestPaths(visible.nextSetBit(0));
+                for (int landmark = 0; landmark < count; landmark++) {
+                    long[] reference = landmark == 0 ? seed : closest;
+                    int best = 0;
+                    long bestDistance = -1;
+                    for (int node = visible.nextSetBit(0); node >= 0; node = visible.nextSetBit(node + 1)) {
+                        if (reference[node] > bestDistance && !contains(landmarks, landmark, node)) {
+                            best = node;
+                            bestDistance = reference[node];
                         }
-                    };
+                    }
+                    landmarks[landmark] = best;
+                    from[landmark] = forward.shortestPaths(best);
+                    for (int node = 0; node < nodeCount; node++) {
+                        closest[node] = Math.min(closest[node], from[landmark][node]);
+                    }
                 }
-
-                @Override
-                public int size() {
-                    return nodes.size();
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+                for (int landmark = 0; landmark < count; landmark++) {
+                    int l = landmark;
+                    tasks.add(pool.submit(() -> {
+                        to[l] = backward.shortestPaths(landmarks[l]);
+                    }));
                 }
-
-                @Override
-                public String toString() {
-                    Iterator<Node<NodeDataType, WayDataType>> it = iterator();
-                    if (!it.hasNext()) return "Node$Nodes(0)[]";
-
-                    StringBuilder sb = new StringBuilder();
-                    sb.append("Node$Nodes(").append(size()).append(")[");
-                    for (; ; ) {
-                        Node<NodeDataType, WayDataType> e = it.next();
-                        sb.append(e);
-                        if (!it.hasNext()) return sb.append(']').toString();
-                        sb.append(',').append(' ');
-                    }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
                 }
-            };
-        }
+                return new Landmarks<>(graph, version, landmarks, from, to);
+            }
 
-        @Override
-        public Collection<Node.Connection<NodeDataType, WayDataType>> connections() {
-            return new Collection<Node.Connection<NodeDataType, WayDataType>>() {
-                @Override
-                public int size() {
-                    int size = 0;
-                    for (Node<NodeDataType, WayDataType> node : nodes) {
-                        size += node.connections().size();
-                    }
-                    return size;
+            private static boolean contains(int[] array, int length, int value) {
+                for (int i = 0; i < length; i++) {
+                    if (array[i] == value) return true;
                 }
+                return false;
+            }
 
-                @Override
-                public String toString() {
-                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
-                    if (!it.hasNext()) return "Node$Nodes(0)[]";
+            public Graph<NodeDataType, WayDataType> graph() {
+                return graph;
+            }
 
-                    StringBuilder sb = new StringBuilder();
-                    sb.append("Node$Nodes(").append(size()).append(")[");
-                    for (; ; ) {
-                        Node.Connection<NodeDataType, WayDataType> e = it.next();
-                        sb.append(e);
-                        if (!it.hasNext()) return sb.append(']').toString();
-                        sb.append(',').append(' ');
-                    }
-                }
+            public int count() {
+                return count;
+            }
 
-                @Override
-                public boolean isEmpty() {
-                    for (Node<NodeDataType, WayDataType> node : nodes) {
-                        if (!node.connections().isEmpty()) return false;
-                    }
-                    return true;
+            public List<Node<NodeDataType, WayDataType>> landmarks() {
+                List<Node<NodeDataType, WayDataType>> nodes = new ArrayList<>(count);
+                for (int landmark : landmarks) {
+                    nodes.add(graph.node(landmark));
                 }
+                return nodes;
+            }
 
-                @Override
-                public boolean contains(Object o) {
-                    for (Node<NodeDataType, WayDataType> node : nodes) {
-                        if (node.connections().contains(o)) return true;
+            /**
+             * @return the size of the distance tables in bytes
+             */
+            public long tableBytes() {
+                return fromInt != null ? 8L * fromInt.length : 16L * fromLong.length;
+            }
+
+            long from(int landmark, int node) {
+                return fromInt != null ? fromInt[node * count + landmark] : fromLong[node * count + landmark];
+            }
+
+            long to(int landmark, int node) {
+                return toInt != null ? toInt[node * count + landmark] : toLong[node * count + landmark];
+            }
+
+            void checkGraph(Graph<NodeDataType, WayDataType> graph) {
+                if (graph != this.graph) throw new IllegalArgumentException("Landmarks belong to another graph");
+                // Graphs that do not track modifications can only be checked for added or removed nodes
+                if (graph.version() != version || graph.nodeIdBound() != nodeCount) throw new IllegalStateException("Landmarks are outdated, the graph changed");
+            }
+
+            /**
+             * @return a lower bound for the distance between the nodes, {@link Long#MAX_VALUE} if there is no path
+             */
+            long lowerBound(int node, int target) {
+                long bound = 0;
+                for (int landmark = 0; landmark < count; landmark++) {
+                    long nodeTo = to(landmark, node);
+                    long targetTo = to(landmark, target);
+                    if (targetTo != UNREACHABLE) {
+                        // the target reaches the landmark, so a node that does not can not reach the target
+                        if (nodeTo == UNREACHABLE) return Long.MAX_VALUE;
+                        bound = Math.max(bound, nodeTo - targetTo);
+                    }
+                    long fromNode = from(landmark, node);
+                    long fromTarget = from(landmark, target);
+                    if (fromNode != UNREACHABLE && fromTarget != UNREACHABLE) {
+                        bound = Math.max(bound, fromTarget - fromNode);
                     }
-                    return false;
                 }
+                return bound;
+            }
+        }
 
-                @Override
-                public Iterator<Node.Connection<NodeDataType, WayDataType>> iterator() {
-                    return new Iterator<Node.Connection<NodeDataType, WayDataType>>() {
-                        private Iterator<Node<NodeDataType, WayDataType>> nodeIterator;
-                        private Iterator<Node.Connection<NodeDataType, WayDataType>> currentIterator;
-                        private Node.Connection<NodeDataType, WayDataType> currentConnection;
 
-                        @Override
-                        public void remove() {
-                            if (currentConnection == null) throw new IllegalStateException();
+        final class SpanningForest<NodeDataType, WayDataType> {
+            private final List<Node.Connection<NodeDataType, WayDataType>> connections;
+            private final int[] edgeIds;
+            private final long totalWeight;
+            private final int trees;
 
-                            currentIterator.remove();
-                            LinkedNode to = (LinkedNode) currentConnection.to();
-                            to.origins.remove(currentConnection);
+            SpanningForest(List<Node.Connection<NodeDataType, WayDataType>> connections, int[] edgeIds, long totalWeight, int trees) {
+                this.connections = Collections.unmodifiableList(connections);
+                this.edgeIds = edgeIds;
+                this.totalWeight = totalWeight;
+                this.trees = trees;
+            }
 
-                            currentConnection = null;
-                        }
+            public List<Node.Connection<NodeDataType, WayDataType>> connections() {
+                return connections;
+            }
 
-                        @Override
-                        public boolean hasNext() {
-                            return currentIterator() != null;
-                        }
+            /**
+             * Edge ids count the connections of all nodes in node id order, the same order {@link Graph#forEachEdge(EdgeVisitor)} visits them in.
+             *
+             * @return the ids of the chosen connections, in the same order as {@link #connections()}
+             */
+            public int[] edgeIds() {
+                return edgeIds.clone();
+            }
 
-                        @Override
-                        public Node.Connection<NodeDataType, WayDataType> next() {
-                            Iterator<Node.Connection<NodeDataType, WayDataType>> cit = currentIterator();
-                            if (cit == null) throw new NoSuchElementException();
-                            return currentConnection = cit.next();
-                        }
+            public long totalWeight() {
+                return totalWeight;
+            }
 
-                        private Iterator<Node.Connection<NodeDataType, WayDataType>> currentIterator() {
-                            do {
-                                if (currentIterator != null && currentIterator.hasNext()) return currentIterator;
-                                if (nodeIterator().hasNext()) {
-                                    Node<NodeDataType, WayDataType> node = nodeIterator().next();
-                                    currentIterator = node.connections().iterator();
-                                } else {
-                                    return null;
-                                }
-                            } while (true);
-                        }
+            /**
+             * @return the number of trees, which is the number of (weakly) connected components
+             */
+            public int trees() {
+                return trees;
+            }
 
-                        private Iterator<Node<NodeDataType, WayDataType>> nodeIterator() {
-                            if (nodeIterator == null) nodeIterator = nodes.iterator();
-                            return nodeIterator;
-                        }
-                    };
+            @Override
+            public String toString() {
+                return "SpanningForest{connections=" + connections.size() + ", totalWeight=" + totalWeight + ", trees=" + trees + '}';
+            }
+        }
+
+
+        /**
+         * Connected components, found by a union-find over {@link Graph#forEachEdge(EdgeVisitor)}. The direction of the
+         * connections is ignored, so directed graphs get their weakly connected components. Undirected graphs visit
+         * every connection once, which halves the work.
+         */
+        final class Components {
+            private final int[] labels;
+            private final int[] sizes;
+
+            private Components(int[] labels, int[] sizes) {
+                this.labels = labels;
+                this.sizes = sizes;
+            }
+
+            public static Components of(Graph<?, ?> graph) {
+                int count = graph.nodeIdBound();
+                Util.ConcurrentUnionFind sets = new Util.ConcurrentUnionFind(count);
+                graph.forEachEdge((from, to, way) -> sets.union(from, to));
+                int[] labels = new int[count];
+                Arrays.fill(labels, -1);
+                int[] byRoot = new int[count];
+                Arrays.fill(byRoot, -1);
+                int[] sizes = new int[count];
+                int[] components = new int[1];
+                graph.forEachNode(node -> {
+                    int root = sets.find(node);
+                    if (byRoot[root] == -1) byRoot[root] = components[0]++;
+                    labels[node] = byRoot[root];
+                    sizes[labels[node]]++;
+                });
+                return new Components(labels, Arrays.copyOf(sizes, components[0]));
+            }
+
+            public int count() {
+                return sizes.length;
+            }
+
+            /**
+             * Components are numbered by their node with the lowest id.
+             *
+             * @return the component of the given node, or {@code -1} if the node is hidden by a view
+             */
+            public int component(int node) {
+                return labels[node];
+            }
+
+            public int size(int component) {
+                return sizes[component];
+            }
+
+            /**
+             * @return the component of every node, indexed by node id
+             */
+            public int[] labels() {
+                return labels.clone();
+            }
+
+            @Override
+            public String toString() {
+                return "Components{count=" + sizes.length + '}';
+            }
+        }
+
+
+        /**
+         * Centrality scores over the hop distance, connections count as length {@code 1} and their ways are ignored.
+         * The graph is read into primitive arrays once, then the work is split across sources or chunks of nodes on a
+         * {@link ForkJoinPool}. Scores are indexed by node id and {@code 0} for nodes hidden by a view.
+         * <p>
+         * The graph must not be modified while a score is computed.
+         */
+        final class Centrality {
+            /**
+             * Sources are claimed in batches, so workers rarely touch the shared cursor but still balance uneven searches.
+             */
+            private static final int SOURCE_BATCH = 16;
+
+            private Centrality() {
+            }
+
+            /**
+             * @see #betweenness(Graph, ForkJoinPool)
+             */
+            public static double[] betweenness(Graph<?, ?> graph) {
+                return betweenness(graph, ForkJoinPool.commonPool());
+            }
+
+            /**
+             * Exact betweenness by Brandes' algorithm: one breadth first search from every node, then the dependencies
+             * are accumulated in reverse search order. O(VE) time, every worker of the pool keeps its own
+             * {@code 32} bytes per node. The scores are not normalized, in an undirected graph every pair of nodes is
+             * counted once.
+             */
+            public static double[] betweenness(Graph<?, ?> graph, ForkJoinPool pool) {
+                Util.Adjacency adjacency = Util.Adjacency.of(graph, pool);
+                return brandes(graph, adjacency, adjacency.nodes, 1, pool);
+            }
+
+            /**
+             * @see #sampledBetweenness(Graph, int, long, ForkJoinPool)
+             */
+            public static double[] sampledBetweenness(Graph<?, ?> graph, int samples, long seed) {
+                return sampledBetweenness(graph, samples, seed, ForkJoinPool.commonPool());
+            }
+
+            /**
+             * Estimates the {@link #betweenness(Graph, ForkJoinPool) betweenness} from the searches of {@code samples}
+             * random sources, scaled up to all nodes. The error shrinks with the square root of the samples, the
+             * ranking of the most central nodes usually settles much earlier than the scores.
+             *
+             * @param seed the same seed picks the same sources
+             * @throws IllegalArgumentException if {@code samples} is not positive
+             */
+            public static double[] sampledBetweenness(Graph<?, ?> graph, int samples, long seed, ForkJoinPool pool) {
+                if (samples < 1) throw new IllegalArgumentException("samples must be positive: " + samples);
+                Util.Adjacency adjacency = Util.Adjacency.of(graph, pool);
+                int[] nodes = adjacency.nodes;
+                if (samples >= nodes.length) return brandes(graph, adjacency, nodes, 1, pool);
+                // Partial Fisher-Yates shuffle, the first samples entries are the sources
+                int[] sources = nodes.clone();
+                Random random = new Random(seed);
+                for (int i = 0; i < samples; i++) {
+                    int j = i + random.nextInt(sources.length - i);
+                    int source = sources[j];
+                    sources[j] = sources[i];
+                    sources[i] = source;
                 }
+                return brandes(graph, adjacency, Arrays.copyOf(sources, samples), (double) nodes.length / samples, pool);
+            }
 
-                @Override
-                public Object[] toArray() {
-                    Object[] a = new Object[size()];
-                    int i = 0;
-                    for (Node.Connection<NodeDataType, WayDataType> connection : this) {
-                        a[i++] = connection;
-                    }
-                    return a;
+            /**
+             * @see #closeness(Graph, ForkJoinPool)
+             */
+            public static double[] closeness(Graph<?, ?> graph) {
+                return closeness(graph, ForkJoinPool.commonPool());
+            }
+
+            /**
+             * Closeness of every node from a breadth first search along its outgoing connections. A node that reaches
+             * {@code r} other nodes out of {@code n} at a total distance of {@code d} scores {@code (r / d) * (r / (n - 1))}
+             * (Wasserman and Faust), so nodes in small components do not outrank the ones in large components.
+             * Nodes that reach nothing score {@code 0}.
+             */
+            public static double[] closeness(Graph<?, ?> graph, ForkJoinPool pool) {
+                Util.Adjacency adjacency = Util.Adjacency.of(graph, pool);
+                double[] scores = new double[adjacency.nodeCount];
+                int others = adjacency.nodes.length - 1;
+                Closeness[] workers = new Closeness[workerCount(adjacency.nodes, pool)];
+                for (int i = 0; i < workers.length; i++) {
+                    workers[i] = new Closeness(adjacency, scores, others);
                 }
+                forEachSource(adjacency.nodes, workers, pool);
+                return scores;
+            }
 
-                public <T> T[] toArray(T[] a) {
-                    // Estimate size of array; be prepared to see more or fewer elements
-                    int size = size();
-                    T[] r = a.length >= size ? a : (T[]) java.lang.reflect.Array.newInstance(a
-                            .getClass()
-                            .getComponentType(), size);
-                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
+            /**
+             * PageRank with a damping factor of {@code 0.85}, iterated until the scores change by less than
+             * {@code 1e-9} in total, at most {@code 100} times.
+             *
+             * @see #pageRank(Graph, double, double, int, ForkJoinPool)
+             */
+            public static double[] pageRank(Graph<?, ?> graph) {
+                return pageRank(graph, 0.85, 1e-9, 100, ForkJoinPool.commonPool());
+            }
 
-                    for (int i = 0; i < r.length; i++) {
-                        if (!it.hasNext()) { // fewer elements than expected
-                            if (a == r) {
-                                r[i] = null; // null-terminate
-                            } else if (a.length < i) {
-                                return Arrays.copyOf(r, i);
-                            } else {
-                                System.arraycopy(r, 0, a, 0, i);
-                                if (a.length > i) {
-                                    a[i] = null;
+            /**
+             * PageRank by power iteration. Every node pulls the rank of its predecessors over the reversed connections,
+             * so chunks of nodes are updated in parallel without synchronization. The rank of nodes without outgoing
+             * connections is spread over all nodes. The scores add up to {@code 1}.
+             *
+             * @param damping       the probability to follow a connection instead of jumping to a random node
+             * @param tolerance     stop once the scores change by less than this in total (L1 norm)
+             * @param maxIterations stop after this many iterations even if the scores still change
+             * @throws IllegalArgumentException if {@code damping} is not in {@code [0, 1]} or {@code maxIterations} is negative
+             */
+            public static double[] pageRank(Graph<?, ?> graph, double damping, double tolerance, int maxIterations, ForkJoinPool pool) {
+                if (!(damping >= 0 && damping <= 1)) throw new IllegalArgumentException("damping must be in [0, 1]: " + damping);
+                if (maxIterations < 0) throw new IllegalArgumentException("maxIterations must not be negative: " + maxIterations);
+                Util.Adjacency adjacency = Util.Adjacency.of(graph, pool);
+                int[] nodes = adjacency.nodes;
+                double[] ranks = new double[adjacency.nodeCount];
+                if (nodes.length == 0) return ranks;
+                return pool.invoke(ForkJoinTask.adapt(() -> {
+                    // Undirected graphs list every connection at both endpoints already
+                    Util.Adjacency incoming = graph.undirected() ? adjacency : adjacency.transpose();
+                    double[] current = ranks;
+                    double[] next = new double[adjacency.nodeCount];
+                    double[] shares = new double[adjacency.nodeCount];
+                    for (int node : nodes) {
+                        current[node] = 1.0 / nodes.length;
+                    }
+                    for (int iteration = 0; iteration < maxIterations; iteration++) {
+                        double[] rank = current;
+                        double dangling = 0;
+                        for (int node : nodes) {
+                            int degree = adjacency.degree(node);
+                            if (degree == 0) dangling += rank[node];
+                            else shares[node] = rank[node] / degree;
+                        }
+                        double base = ((1 - damping) + damping * dangling) / nodes.length;
+                        double[] updated = next;
+                        new Util.ParallelRange(0, nodes.length, Util.Grouping.CHUNK, (from, to) -> {
+                            for (int i = from; i < to; i++) {
+                                int node = nodes[i];
+                                double sum = 0;
+                                for (int edge = incoming.offsets[node]; edge < incoming.offsets[node + 1]; edge++) {
+                                    sum += shares[incoming.targets[edge]];
                                 }
+                                updated[node] = base + damping * sum;
                             }
-                            return a;
+                        }).invoke();
+                        double change = 0;
+                        for (int node : nodes) {
+                            change += Math.abs(updated[node] - rank[node]);
                         }
-                        r[i] = (T) it.next();
+                        next = current;
+                        current = updated;
+                        if (change < tolerance) break;
                     }
-                    // more elements than expected
-                    return it.hasNext() ? finishToArray(r, it) : r;
-                }
+                    return current;
+                }));
+            }
 
-                private <T> T[] finishToArray(T[] r, Iterator<?> it) {
-                    int len = r.length;
-                    int i = len;
-                    while (it.hasNext()) {
-                        if (i == len) {
-                            len = len + (len >> 1) + 1;
-                            r = Arrays.copyOf(r, len);
+            private static double[] brandes(Graph<?, ?> graph, Util.Adjacency adjacency, int[] sources, double scale, ForkJoinPool pool) {
+                Brandes[] workers = new Brandes[workerCount(sources, pool)];
+                for (int i = 0; i < workers.length; i++) {
+                    workers[i] = new Brandes(adjacency);
+                }
+                forEachSource(sources, workers, pool);
+                // Both directions of an undirected pair were searched
+                double factor = graph.undirected() ? scale / 2 : scale;
+                double[] scores = workers[0].scores;
+                pool.invoke(ForkJoinTask.adapt(() -> new Util.ParallelRange(0, scores.length, Util.Grouping.CHUNK, (from, to) -> {
+                    for (int node = from; node < to; node++) {
+                        double sum = scores[node];
+                        for (int i = 1; i < workers.length; i++) {
+                            sum += workers[i].scores[node];
                         }
-                        r[i++] = (T) it.next();
+                        scores[node] = sum * factor;
                     }
-                    // trim if over-allocated
-                    return (i == len) ? r : Arrays.copyOf(r, i);
+                }).invoke()));
+                return scores;
+            }
+
+            private static int workerCount(int[] sources, ForkJoinPool pool) {
+                return Math.max(1, Math.min(pool.getParallelism(), (sources.length + SOURCE_BATCH - 1) / SOURCE_BATCH));
+            }
+
+            /**
+             * Every worker runs in its own task and claims batches of sources until none are left.
+             */
+            private static void forEachSource(int[] sources, IntConsumer[] workers, ForkJoinPool pool) {
+                AtomicInteger cursor = new AtomicInteger();
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(workers.length);
+                for (IntConsumer worker : workers) {
+                    tasks.add(ForkJoinTask.adapt(() -> {
+                        int from;
+                        while ((from = cursor.getAndAdd(SOURCE_BATCH)) < sources.length) {
+                            int to = Math.min(sources.length, from + SOURCE_BATCH);
+                            for (int i = from; i < to; i++) {
+                                worker.accept(sources[i]);
+                            }
+                        }
+                    }));
                 }
+                pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            }
 
-                @Override
-                public boolean add(Node.Connection<NodeDataType, WayDataType> connection) {
-                    throw new UnsupportedOperationException();
+            /**
+             * Keeps no predecessor lists: the successors of a node on shortest paths are its neighbors one hop farther
+             * from the source, found again while walking the search order backwards.
+             */
+            private static final class Brandes implements IntConsumer {
+                private final Util.Adjacency adjacency;
+                private final double[] scores;
+                private final int[] distances;
+                private final double[] paths;
+                /**
+                 * {@code (1 + dependency) / paths} of a node, what every predecessor on a shortest path gains per path.
+                 */
+                private final double[] shares;
+                private final int[] order;
+
+                private Brandes(Util.Adjacency adjacency) {
+                    this.adjacency = adjacency;
+                    this.scores = new double[adjacency.nodeCount];
+                    this.distances = new int[adjacency.nodeCount];
+                    this.paths = new double[adjacency.nodeCount];
+                    this.shares = new double[adjacency.nodeCount];
+                    this.order = new int[adjacency.nodeCount];
+                    Arrays.fill(distances, -1);
                 }
 
                 @Override
-                public boolean remove(Object o) {
-                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
-                    while (it.hasNext()) {
-                        Node.Connection<NodeDataType, WayDataType> connection = it.next();
-                        if (connection.equals(o)) {
-                            it.remove();
-                            return true;
+                public void accept(int source) {
+                    int[] offsets = adjacency.offsets;
+                    int[] targets = adjacency.targets;
+                    int tail = 0;
+                    order[tail++] = source;
+                    distances[source] = 0;
+                    paths[source] = 1;
+                    for (int head = 0; head < tail; head++) {
+                        int node = order[head];
+                        int next = distances[node] + 1;
+                        for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                            int target = targets[edge];
+                            if (distances[target] < 0) {
+                                distances[target] = next;
+                                order[tail++] = target;
+                            }
+                            if (distances[target] == next) paths[target] += paths[node];
                         }
                     }
-                    return false;
-                }
-
-                @Override
-                public boolean containsAll(Collection<?> c) {
-                    for (Object o : c) {
-                        if (!contains(o)) return false;
+                    for (int i = tail - 1; i > 0; i--) {
+                        int node = order[i];
+                        int next = distances[node] + 1;
+                        double sum = 0;
+                        for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                            int target = targets[edge];
+                            if (distances[target] == next) sum += shares[target];
+                        }
+                        double dependency = paths[node] * sum;
+                        scores[node] += dependency;
+                        shares[node] = (1 + dependency) / paths[node];
+                    }
+                    for (int i = 0; i < tail; i++) {
+                        int node = order[i];
+                        distances[node] = -1;
+                        paths[node] = 0;
                     }
-                    return true;
                 }
+            }
 
-                @Override
-                public boolean addAll(Collection<? extends Node.Connection<NodeDataType, WayDataType>> c) {
-                    throw new UnsupportedOperationException();
+            private static final class Closeness implements IntConsumer {
+                private final Util.Adjacency adjacency;
+                private final double[] scores;
+                private final int others;
+                private final int[] distances;
+                private final int[] order;
+
+                private Closeness(Util.Adjacency adjacency, double[] scores, int others) {
+                    this.adjacency = adjacency;
+                    this.scores = scores;
+                    this.others = others;
+                    this.distances = new int[adjacency.nodeCount];
+                    this.order = new int[adjacency.nodeCount];
+                    Arrays.fill(distances, -1);
                 }
 
                 @Override
-                public boolean removeAll(Collection<?> c) {
-                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
-                    boolean changed = false;
-                    while (it.hasNext()) {
-                        Node.Connection<NodeDataType, WayDataType> connection = it.next();
-                        if (c.contains(connection)) {
-                            it.remove();
-                            changed = true;
+                public void accept(int source) {
+                    int[] offsets = adjacency.offsets;
+                    int[] targets = adjacency.targets;
+                    int tail = 0;
+                    order[tail++] = source;
+                    distances[source] = 0;
+                    long total = 0;
+                    for (int head = 0; head < tail; head++) {
+                        int node = order[head];
+                        int next = distances[node] + 1;
+                        for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                            int target = targets[edge];
+                            if (distances[target] < 0) {
+                                distances[target] = next;
+                                order[tail++] = target;
+                                total += next;
+                            }
                         }
                     }
-                    return changed;
-                }
-
-                @Override
-                public boolean retainAll(Collection<?> c) {
-                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
-                    boolean changed = false;
-                    while (it.hasNext()) {
-                        Node.Connection<NodeDataType, WayDataType> connection = it.next();
-                        if (!c.contains(connection)) {
-                            it.remove();
-                            changed = true;
-                        }
+                    int reached = tail - 1;
+                    if (reached > 0) scores[source] = (double) reached / total * reached / others;
+                    for (int i = 0; i < tail; i++) {
+                        distances[order[i]] = -1;
                     }
-                    return changed;
                 }
+            }
+        }
 
-                @Override
-                public void clear() {
-                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
-                    while (it.hasNext()) it.remove();
+
+        /**
+         * The priority queue used by {@link #dijkstra(QueueType)}.
+         */
+        enum QueueType {
+            /**
+             * A {@link #DIAL} or {@link #RADIX_HEAP} queue if the data declares a {@link DijkstraData#withMaxWeight(long) max weight},
+             * the comparison based queue otherwise.
+             */
+            AUTO,
+            /**
+             * Binary heap over node ids, O(log n) per operation.
+             */
+            BINARY_HEAP,
+            /**
+             * Dial's circular array of {@code maxWeight + 1} buckets, amortized O(1) per operation.
+             * Needs a declared max weight and is meant for small ones.
+             */
+            DIAL,
+            /**
+             * Monotone radix heap with 65 buckets, amortized O(log C) per operation where C is the max weight.
+             */
+            RADIX_HEAP
+        }
+
+
+        /**
+         * Limits how much work a single search may do. Once a limit is hit, the search stops and returns a
+         * {@link PartialPath} to the closest node of the search frontier instead of exploring any further.
+         */
+        final class SearchBudget {
+            private static final SearchBudget UNLIMITED = new SearchBudget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+            private final long maxSettledNodes;
+            private final long maxDistance;
+            private final long maxElapsedNanos;
+
+            /**
+             * Use {@link Long#MAX_VALUE} for no limit.
+             *
+             * @param maxSettledNodes the maximum number of nodes the search may settle
+             * @param maxDistance     the maximum distance from the start node the search may explore
+             * @param maxElapsedNanos the maximum time the search may take
+             */
+            public SearchBudget(long maxSettledNodes, long maxDistance, long maxElapsedNanos) {
+                if (maxSettledNodes < 0 || maxDistance < 0 || maxElapsedNanos < 0) throw new IllegalArgumentException("Negative budget");
+                this.maxSettledNodes = maxSettledNodes;
+                this.maxDistance = maxDistance;
+                this.maxElapsedNanos = maxElapsedNanos;
+            }
+
+            public static SearchBudget unlimited() {
+                return UNLIMITED;
+            }
+
+            public SearchBudget withMaxSettledNodes(long maxSettledNodes) {
+                return new SearchBudget(maxSettledNodes, maxDistance, maxElapsedNanos);
+            }
+
+            public SearchBudget withMaxDistance(long maxDistance) {
+                return new SearchBudget(maxSettledNodes, maxDistance, maxElapsedNanos);
+            }
+
+            public SearchBudget withMaxElapsed(long time, TimeUnit unit) {
+                return new SearchBudget(maxSettledNodes, maxDistance, unit.toNanos(time));
+            }
+
+            public long maxSettledNodes() {
+                return maxSettledNodes;
+            }
+
+            public long maxDistance() {
+                return maxDistance;
+            }
+
+            public long maxElapsedNanos() {
+                return maxElapsedNanos;
+            }
+
+            @Override
+            public String toString() {
+                return "SearchBudget{maxSettledNodes=" + maxSettledNodes + ", maxDistance=" + maxDistance + ", maxElapsedNanos=" + maxElapsedNanos + '}';
+            }
+
+            public enum Reason {
+                SETTLED_NODES, DISTANCE, TIME
+            }
+
+            /**
+             * The state of a budget during one search.
+             */
+            static final class Tracker {
+                private static final int TIME_CHECK_INTERVAL = 64;
+
+                private final SearchBudget budget;
+                private final long deadline;
+                private long settled;
+
+                private Tracker(SearchBudget budget) {
+                    this.budget = budget;
+                    this.deadline = budget.maxElapsedNanos == Long.MAX_VALUE ? 0 : System.nanoTime() + budget.maxElapsedNanos;
+                }
+
+                /**
+                 * @return null if the budget is unlimited
+                 */
+                static Tracker start(SearchBudget budget) {
+                    if (budget == null || budget == UNLIMITED) return null;
+                    return new Tracker(budget);
+                }
+
+                /**
+                 * Call before a node is settled.
+                 *
+                 * @param distance the distance of the node
+                 * @return why the node may not be settled, or null if it may
+                 */
+                Reason settle(long distance) {
+                    if (distance > budget.maxDistance) return Reason.DISTANCE;
+                    if (settled >= budget.maxSettledNodes) return Reason.SETTLED_NODES;
+                    if (budget.maxElapsedNanos != Long.MAX_VALUE && settled % TIME_CHECK_INTERVAL == 0 && System.nanoTime() - deadline >= 0) {
+                        return Reason.TIME;
+                    }
+                    settled++;
+                    return null;
+                }
+            }
+        }
+
+
+        /**
+         * Counters of a single search. Pass an instance to the search data to have it filled,
+         * the previous values are reset when a search starts.
+         */
+        final class SearchStats {
+            private long nodesSettled;
+            private long edgesRelaxed;
+            private long queuePushes;
+            private long decreaseKeys;
+            private long peakQueueSize;
+            private long wallTimeNanos;
+
+            public long nodesSettled() {
+                return nodesSettled;
+            }
+
+            public long edgesRelaxed() {
+                return edgesRelaxed;
+            }
+
+            public long queuePushes() {
+                return queuePushes;
+            }
+
+            public long decreaseKeys() {
+                return decreaseKeys;
+            }
+
+            public long peakQueueSize() {
+                return peakQueueSize;
+            }
+
+            public long wallTimeNanos() {
+                return wallTimeNanos;
+            }
+
+            public void reset() {
+                nodesSettled = 0;
+                edgesRelaxed = 0;
+                queuePushes = 0;
+                decreaseKeys = 0;
+                peakQueueSize = 0;
+                wallTimeNanos = 0;
+            }
+
+            @Override
+            public String toString() {
+                return "SearchStats{nodesSettled=" + nodesSettled + ", edgesRelaxed=" + edgesRelaxed + ", queuePushes=" + queuePushes + ", decreaseKeys=" + decreaseKeys + ", peakQueueSize=" + peakQueueSize + ", wallTimeNanos=" + wallTimeNanos + '}';
+            }
+        }
+
+
+        /**
+         * Process wide aggregate over all searches. Disabled by default, when enabled every search
+         * collects its {@link SearchStats} and adds them here.
+         */
+        final class SearchMetrics {
+            private static final SearchMetrics GLOBAL = new SearchMetrics();
+            private static final int BUCKETS = 64;
+
+            private volatile boolean enabled;
+            private final LongAdder searches = new LongAdder();
+            private final LongAdder found = new LongAdder();
+            private final LongAdder cancelled = new LongAdder();
+            private final LongAdder nodesSettled = new LongAdder();
+            private final LongAdder edgesRelaxed = new LongAdder();
+            private final LongAdder queuePushes = new LongAdder();
+            private final LongAdder decreaseKeys = new LongAdder();
+            private final LongAdder wallTimeNanos = new LongAdder();
+            private final LongAdder[] latency = new LongAdder[BUCKETS];
+
+            private SearchMetrics() {
+                for (int i = 0; i < BUCKETS; i++) {
+                    latency[i] = new LongAdder();
+                }
+            }
+
+            public static SearchMetrics global() {
+                return GLOBAL;
+            }
+
+            public boolean enabled() {
+                return enabled;
+            }
+
+            public void enabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            void record(SearchStats stats, boolean found, boolean cancelled) {
+                searches.increment();
+                if (found) this.found.increment();
+                if (cancelled) this.cancelled.increment();
+                nodesSettled.add(stats.nodesSettled);
+                edgesRelaxed.add(stats.edgesRelaxed);
+                queuePushes.add(stats.queuePushes);
+                decreaseKeys.add(stats.decreaseKeys);
+                wallTimeNanos.add(stats.wallTimeNanos);
+                latency[bucket(stats.wallTimeNanos)].increment();
+            }
+
+            public long searches() {
+                return searches.sum();
+            }
+
+            public long found() {
+                return found.sum();
+            }
+
+            /**
+             * @return the searches that ended with an exception instead of a result, for example because they were
+             * cancelled or missed their deadline
+             */
+            public long cancelled() {
+                return cancelled.sum();
+            }
+
+            public long nodesSettled() {
+                return nodesSettled.sum();
+            }
+
+            public long edgesRelaxed() {
+                return edgesRelaxed.sum();
+            }
+
+            public long queuePushes() {
+                return queuePushes.sum();
+            }
+
+            public long decreaseKeys() {
+                return decreaseKeys.sum();
+            }
+
+            public long wallTimeNanos() {
+                return wallTimeNanos.sum();
+            }
+
+            /**
+             * Bucket {@code i} counts the searches that took less than {@link #bucketUpperBoundNanos(int) 2^i}
+             * but at least {@code 2^(i-1)} nanoseconds.
+             *
+             * @return a snapshot of the latency histogram
+             */
+            public long[] latencyHistogram() {
+                long[] histogram = new long[BUCKETS];
+                for (int i = 0; i < BUCKETS; i++) {
+                    histogram[i] = latency[i].sum();
+                }
+                return histogram;
+            }
+
+            public static long bucketUpperBoundNanos(int bucket) {
+                return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+            }
+
+            public void reset() {
+                searches.reset();
+                found.reset();
+                cancelled.reset();
+                nodesSettled.reset();
+                edgesRelaxed.reset();
+                queuePushes.reset();
+                decreaseKeys.reset();
+                wallTimeNanos.reset();
+                for (LongAdder adder : latency) {
+                    adder.reset();
+                }
+            }
+
+            private static int bucket(long nanos) {
+                return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+            }
+        }
+
+
+        /**
+         * Lets a running search find out whether it should stop early. Searches started through
+         * {@link Graph#searchAsync(AlgorithmWithData, Executor, long, TimeUnit) searchAsync} have a control,
+         * algorithms should call {@link #checkpoint()} regularly, for example once per settled node.
+         */
+        final class SearchControl {
+            private static final ThreadLocal<SearchControl> CURRENT = new ThreadLocal<>();
+            private static final int CHECK_INTERVAL = 256;
+
+            private final Future<?> future;
+            private final boolean hasDeadline;
+            private final long deadline;
+            private boolean timedOut;
+            private int steps;
+
+            private SearchControl(Future<?> future, boolean hasDeadline, long deadline) {
+                this.future = future;
+                this.hasDeadline = hasDeadline;
+                this.deadline = deadline;
+            }
+
+            /**
+             * @return the control of the search running on this thread, or null if the search can not be cancelled
+             */
+            public static SearchControl current() {
+                return CURRENT.get();
+            }
+
+            /**
+             * Cheap enough to be called in the inner loop, only every {@value #CHECK_INTERVAL}th call actually checks.
+             *
+             * @throws CancellationException if the search should stop
+             */
+            public void checkpoint() {
+                if ((steps++ & (CHECK_INTERVAL - 1)) != 0) return;
+                if (future.isDone()) throw new CancellationException("Search was cancelled");
+                if (hasDeadline && System.nanoTime() - deadline >= 0) {
+                    timedOut = true;
+                    throw new CancellationException("Search deadline exceeded");
+                }
+            }
+
+            static <T> CompletableFuture<T> supplyAsync(Supplier<T> search, Executor executor, long timeoutNanos) {
+                CompletableFuture<T> future = new CompletableFuture<>();
+                boolean hasDeadline = timeoutNanos >= 0;
+                long deadline = hasDeadline ? System.nanoTime() + timeoutNanos : 0;
+                Runnable task = () -> {
+                    if (future.isDone()) return;
+                    SearchControl control = new SearchControl(future, hasDeadline, deadline);
+                    SearchControl previous = CURRENT.get();
+                    CURRENT.set(control);
+                    try {
+                        control.checkpoint();
+                        future.complete(search.get());
+                    } catch (CancellationException e) {
+                        if (control.timedOut) future.completeExceptionally(new TimeoutException(e.getMessage()));
+                        else future.cancel(false);
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        if (previous == null) CURRENT.remove();
+                        else CURRENT.set(previous);
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    future.completeExceptionally(e);
+                }
+                return future;
+            }
+        }
+
+
+        class AlgorithmWithData<AlgorithmData, NodeDataType, WayDataType, CalculatedData> {
+            private final Algorithm<AlgorithmData, NodeDataType, WayDataType, CalculatedData> algorithm;
+            private final AlgorithmData data;
+
+            public AlgorithmWithData(Algorithm<AlgorithmData, NodeDataType, WayDataType, CalculatedData> algorithm, AlgorithmData data) {
+                this.algorithm = algorithm;
+                this.data = data;
+            }
+
+            public AlgorithmData data() {
+                return data;
+            }
+
+            public Algorithm<AlgorithmData, NodeDataType, WayDataType, CalculatedData> algorithm() {
+                return algorithm;
+            }
+        }
+    }
+
+
+    class LinkedGraph<NodeDataType, WayDataType> implements Graph<NodeDataType, WayDataType> {
+
+        private final ArrayList<Node<NodeDataType, WayDataType>> nodes = new ArrayList<>();
+        private final Util.VersionCache<NodeOrder> topologicalOrder = new Util.VersionCache<>();
+        private final List<Util.SecondaryIndex<NodeDataType, WayDataType, ?, LinkedNode>> indexes = new ArrayList<>();
+        /**
+         * Built by {@link #indexData()}, holds the node with the lowest id for duplicate data.
+         */
+        private HashMap<NodeDataType, LinkedNode> byData;
+        private boolean duplicateData;
+        /**
+         * Undirected graphs keep every connection in the list of both endpoints and leave the origins empty.
+         */
+        private final boolean undirected;
+        private int connectionCount;
+        private long version;
+
+        public LinkedGraph() {
+            this(false);
+        }
+
+        public LinkedGraph(boolean undirected) {
+            this.undirected = undirected;
+        }
+
+        @Override
+        public boolean undirected() {
+            return undirected;
+        }
+
+        @Override
+        public Collection<Node<NodeDataType, WayDataType>> nodes() {
+            return new AbstractCollection<Node<NodeDataType, WayDataType>>() {
+                @Override
+                public Iterator<Node<NodeDataType, WayDataType>> iterator() {
+                    return new Iterator<Node<NodeDataType, WayDataType>>() {
+                        private final Iterator<Node<NodeDataType, WayDataType>> it = nodes.iterator();
+                        private Node<NodeDataType, WayDataType> node;
+
+                        @Override
+                        public void remove() {
+                            LinkedNode linkedNode = (LinkedNode) node;
+                            while (!linkedNode.connections.isEmpty()) {
+                                linkedNode.connections.get(0).remove();
+                            }
+                            while (!linkedNode.origins.isEmpty()) {
+                                linkedNode.origins.get(0).remove();
+                            }
+                            it.remove();
+                            renumber(linkedNode);
+                            version++;
+                            forget(linkedNode);
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Node<NodeDataType, WayDataType> next() {
+                            return node = it.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return nodes.size();
+                }
+
+                @Override
+                public Spliterator<Node<NodeDataType, WayDataType>> spliterator() {
+                    return nodes.spliterator();
+                }
+
+                @Override
+                public String toString() {
+                    Iterator<Node<NodeDataType, WayDataType>> it = iterator();
+                    if (!it.hasNext()) return "Node$Nodes(0)[]";
+
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("Node$Nodes(").append(size()).append(")[");
+                    for (; ; ) {
+                        Node<NodeDataType, WayDataType> e = it.next();
+                        sb.append(e);
+                        if (!it.hasNext()) return sb.append(']').toString();
+                        sb.append(',').append(' ');
+                    }
+                }
+            };
+        }
+
+        @Override
+        public Collection<Node.Connection<NodeDataType, WayDataType>> connections() {
+            return new Collection<Node.Connection<NodeDataType, WayDataType>>() {
+                @Override
+                public int size() {
+                    return connectionCount;
+                }
+
+                @Override
+                public Spliterator<Node.Connection<NodeDataType, WayDataType>> spliterator() {
+                    if (undirected) return Spliterators.spliterator(iterator(), connectionCount, Spliterator.SIZED);
+                    int[] offsets = new int[nodes.size() + 1];
+                    for (int node = 0; node < nodes.size(); node++) {
+                        offsets[node + 1] = offsets[node] + ((LinkedNode) nodes.get(node)).connections.size();
+                    }
+                    return new Util.RankSpliterator<>(offsets, 0, offsets[nodes.size()], node -> ((LinkedNode) nodes.get(node)).connections.iterator());
+                }
+
+                @Override
+                public String toString() {
+                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
+                    if (!it.hasNext()) return "Node$Nodes(0)[]";
+
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("Node$Nodes(").append(size()).append(")[");
+                    for (; ; ) {
+                        Node.Connection<NodeDataType, WayDataType> e = it.next();
+                        sb.append(e);
+                        if (!it.hasNext()) return sb.append(']').toString();
+                        sb.append(',').append(' ');
+                    }
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return connectionCount == 0;
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    for (Node<NodeDataType, WayDataType> node : nodes) {
+                        if (node.connections().contains(o)) return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                public Iterator<Node.Connection<NodeDataType, WayDataType>> iterator() {
+                    return new Iterator<Node.Connection<NodeDataType, WayDataType>>() {
+                        private Iterator<Node<NodeDataType, WayDataType>> nodeIterator;
+                        private Iterator<Node.Connection<NodeDataType, WayDataType>> currentIterator;
+                        private Node.Connection<NodeDataType, WayDataType> currentConnection;
+
+                        @Override
+                        public void remove() {
+                            if (currentConnection == null) throw new IllegalStateException();
+
+                            currentIterator.remove();
+                            if (!undirected) {
+                                LinkedNode to = (LinkedNode) currentConnection.to();
+                                to.origins.remove(currentConnection);
+                                connectionCount--;
+                                version++;
+                            }
+
+                            currentConnection = null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return currentIterator() != null;
+                        }
+
+                        @Override
+                        public Node.Connection<NodeDataType, WayDataType> next() {
+                            Iterator<Node.Connection<NodeDataType, WayDataType>> cit = currentIterator();
+                            if (cit == null) throw new NoSuchElementException();
+                            return currentConnection = cit.next();
+                        }
+
+                        private Iterator<Node.Connection<NodeDataType, WayDataType>> currentIterator() {
+                            do {
+                                if (currentIterator != null && currentIterator.hasNext()) return currentIterator;
+                                if (nodeIterator().hasNext()) {
+                                    LinkedNode node = (LinkedNode) nodeIterator().next();
+                                    currentIterator = undirected ? node.ownedConnections() : node.connections.iterator();
+                                } else {
+                                    return null;
+                                }
+                            } while (true);
+                        }
+
+                        private Iterator<Node<NodeDataType, WayDataType>> nodeIterator() {
+                            if (nodeIterator == null) nodeIterator = nodes.iterator();
+                            return nodeIterator;
+                        }
+                    };
+                }
+
+                @Override
+                public Object[] toArray() {
+                    Object[] a = new Object[size()];
+                    int i = 0;
+                    for (Node.Connection<NodeDataType, WayDataType> connection : this) {
+                        a[i++] = connection;
+                    }
+                    return a;
+                }
+
+                public <T> T[] toArray(T[] a) {
+                    // Estimate size of array; be prepared to see more or fewer elements
+                    int size = size();
+                    T[] r = a.length >= size ? a : (T[]) java.lang.reflect.Array.newInstance(a
+                            .getClass()
+                            .getComponentType(), size);
+                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
+
+                    for (int i = 0; i < r.length; i++) {
+                        if (!it.hasNext()) { // fewer elements than expected
+                            if (a == r) {
+                                r[i] = null; // null-terminate
+                            } else if (a.length < i) {
+                                return Arrays.copyOf(r, i);
+                            } else {
+                                System.arraycopy(r, 0, a, 0, i);
+                                if (a.length > i) {
+                                    a[i] = null;
+                                }
+                            }
+                            return a;
+                        }
+                        r[i] = (T) it.next();
+                    }
+                    // more elements than expected
+                    return it.hasNext() ? finishToArray(r, it) : r;
+                }
+
+                private <T> T[] finishToArray(T[] r, Iterator<?> it) {
+                    int len = r.length;
+                    int i = len;
+                    while (it.hasNext()) {
+                        if (i == len) {
+                            len = len + (len >> 1) + 1;
+                            r = Arrays.copyOf(r, len);
+                        }
+                        r[i++] = (T) it.next();
+                    }
+                    // trim if over-allocated
+                    return (i == len) ? r : Arrays.copyOf(r, i);
+                }
+
+                @Override
+                public boolean add(Node.Connection<NodeDataType, WayDataType> connection) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
+                    while (it.hasNext()) {
+                        Node.Connection<NodeDataType, WayDataType> connection = it.next();
+                        if (connection.equals(o)) {
+                            it.remove();
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
+                @Override
+                public boolean containsAll(Collection<?> c) {
+                    for (Object o : c) {
+                        if (!contains(o)) return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean addAll(Collection<? extends Node.Connection<NodeDataType, WayDataType>> c) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public boolean removeAll(Collection<?> c) {
+                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
+                    boolean changed = false;
+                    while (it.hasNext()) {
+                        Node.Connection<NodeDataType, WayDataType> connection = it.next();
+                        if (c.contains(connection)) {
+                            it.remove();
+                            changed = true;
+                        }
+                    }
+                    return changed;
+                }
+
+                @Override
+                public boolean retainAll(Collection<?> c) {
+                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
+                    boolean changed = false;
+                    while (it.hasNext()) {
+                        Node.Connection<NodeDataType, WayDataType> connection = it.next();
+                        if (!c.contains(connection)) {
+                            it.remove();
+                            changed = true;
+                        }
+                    }
+                    return changed;
+                }
+
+                @Override
+                public void clear() {
+                    Iterator<Node.Connection<NodeDataType, WayDataType>> it = iterator();
+                    while (it.hasNext()) {
+                        it.next();
+                        it.remove();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> newNode(NodeDataType data) {
+            LinkedNode node = new LinkedNode(data, nodes.size());
+            nodes.add(node);
+            version++;
+            remember(node);
+            return node;
+        }
+
+        private void remember(LinkedNode node) {
+            if (byData != null && byData.putIfAbsent(node.data, node) != null) duplicateData = true;
+            for (Util.SecondaryIndex<NodeDataType, WayDataType, ?, LinkedNode> index : indexes) {
+                index.added(node.data, node);
+            }
+        }
+
+        @Override
+        public void removeNode(Node<NodeDataType, WayDataType> node) {
+            if (!LinkedNode.class.isInstance(node)) {
+                throw new IllegalArgumentException("Not a valid node");
+            }
+            LinkedNode snode = (LinkedNode) node;
+            if (!snode.graph().equals(this)) {
+                throw new IllegalArgumentException("Node is not in this graph");
+            }
+            while (!snode.connections.isEmpty()) {
+                snode.connections.get(0).remove();
+            }
+            while (!snode.origins.isEmpty()) {
+                snode.origins.get(0).remove();
+            }
+            nodes.remove(snode.id);
+            renumber(snode);
+            version++;
+            forget(snode);
+        }
+
+        private void forget(LinkedNode node) {
+            if (byData != null && byData.get(node.data) == node) {
+                LinkedNode next = duplicateData ? nextWithData(node) : null;
+                if (next == null) byData.remove(node.data);
+                else byData.put(node.data, next);
+            }
+            for (Util.SecondaryIndex<NodeDataType, WayDataType, ?, LinkedNode> index : indexes) {
+                index.removed(node.data, node);
+            }
+        }
+
+        /**
+         * @return the node with the lowest id that has the same data as the given node and is not being removed
+         */
+        private LinkedNode nextWithData(LinkedNode node) {
+            for (Node<NodeDataType, WayDataType> other : nodes) {
+                LinkedNode linked = (LinkedNode) other;
+                if (linked != node && linked.id != -1 && Objects.equals(linked.data, node.data)) return linked;
+            }
+            return null;
+        }
+
+        @Override
+        public void indexData() {
+            HashMap<NodeDataType, LinkedNode> index = new HashMap<>();
+            duplicateData = false;
+            for (Node<NodeDataType, WayDataType> node : nodes) {
+                if (index.putIfAbsent(node.data(), (LinkedNode) node) != null) duplicateData = true;
+            }
+            byData = index;
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> findNode(NodeDataType data) {
+            if (byData == null) return Graph.super.findNode(data);
+            return byData.get(data);
+        }
+
+        @Override
+        public <K> NodeIndex<NodeDataType, WayDataType, K> index(Function<? super NodeDataType, ? extends K> key) {
+            Util.SecondaryIndex<NodeDataType, WayDataType, K, LinkedNode> index = new Util.SecondaryIndex<>(key, node -> node, indexes::remove);
+            for (Node<NodeDataType, WayDataType> node : nodes) {
+                index.added(node.data(), (LinkedNode) node);
+            }
+            indexes.add(index);
+            return index;
+        }
+
+        @Override
+        public void reorder(NodeOrder order) {
+            if (order.size() != nodes.size()) throw new IllegalArgumentException("Order has " + order.size() + " nodes, graph has " + nodes.size());
+            List<Node<NodeDataType, WayDataType>> reordered = new ArrayList<>(nodes.size());
+            for (int newId = 0; newId < nodes.size(); newId++) {
+                LinkedNode node = (LinkedNode) nodes.get(order.oldId(newId));
+                node.id = newId;
+                reordered.add(node);
+            }
+            nodes.clear();
+            nodes.addAll(reordered);
+            version++;
+            // The lowest id of duplicate data may have changed
+            if (byData != null && duplicateData) indexData();
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public NodeOrder topologicalOrder() {
+            return topologicalOrder.get(version, () -> NodeOrder.topological(this));
+        }
+
+        private void renumber(LinkedNode removed) {
+            for (int id = removed.id; id < nodes.size(); id++) {
+                ((LinkedNode) nodes.get(id)).id = id;
+            }
+            removed.id = -1;
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> node(int id) {
+            return nodes.get(id);
+        }
+
+        @Override
+        public int nodeIdBound() {
+            return nodes.size();
+        }
+
+        @Override
+        public void forEachNeighbor(int node, IntObjConsumer<? super WayDataType> action) {
+            LinkedNode from = (LinkedNode) nodes.get(node);
+            ArrayList<Node.Connection<NodeDataType, WayDataType>> connections = from.connections;
+            for (int i = 0; i < connections.size(); i++) {
+                LinkedConnection connection = (LinkedConnection) connections.get(i);
+                action.accept(connection.other(from).id, connection.way);
+            }
+        }
+
+        @Override
+        public void forEachEdge(EdgeVisitor<? super WayDataType> visitor) {
+            for (int node = 0; node < nodes.size(); node++) {
+                LinkedNode from = (LinkedNode) nodes.get(node);
+                ArrayList<Node.Connection<NodeDataType, WayDataType>> connections = from.connections;
+                for (int i = 0; i < connections.size(); i++) {
+                    LinkedConnection connection = (LinkedConnection) connections.get(i);
+                    int to = connection.other(from).id;
+                    if (to >= node || !undirected) visitor.visit(node, to, connection.way);
+                }
+            }
+        }
+
+        @Override
+        public Node.Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way) {
+            return from.newConnection(to, way);
+        }
+
+        @Override
+        public void removeConnection(Node.Connection<NodeDataType, WayDataType> connection) {
+            connection.from().removeConnection(connection);
+        }
+
+        @Override
+        public void batch(Consumer<? super Batch<NodeDataType, WayDataType>> action) {
+            Util.MutationBatch<NodeDataType, WayDataType> batch = new Util.MutationBatch<>(data -> new LinkedNode(data, -1));
+            action.accept(batch);
+
+            // Validate everything before the first modification, duplicates are skipped by marking the connections
+            List<LinkedConnection> removed = new ArrayList<>();
+            Util.IntList positions = new Util.IntList();
+            BitSet removedNodes = new BitSet();
+            List<LinkedConnection> added = new ArrayList<>();
+            try {
+                for (Node.Connection<NodeDataType, WayDataType> connection : batch.removedConnections) {
+                    if (connection instanceof LinkedGraph.ReversedConnection) connection = ((ReversedConnection) connection).connection;
+                    if (!(connection instanceof LinkedGraph.LinkedConnection) || connection.graph() != this) {
+                        throw new IllegalArgumentException("This node does not have that connection!");
+                    }
+                    LinkedConnection linked = (LinkedConnection) connection;
+                    if (linked.removing) continue;
+                    int position = linked.from.connections.indexOf(linked);
+                    if (position == -1) throw new IllegalStateException("This node does not have that connection!");
+                    linked.removing = true;
+                    removed.add(linked);
+                    positions.add(position);
+                }
+                for (Node<NodeDataType, WayDataType> node : batch.removedNodes) {
+                    removedNodes.set(member(node).id);
+                }
+                for (int index = 0; index < batch.newConnectionCount(); index++) {
+                    if (batch.dropped(index)) continue;
+                    added.add(new LinkedConnection(endpoint(batch, batch.newFrom(index)), endpoint(batch, batch.newTo(index)), batch.newWay(index)));
+                }
+            } catch (RuntimeException e) {
+                for (LinkedConnection linked : removed) {
+                    linked.removing = false;
+                }
+                throw e;
+            }
+            if (removed.isEmpty() && removedNodes.isEmpty() && batch.newNodes.isEmpty() && added.isEmpty()) return;
+
+            // Removed entries are cleared in place, every list that loses connections is compacted once
+            for (int id = removedNodes.nextSetBit(0); id >= 0; id = removedNodes.nextSetBit(id + 1)) {
+                LinkedNode node = (LinkedNode) nodes.get(id);
+                mark(node.connections, removed);
+                mark(node.origins, removed);
+            }
+            BitSet touchedConnections = new BitSet(nodes.size());
+            BitSet touchedOrigins = undirected ? touchedConnections : new BitSet(nodes.size());
+            for (int index = 0; index < removed.size(); index++) {
+                LinkedConnection connection = removed.get(index);
+                connection.removing = false;
+                if (!removedNodes.get(connection.from.id)) {
+                    int position = index < positions.size() ? positions.get(index) : connection.from.connections.indexOf(connection);
+                    connection.from.connections.set(position, null);
+                    touchedConnections.set(connection.from.id);
+                }
+                if (!removedNodes.get(connection.to.id) && (connection.to != connection.from || !undirected)) {
+                    ArrayList<Node.Connection<NodeDataType, WayDataType>> list = undirected ? connection.to.connections : connection.to.origins;
+                    list.set(list.indexOf(connection), null);
+                    touchedOrigins.set(connection.to.id);
+                }
+            }
+            for (int id = touchedConnections.nextSetBit(0); id >= 0; id = touchedConnections.nextSetBit(id + 1)) {
+                compact(((LinkedNode) nodes.get(id)).connections);
+            }
+            if (!undirected) {
+                for (int id = touchedOrigins.nextSetBit(0); id >= 0; id = touchedOrigins.nextSetBit(id + 1)) {
+                    compact(((LinkedNode) nodes.get(id)).origins);
+                }
+            }
+            connectionCount -= removed.size();
+            if (!removedNodes.isEmpty()) {
+                for (int id = removedNodes.nextSetBit(0); id >= 0; id = removedNodes.nextSetBit(id + 1)) {
+                    LinkedNode node = (LinkedNode) nodes.get(id);
+                    node.connections.clear();
+                    node.origins.clear();
+                    node.id = -1;
+                    forget(node);
+                }
+                nodes.removeIf(node -> ((LinkedNode) node).id == -1);
+                for (int id = removedNodes.nextSetBit(0); id < nodes.size(); id++) {
+                    ((LinkedNode) nodes.get(id)).id = id;
+                }
+            }
+
+            nodes.ensureCapacity(nodes.size() + batch.newNodes.size());
+            for (Node<NodeDataType, WayDataType> node : batch.newNodes) {
+                LinkedNode linked = (LinkedNode) node;
+                linked.id = nodes.size();
+                nodes.add(linked);
+                remember(linked);
+            }
+            for (LinkedConnection connection : added) {
+                connection.from.connections.add(connection);
+                if (!undirected) connection.to.origins.add(connection);
+                else if (connection.to != connection.from) connection.to.connections.add(connection);
+            }
+            connectionCount += added.size();
+            version++;
+        }
+
+        /**
+         * Removes the entries a batch cleared.
+         */
+        private static <T> void compact(ArrayList<T> list) {
+            int write = 0;
+            for (int read = 0; read < list.size(); read++) {
+                T element = list.get(read);
+                if (element == null) continue;
+                if (read != write) list.set(write, element);
+                write++;
+            }
+            list.subList(write, list.size()).clear();
+        }
+
+        private void mark(List<Node.Connection<NodeDataType, WayDataType>> connections, List<LinkedConnection> removed) {
+            for (Node.Connection<NodeDataType, WayDataType> connection : connections) {
+                LinkedConnection linked = (LinkedConnection) connection;
+                if (linked.removing) continue;
+                linked.removing = true;
+                removed.add(linked);
+            }
+        }
+
+        private LinkedNode member(Node<NodeDataType, WayDataType> node) {
+            if (!(node instanceof LinkedGraph.LinkedNode) || ((LinkedNode) node).graph() != this) {
+                throw new IllegalArgumentException("Not a valid node");
+            }
+            LinkedNode linked = (LinkedNode) node;
+            if (linked.id < 0 || linked.id >= nodes.size() || nodes.get(linked.id) != linked) {
+                throw new IllegalArgumentException("Node is not in this graph");
+            }
+            return linked;
+        }
+
+        private LinkedNode endpoint(Util.MutationBatch<NodeDataType, WayDataType> batch, Node<NodeDataType, WayDataType> node) {
+            if (batch.newNodes.contains(node)) return (LinkedNode) node;
+            return member(node);
+        }
+
+        /**
+         * Fills this empty graph at once, the connections are grouped by node in parallel. Runs in the current
+         * {@link ForkJoinPool}.
+         *
+         * @param data    the data of every node, indexed by id
+         * @param ways    the way of every connection, the endpoints are at the same index in sources and targets
+         */
+        private void load(List<NodeDataType> data, int[] sources, int[] targets, List<WayDataType> ways) {
+            int nodeCount = data.size();
+            // Pre-sized lists, the tasks only set distinct indices
+            List<LinkedNode> created = new ArrayList<>(Collections.nCopies(nodeCount, null));
+            new Util.ParallelRange(0, nodeCount, Util.Grouping.CHUNK, (from, to) -> {
+                for (int id = from; id < to; id++) {
+                    created.set(id, new LinkedNode(data.get(id), id));
+                }
+            }).invoke();
+            Util.Grouping bySource = Util.Grouping.of(sources, nodeCount);
+            Util.Grouping byTarget = Util.Grouping.of(targets, nodeCount);
+            List<LinkedConnection> byEdge = new ArrayList<>(Collections.nCopies(sources.length, null));
+            new Util.ParallelRange(0, nodeCount, Util.Grouping.CHUNK, (from, to) -> {
+                for (int id = from; id < to; id++) {
+                    LinkedNode node = created.get(id);
+                    node.connections.ensureCapacity(bySource.size(id) + (undirected ? byTarget.size(id) : 0));
+                    for (int index = bySource.offsets[id]; index < bySource.offsets[id + 1]; index++) {
+                        int edge = bySource.order[index];
+                        LinkedConnection connection = new LinkedConnection(node, created.get(targets[edge]), ways.get(edge));
+                        byEdge.set(edge, connection);
+                        node.connections.add(connection);
+                    }
+                }
+            }).invoke();
+            new Util.ParallelRange(0, nodeCount, Util.Grouping.CHUNK, (from, to) -> {
+                for (int id = from; id < to; id++) {
+                    ArrayList<Node.Connection<NodeDataType, WayDataType>> list = undirected ? created.get(id).connections : created.get(id).origins;
+                    list.ensureCapacity(list.size() + byTarget.size(id));
+                    for (int index = byTarget.offsets[id]; index < byTarget.offsets[id + 1]; index++) {
+                        int edge = byTarget.order[index];
+                        // Undirected loops are in the list of their node once
+                        if (undirected && sources[edge] == id) continue;
+                        list.add(byEdge.get(edge));
+                    }
+                }
+            }).invoke();
+            nodes.addAll(created);
+            connectionCount = sources.length;
+            version++;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            b.append("Graph: ");
+            for (Node<NodeDataType, WayDataType> n : nodes) {
+                b.append('\n').append(" - ").append(n);
+            }
+            return b.toString();
+        }
+
+        private class LinkedNode implements Node<NodeDataType, WayDataType> {
+            private final NodeDataType data;
+            private final ArrayList<Connection<NodeDataType, WayDataType>> connections;
+            private final List<Connection<NodeDataType, WayDataType>> connectionsUnmodifiable;
+            private final List<Connection<NodeDataType, WayDataType>> originsUnmodifiable;
+            private final ArrayList<Connection<NodeDataType, WayDataType>> origins;
+            private int id;
+
+            public LinkedNode(NodeDataType data, int id) {
+                this.data = data;
+                this.id = id;
+                this.connections = new ArrayList<>();
+                this.connectionsUnmodifiable = Collections.unmodifiableList(connections);
+                this.origins = new ArrayList<>();
+                this.originsUnmodifiable = Collections.unmodifiableList(origins);
+            }
+
+            public LinkedGraph<NodeDataType, WayDataType> graph() {
+                return LinkedGraph.this;
+            }
+
+            @Override
+            public NodeDataType data() {
+                return data;
+            }
+
+            @Override
+            public int id() {
+                return id;
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> connections() {
+                if (undirected) return perspective(true);
+                return connectionsUnmodifiable;
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> origins() {
+                if (undirected) return perspective(false);
+                return originsUnmodifiable;
+            }
+
+            /**
+             * @param outgoing true for the connections starting at this node, false for the ones leading to it
+             */
+            private List<Connection<NodeDataType, WayDataType>> perspective(boolean outgoing) {
+                return new AbstractList<Connection<NodeDataType, WayDataType>>() {
+                    @Override
+                    public Connection<NodeDataType, WayDataType> get(int index) {
+                        LinkedConnection connection = (LinkedConnection) connections.get(index);
+                        return (outgoing ? connection.from : connection.to) == LinkedNode.this ? connection : new ReversedConnection(connection);
+                    }
+
+                    @Override
+                    public int size() {
+                        return connections.size();
+                    }
+                };
+            }
+
+            /**
+             * Iterates the connections of an undirected graph whose other endpoint does not have a lower id, so every
+             * connection is owned by exactly one node.
+             */
+            private Iterator<Connection<NodeDataType, WayDataType>> ownedConnections() {
+                return new Iterator<Connection<NodeDataType, WayDataType>>() {
+                    private int next = advance(0);
+                    private int current = -1;
+
+                    private int advance(int index) {
+                        while (index < connections.size() && ((LinkedConnection) connections.get(index)).other(LinkedNode.this).id < id) index++;
+                        return index;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < connections.size();
+                    }
+
+                    @Override
+                    public Connection<NodeDataType, WayDataType> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        current = next;
+                        next = advance(next + 1);
+                        LinkedConnection connection = (LinkedConnection) connections.get(current);
+                        return connection.from == LinkedNode.this ? connection : new ReversedConnection(connection);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (current == -1) throw new IllegalStateException();
+                        LinkedConnection connection = (LinkedConnection) connections.get(current);
+                        unlink(connection);
+                        next = advance(current);
+                        current = -1;
+                    }
+                };
+            }
+
+            @Override
+            public Collection<Node<NodeDataType, WayDataType>> reachableNodes() {
+                Set<Node<NodeDataType, WayDataType>> nodes = new HashSet<>();
+                Deque<Node<NodeDataType, WayDataType>> unchecked = new ArrayDeque<>(Collections.singleton(this));
+                Node<NodeDataType, WayDataType> node;
+                while ((node = unchecked.pollFirst()) != null) {
+                    if (!nodes.contains(node)) {
+                        nodes.add(node);
+                        for (Connection<NodeDataType, WayDataType> connection : node.connections()) {
+                            unchecked.add(connection.to());
+                        }
+                    }
+                }
+                return Collections.unmodifiableCollection(nodes);
+            }
+
+            @Override
+            public Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way) {
+                if (!to.getClass().equals(LinkedNode.class)) {
+                    throw new IllegalArgumentException("Illegal node");
+                }
+                LinkedNode sto = (LinkedNode) to;
+                if (sto.graph() != graph()) {
+                    throw new IllegalArgumentException("Illegal node");
+                }
+                LinkedConnection con = new LinkedConnection(this, sto, way);
+                if (!undirected) sto.origins.add(con);
+                else if (sto != this) sto.connections.add(con);
+                connections.add(con);
+                connectionCount++;
+                version++;
+                return con;
+            }
+
+            @Override
+            public void removeConnection(Connection<NodeDataType, WayDataType> connection) {
+                if (connection instanceof LinkedGraph.ReversedConnection) connection = ((ReversedConnection) connection).connection;
+                if (!LinkedConnection.class.isInstance(connection)) {
+                    throw new IllegalArgumentException("This node does not have that connection!");
+                }
+                LinkedConnection linkedConnection = (LinkedConnection) connection;
+                if (!connections.contains(linkedConnection)) {
+                    throw new IllegalStateException("This node does not have that connection!");
+                }
+                unlink(linkedConnection);
+            }
+
+            @Override
+            public void remove() {
+                removeNode(this);
+            }
+
+            private String ctoString() {
+                Iterator<Connection<NodeDataType, WayDataType>> it = connections.iterator();
+                if (!it.hasNext()) return "[]";
+                StringBuilder sb = new StringBuilder();
+                sb.append('[');
+                for (; ; ) {
+                    LinkedConnection e = (LinkedConnection) it.next();
+                    sb.append(e.nodeToString());
+                    if (!it.hasNext()) return sb.append(']').toString();
+                    sb.append(',').append(' ');
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "Node{data=" + data + ", connections=" + ctoString() + '}';
+            }
+        }
+
+        private void unlink(LinkedConnection connection) {
+            if (undirected) {
+                connection.to.connections.remove(connection);
+                if (connection.from != connection.to) connection.from.connections.remove(connection);
+            } else {
+                connection.to.origins.remove(connection);
+                connection.from.connections.remove(connection);
+            }
+            connectionCount--;
+            version++;
+        }
+
+        private class LinkedConnection implements Node.Connection<NodeDataType, WayDataType> {
+
+            private final LinkedNode from;
+            private final LinkedNode to;
+            private final WayDataType way;
+            /**
+             * Set while a {@link #batch(Consumer) batch} removes this connection.
+             */
+            private boolean removing;
+
+            public LinkedConnection(LinkedNode from, LinkedNode to, WayDataType way) {
+                this.from = from;
+                this.to = to;
+                this.way = way;
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> to() {
+                return to;
+            }
+
+            @Override
+            public WayDataType way() {
+                return way;
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> from() {
+                return from;
+            }
+
+            @Override
+            public Graph<NodeDataType, WayDataType> graph() {
+                return LinkedGraph.this;
+            }
+
+            @Override
+            public void remove() {
+                removeConnection(this);
+            }
+
+            private LinkedNode other(LinkedNode endpoint) {
+                return from == endpoint ? to : from;
+            }
+
+            public String nodeToString() {
+                return "Connection{to=" + to.data() + ", way=" + way + '}';
+            }
+
+            @Override
+            public String toString() {
+                return "Connection{from=" + from.data() + ", to=" + to.data() + ", way=" + way + '}';
+            }
+        }
+
+        /**
+         * A connection of an undirected graph seen from its other endpoint.
+         */
+        private class ReversedConnection implements Node.Connection<NodeDataType, WayDataType> {
+            private final LinkedConnection connection;
+
+            private ReversedConnection(LinkedConnection connection) {
+                this.connection = connection;
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> from() {
+                return connection.to;
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> to() {
+                return connection.from;
+            }
+
+            @Override
+            public Graph<NodeDataType, WayDataType> graph() {
+                return LinkedGraph.this;
+            }
+
+            @Override
+            public WayDataType way() {
+                return connection.way;
+            }
+
+            @Override
+            public void remove() {
+                removeConnection(this);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof LinkedGraph.ReversedConnection && ((LinkedGraph<?, ?>.ReversedConnection) o).connection == connection;
+            }
+
+            @Override
+            public int hashCode() {
+                return ~connection.hashCode();
+            }
+
+            @Override
+            public String toString() {
+                return "Connection{from=" + connection.to.data() + ", to=" + connection.from.data() + ", way=" + connection.way + '}';
+            }
+        }
+    }
+
+
+    class ArrayGraph<NodeDataType, WayDataType> implements Graph<NodeDataType, WayDataType> {
+        private final ArrayList<NodeDataType> nodes = new ArrayList<>();
+        private ArrayList<WayDataType>[][] connections;
+        private int[] degrees;
+        private final Util.VersionCache<NodeOrder> topologicalOrder = new Util.VersionCache<>();
+        private final List<Util.SecondaryIndex<NodeDataType, WayDataType, ?, NodeDataType>> indexes = new ArrayList<>();
+        /**
+         * Built by {@link #indexData()}, holds the lowest id for duplicate data. Nodes are identified by their data so
+         * the data of every node should be unique.
+         */
+        private HashMap<NodeDataType, Integer> ids;
+        private boolean duplicateData;
+        private int connectionCount;
+        private long version;
+
+        public ArrayGraph() {
+            this.connections = new ArrayList[1][1];
+            this.degrees = new int[1];
+        }
+
+        @Override
+        public Collection<Node<NodeDataType, WayDataType>> nodes() {
+            return new AbstractCollection<Node<NodeDataType, WayDataType>>() {
+                @Override
+                public Iterator<Node<NodeDataType, WayDataType>> iterator() {
+                    return new Iterator<Node<NodeDataType, WayDataType>>() {
+                        private int node;
+
+                        @Override
+                        public boolean hasNext() {
+                            return node < nodes.size();
+                        }
+
+                        @Override
+                        public Node<NodeDataType, WayDataType> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            return new ArrayNode(node++);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return nodes.size();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return o instanceof ArrayGraph.ArrayNode && ((ArrayGraph<?, ?>.ArrayNode) o).graph() == ArrayGraph.this && ((ArrayGraph<?, ?>.ArrayNode) o).node() != -1;
+                }
+
+                @Override
+                public Spliterator<Node<NodeDataType, WayDataType>> spliterator() {
+                    return new Util.IndexSpliterator<>(0, nodes.size(), ArrayNode::new);
+                }
+            };
+        }
+
+        @Override
+        public Collection<Node.Connection<NodeDataType, WayDataType>> connections() {
+            return new AbstractCollection<Node.Connection<NodeDataType, WayDataType>>() {
+                @Override
+                public Iterator<Node.Connection<NodeDataType, WayDataType>> iterator() {
+                    return spliterator().iterator();
+                }
+
+                @Override
+                public int size() {
+                    return connectionCount;
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return connectionCount == 0;
+                }
+
+                @Override
+                public Util.RankSpliterator<Node.Connection<NodeDataType, WayDataType>> spliterator() {
+                    int max = Math.min(nodes.size(), connections.length);
+                    int[] offsets = new int[max + 1];
+                    for (int fromId = 0; fromId < max; fromId++) {
+                        offsets[fromId + 1] = offsets[fromId] + degrees[fromId];
+                    }
+                    return new Util.RankSpliterator<>(offsets, 0, offsets[max], ArrayGraph.this::rowIterator);
+                }
+            };
+        }
+
+        private Iterator<Node.Connection<NodeDataType, WayDataType>> rowIterator(int fromId) {
+            ArrayList<WayDataType>[] row = connections[fromId];
+            ArrayNode from = new ArrayNode(fromId);
+            return new Iterator<Node.Connection<NodeDataType, WayDataType>>() {
+                private int toId = -1;
+                private int way;
+
+                @Override
+                public boolean hasNext() {
+                    if (toId != -1 && way < row[toId].size()) return true;
+                    int next = toId + 1;
+                    while (next < row.length && row[next] == null) next++;
+                    if (next >= row.length) return false;
+                    toId = next;
+                    way = 0;
+                    return true;
+                }
+
+                @Override
+                public Node.Connection<NodeDataType, WayDataType> next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    int wayId = way++;
+                    return new ArrayConnection(from, new ArrayNode(toId), wayId, row[toId].get(wayId));
+                }
+            };
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> newNode(NodeDataType data) {
+            int index = nodes.size();
+            nodes.add(data);
+            version++;
+            if (ids != null && ids.putIfAbsent(data, index) != null) duplicateData = true;
+            for (Util.SecondaryIndex<NodeDataType, WayDataType, ?, NodeDataType> secondary : indexes) {
+                secondary.added(data, data);
+            }
+            return new ArrayNode(index);
+        }
+
+        @Override
+        public void removeNode(Node<NodeDataType, WayDataType> node) {
+            ArrayNode an = cast(node);
+            int index = an.node();
+            if (index == -1) return;
+            NodeDataType data = nodes.remove(index);
+            version++;
+            if (ids != null) {
+                boolean first = ids.get(data) == index;
+                ids.replaceAll((key, id) -> id > index ? id - 1 : id);
+                if (first) {
+                    // Equal data before the removed node would have been the first occurrence, so only look behind it
+                    int next = duplicateData ? nodes.subList(index, nodes.size()).indexOf(data) : -1;
+                    if (next == -1) ids.remove(data);
+                    else ids.put(data, index + next);
+                }
+            }
+            for (Util.SecondaryIndex<NodeDataType, WayDataType, ?, NodeDataType> secondary : indexes) {
+                secondary.removed(data, data);
+            }
+            int length = connections.length;
+            if (index < length) {
+                for (int fromId = 0; fromId < length; fromId++) {
+                    ArrayList<WayDataType> ways = connections[fromId][index];
+                    if (ways == null) continue;
+                    degrees[fromId] -= ways.size();
+                    connectionCount -= ways.size();
+                }
+                connectionCount -= degrees[index];
+                // The row of the removed node is cleared and becomes the last row
+                ArrayList<WayDataType>[] removedRow = connections[index];
+                Arrays.fill(removedRow, null);
+                System.arraycopy(connections, index + 1, connections, index, length - index - 1);
+                System.arraycopy(degrees, index + 1, degrees, index, length - index - 1);
+                connections[length - 1] = removedRow;
+                degrees[length - 1] = 0;
+                for (ArrayList<WayDataType>[] row : connections) {
+                    System.arraycopy(row, index + 1, row, index, length - index - 1);
+                    row[length - 1] = null;
+                }
+            }
+            int newSize = nodes.size();
+            if (newSize * 2 < length && newSize != 0) {
+                connections = Arrays.copyOf(connections, length / 2);
+                for (int fromId = 0; fromId < connections.length; fromId++) {
+                    connections[fromId] = Arrays.copyOf(connections[fromId], length / 2);
+                }
+                degrees = Arrays.copyOf(degrees, length / 2);
+            }
+        }
+
+        @Override
+        public Node.Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way) {
+            ArrayNode afrom = cast(from);
+            ArrayNode ato = cast(to);
+            ensureCapacity(Math.max(afrom.node(), ato.node()));
+            ArrayList<WayDataType> ways = connections[afrom.node][ato.node];
+            if (ways == null) {
+                ways = new ArrayList<>(1);
+                connections[afrom.node][ato.node] = ways;
+            }
+            int wayId = ways.size();
+            ways.add(wayId, way);
+            degrees[afrom.node]++;
+            connectionCount++;
+            version++;
+            return new ArrayConnection(afrom, ato, wayId, way);
+        }
+
+        private void ensureCapacity(int min) {
+            if (connections.length <= min) {
+                int newLength = connections.length;
+                do {
+                    newLength *= 2;
+                } while (newLength <= min);
+                ArrayList<WayDataType>[][] oldConnections = connections;
+                connections = new ArrayList[newLength][newLength];
+                for (int fromId = 0; fromId < oldConnections.length; fromId++) {
+                    System.arraycopy(oldConnections[fromId], 0, connections[fromId], 0, oldConnections[fromId].length);
+                }
+                degrees = Arrays.copyOf(degrees, newLength);
+            }
+        }
+
+        @Override
+        public void removeConnection(Node.Connection<NodeDataType, WayDataType> connection) {
+            ArrayConnection con = cast(connection);
+            WayDataType way = con.way();
+            if (way == null) return;
+            ArrayList<WayDataType> ways = connections[con.from.node()][con.to.node()];
+            ways.remove(con.wayId);
+            degrees[con.from.node]--;
+            connectionCount--;
+            version++;
+            if (ways.isEmpty()) {
+                connections[con.from.node][con.to.node] = null;
+            }
+        }
+
+        @Override
+        public void batch(Consumer<? super Batch<NodeDataType, WayDataType>> action) {
+            Util.MutationBatch<NodeDataType, WayDataType> batch = new Util.MutationBatch<>(data -> new Util.PendingNode<>(this, data));
+            action.accept(batch);
+
+            // Validate everything and compute the new ids before the first modification
+            int size = nodes.size();
+            BitSet removedNodes = new BitSet(size);
+            for (Node<NodeDataType, WayDataType> node : batch.removedNodes) {
+                int id = cast(node).node();
+                if (id != -1) removedNodes.set(id);
+            }
+            HashMap<Long, BitSet> removedWays = new HashMap<>();
+            for (Node.Connection<NodeDataType, WayDataType> connection : batch.removedConnections) {
+                ArrayConnection con = cast(connection);
+                if (con.way() == null) continue;
+                removedWays.computeIfAbsent((long) con.from.node << 32 | con.to.node, cell -> new BitSet()).set(con.wayId);
+            }
+            int[] newIds = new int[size];
+            int kept = 0;
+            for (int id = 0; id < size; id++) {
+                newIds[id] = removedNodes.get(id) ? -1 : kept++;
+            }
+            Map<Node<NodeDataType, WayDataType>, Integer> pendingIds = new HashMap<>();
+            for (Node<NodeDataType, WayDataType> node : batch.newNodes) {
+                pendingIds.put(node, kept + pendingIds.size());
+            }
+            Util.IntList addedFrom = new Util.IntList();
+            Util.IntList addedTo = new Util.IntList();
+            List<WayDataType> addedWays = new ArrayList<>();
+            int maxEndpoint = -1;
+            for (int index = 0; index < batch.newConnectionCount(); index++) {
+                if (batch.dropped(index)) continue;
+                int from = endpoint(pendingIds, newIds, batch.newFrom(index));
+                int to = endpoint(pendingIds, newIds, batch.newTo(index));
+                addedFrom.add(from);
+                addedTo.add(to);
+                addedWays.add(batch.newWay(index));
+                maxEndpoint = Math.max(maxEndpoint, Math.max(from, to));
+            }
+            if (removedWays.isEmpty() && removedNodes.isEmpty() && pendingIds.isEmpty() && addedWays.isEmpty()) return;
+
+            for (Map.Entry<Long, BitSet> entry : removedWays.entrySet()) {
+                int fromId = (int) (entry.getKey() >>> 32);
+                int toId = (int) (long) entry.getKey();
+                ArrayList<WayDataType> ways = connections[fromId][toId];
+                BitSet remove = entry.getValue();
+                int write = 0;
+                for (int read = 0; read < ways.size(); read++) {
+                    if (!remove.get(read)) ways.set(write++, ways.get(read));
+                }
+                int count = ways.size() - write;
+                ways.subList(write, ways.size()).clear();
+                degrees[fromId] -= count;
+                connectionCount -= count;
+                if (ways.isEmpty()) connections[fromId][toId] = null;
+            }
+
+            if (!removedNodes.isEmpty()) {
+                // One compaction of the matrix in place instead of shifting it for every removed node
+                int length = connections.length;
+                int max = Math.min(size, length);
+                int[] gaps = removedNodes.get(0, max).stream().toArray();
+                List<ArrayList<WayDataType>[]> freed = new ArrayList<>();
+                for (int fromId = 0; fromId < max; fromId++) {
+                    ArrayList<WayDataType>[] row = connections[fromId];
+                    if (newIds[fromId] == -1) {
+                        connectionCount -= degrees[fromId];
+                        Arrays.fill(row, null);
+                        freed.add(row);
+                        continue;
+                    }
+                    int degree = degrees[fromId];
+                    if (degree != 0 && gaps.length != 0) {
+                        // Every segment between two removed columns moves left by the number of columns removed before it
+                        for (int gap = 0; gap < gaps.length; gap++) {
+                            ArrayList<WayDataType> ways = row[gaps[gap]];
+                            if (ways != null) {
+                                degree -= ways.size();
+                                connectionCount -= ways.size();
+                            }
+                            int end = gap + 1 < gaps.length ? gaps[gap + 1] : max;
+                            System.arraycopy(row, gaps[gap] + 1, row, gaps[gap] - gap, end - gaps[gap] - 1);
+                        }
+                        Arrays.fill(row, max - gaps.length, max, null);
+                    }
+                    connections[newIds[fromId]] = row;
+                    degrees[newIds[fromId]] = degree;
+                }
+                for (int index = 0; index < freed.size(); index++) {
+                    connections[max - freed.size() + index] = freed.get(index);
+                    degrees[max - freed.size() + index] = 0;
+                }
+                int finalSize = kept + pendingIds.size();
+                if (finalSize * 2 < length && finalSize != 0 && length / 2 > maxEndpoint) {
+                    connections = Arrays.copyOf(connections, length / 2);
+                    for (int fromId = 0; fromId < connections.length; fromId++) {
+                        connections[fromId] = Arrays.copyOf(connections[fromId], length / 2);
+                    }
+                    degrees = Arrays.copyOf(degrees, length / 2);
+                }
+                int write = 0;
+                for (int id = 0; id < size; id++) {
+                    NodeDataType data = nodes.get(id);
+                    if (newIds[id] != -1) {
+                        nodes.set(write++, data);
+                        continue;
+                    }
+                    for (Util.SecondaryIndex<NodeDataType, WayDataType, ?, NodeDataType> secondary : indexes) {
+                        secondary.removed(data, data);
+                    }
+                }
+                nodes.subList(write, size).clear();
+                if (ids != null) indexData();
+            }
+            if (maxEndpoint != -1) ensureCapacity(maxEndpoint);
+
+            nodes.ensureCapacity(kept + pendingIds.size());
+            for (Node<NodeDataType, WayDataType> node : batch.newNodes) {
+                NodeDataType data = node.data();
+                if (ids != null && ids.putIfAbsent(data, nodes.size()) != null) duplicateData = true;
+                nodes.add(data);
+                for (Util.SecondaryIndex<NodeDataType, WayDataType, ?, NodeDataType> secondary : indexes) {
+                    secondary.added(data, data);
+                }
+            }
+            for (int index = 0; index < addedWays.size(); index++) {
+                int fromId = addedFrom.get(index);
+                int toId = addedTo.get(index);
+                ArrayList<WayDataType> ways = connections[fromId][toId];
+                if (ways == null) {
+                    ways = new ArrayList<>(1);
+                    connections[fromId][toId] = ways;
+                }
+                ways.add(addedWays.get(index));
+                degrees[fromId]++;
+            }
+            connectionCount += addedWays.size();
+            for (Map.Entry<Node<NodeDataType, WayDataType>, Integer> entry : pendingIds.entrySet()) {
+                ((Util.PendingNode<NodeDataType, WayDataType>) entry.getKey()).resolve(new ArrayNode(entry.getValue()));
+            }
+            version++;
+        }
+
+        private int endpoint(Map<Node<NodeDataType, WayDataType>, Integer> pendingIds, int[] newIds, Node<NodeDataType, WayDataType> node) {
+            Integer pending = pendingIds.get(node);
+            if (pending != null) return pending;
+            int id = cast(node).node();
+            if (id == -1) throw new IllegalArgumentException("Node is not in this graph");
+            return newIds[id];
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> node(int id) {
+            return new ArrayNode(id);
+        }
+
+        @Override
+        public int nodeIdBound() {
+            return nodes.size();
+        }
+
+        @Override
+        public void forEachNeighbor(int node, IntObjConsumer<? super WayDataType> action) {
+            if (node < 0 || node >= nodes.size()) throw new IndexOutOfBoundsException("Node " + node);
+            if (node >= connections.length) return;
+            ArrayList<WayDataType>[] row = connections[node];
+            for (int toId = 0; toId < row.length; toId++) {
+                ArrayList<WayDataType> ways = row[toId];
+                if (ways == null) continue;
+                for (int way = 0; way < ways.size(); way++) {
+                    action.accept(toId, ways.get(way));
+                }
+            }
+        }
+
+        @Override
+        public void forEachEdge(EdgeVisitor<? super WayDataType> visitor) {
+            int max = Math.min(nodes.size(), connections.length);
+            for (int fromId = 0; fromId < max; fromId++) {
+                if (degrees[fromId] == 0) continue;
+                ArrayList<WayDataType>[] row = connections[fromId];
+                for (int toId = 0; toId < row.length; toId++) {
+                    ArrayList<WayDataType> ways = row[toId];
+                    if (ways == null) continue;
+                    for (int way = 0; way < ways.size(); way++) {
+                        visitor.visit(fromId, toId, ways.get(way));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void reorder(NodeOrder order) {
+            if (order.size() != nodes.size()) throw new IllegalArgumentException("Order has " + order.size() + " nodes, graph has " + nodes.size());
+            if (nodes.isEmpty()) return;
+            version++;
+            // Nodes without connections may be outside the matrix, after reordering any node may need a row
+            ensureCapacity(nodes.size() - 1);
+            ArrayList<NodeDataType> oldNodes = new ArrayList<>(nodes);
+            for (int newId = 0; newId < oldNodes.size(); newId++) {
+                nodes.set(newId, oldNodes.get(order.oldId(newId)));
+            }
+            if (ids != null) indexData();
+            int length = connections.length;
+            ArrayList<WayDataType>[][] oldConnections = connections;
+            int[] oldDegrees = degrees;
+            // Rows past the last node stay empty, every other row is a permuted copy of its old row
+            connections = oldConnections.clone();
+            degrees = new int[length];
+            for (int fromId = 0; fromId < oldNodes.size(); fromId++) {
+                int oldFromId = order.oldId(fromId);
+                ArrayList<WayDataType>[] oldRow = oldConnections[oldFromId];
+                ArrayList<WayDataType>[] row = oldRow.clone();
+                degrees[fromId] = oldDegrees[oldFromId];
+                if (oldDegrees[oldFromId] == 0) {
+                    Arrays.fill(row, null);
+                } else {
+                    for (int toId = 0; toId < oldNodes.size(); toId++) {
+                        row[toId] = oldRow[order.oldId(toId)];
+                    }
+                }
+                connections[fromId] = row;
+            }
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public NodeOrder topologicalOrder() {
+            return topologicalOrder.get(version, () -> NodeOrder.topological(this));
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> findNode(NodeDataType data) {
+            int index = indexOf(data);
+            return index == -1 ? null : new ArrayNode(index);
+        }
+
+        @Override
+        public <K> NodeIndex<NodeDataType, WayDataType, K> index(Function<? super NodeDataType, ? extends K> key) {
+            Util.SecondaryIndex<NodeDataType, WayDataType, K, NodeDataType> index = new Util.SecondaryIndex<>(key, this::findNode, indexes::remove);
+            for (NodeDataType data : nodes) {
+                index.added(data, data);
+            }
+            indexes.add(index);
+            return index;
+        }
+
+        @Override
+        public void indexData() {
+            HashMap<NodeDataType, Integer> index = new HashMap<>();
+            duplicateData = false;
+            for (int id = 0; id < nodes.size(); id++) {
+                if (index.putIfAbsent(nodes.get(id), id) != null) duplicateData = true;
+            }
+            ids = index;
+        }
+
+        private int indexOf(NodeDataType data) {
+            if (ids == null) return nodes.indexOf(data);
+            Integer index = ids.get(data);
+            return index == null ? -1 : index;
+        }
+
+        private ArrayConnection cast(Node.Connection<NodeDataType, WayDataType> connection) {
+            if (!ArrayConnection.class.isInstance(connection)) throw new IllegalArgumentException("Wrong connection");
+            if (connection.graph() != ArrayGraph.this) throw new IllegalStateException("Connection not of this graph");
+            return (ArrayConnection) connection;
+        }
+
+        private ArrayNode cast(Node<NodeDataType, WayDataType> node) {
+            if (!ArrayNode.class.isInstance(node)) throw new IllegalArgumentException("Wrong node");
+            if (((ArrayNode) node).graph() != this) throw new IllegalStateException("Node not of this graph");
+            return (ArrayNode) node;
+        }
+
+        private class ArrayNode implements Node<NodeDataType, WayDataType> {
+
+            private int node;
+            private NodeDataType data;
+
+            public ArrayNode(int node) {
+                this.node = node;
+                this.data = nodes.get(node);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                ArrayNode arrayNode = (ArrayNode) o;
+                return node == arrayNode.node && data.equals(arrayNode.data);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(node, data);
+            }
+
+            public int node() {
+                if (node == -1) return -1;
+                // Removing a node before this one shifts it down, possibly below the size
+                if (nodes.size() <= node || !nodes.get(node).equals(data)) {
+                    node = indexOf(data);
+                    if (node == -1) {
+                        data = null; // Node removed
+                    }
+                }
+                return node;
+            }
+
+            @Override
+            public int id() {
+                return node();
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> connections() {
+                List<Connection<NodeDataType, WayDataType>> con = new ArrayList<>();
+                int node = node();
+                if (node == -1) {
+                    return Collections.emptyList(); // Node removed
+                }
+                if (node >= connections.length) {
+                    return Collections.emptyList();
+                }
+                ArrayList<WayDataType>[] con2 = connections[node];
+                for (int toNr = 0; toNr < con2.length; toNr++) {
+                    if (con2[toNr] == null) continue;
+                    for (int i = 0; i < con2[toNr].size(); i++) {
+                        con.add(new ArrayConnection(new ArrayNode(node), new ArrayNode(toNr), i, con2[toNr].get(i)));
+                    }
+                }
+                return Collections.unmodifiableList(con);
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> origins() {
+                int node = node();
+                if (node == -1 || node >= connections.length) {
+                    return Collections.emptyList();
+                }
+                List<Connection<NodeDataType, WayDataType>> con = new ArrayList<>();
+                int max = Math.min(nodes.size(), connections.length);
+                for (int fromNr = 0; fromNr < max; fromNr++) {
+                    ArrayList<WayDataType> ways = connections[fromNr][node];
+                    if (ways == null) continue;
+                    for (int i = 0; i < ways.size(); i++) {
+                        con.add(new ArrayConnection(new ArrayNode(fromNr), new ArrayNode(node), i, ways.get(i)));
+                    }
+                }
+                return Collections.unmodifiableList(con);
+            }
+
+            @Override
+            public Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way) {
+                return graph().newConnection(this, to, way);
+            }
+
+            @Override
+            public void removeConnection(Connection<NodeDataType, WayDataType> connection) {
+                graph().removeConnection(connection);
+            }
+
+            @Override
+            public NodeDataType data() {
+                node();
+                return data;
+            }
+
+            @Override
+            public ArrayGraph<NodeDataType, WayDataType> graph() {
+                return ArrayGraph.this;
+            }
+
+            @Override
+            public void remove() {
+                graph().removeNode(this);
+            }
+
+            @Override
+            public Collection<Node<NodeDataType, WayDataType>> reachableNodes() {
+                Collection<Node<NodeDataType, WayDataType>> reachable = new HashSet<>();
+                Set<Integer> used = new HashSet<>();
+                reachableNodes(reachable, used, this.node());
+                used.clear();
+                return Collections.unmodifiableCollection(reachable);
+            }
+
+            private void reachableNodes(Collection<Node<NodeDataType, WayDataType>> nodes, Set<Integer> used, int currentNode) {
+                used.add(currentNode);
+                nodes.add(new ArrayNode(currentNode));
+                for (int toNr = 0; toNr < connections[currentNode].length; toNr++) {
+                    if (used.contains(toNr)) continue;
+                    ArrayList<WayDataType> ways = connections[currentNode][toNr];
+                    if (ways == null) continue;
+                    reachableNodes(nodes, used, toNr);
+                }
+            }
+        }
+
+
+        private class ArrayConnection implements Node.Connection<NodeDataType, WayDataType> {
+
+            private final ArrayNode from;
+            private final ArrayNode to;
+            private int wayId;
+            private WayDataType way;
+
+            public ArrayConnection(ArrayNode from, ArrayNode to, int wayId, WayDataType way) {
+                this.from = from;
+                this.to = to;
+                this.wayId = wayId;
+                this.way = way;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                ArrayConnection that = (ArrayConnection) o;
+                return wayId == that.wayId && Objects.equals(from, that.from) && Objects.equals(to, that.to) && Objects.equals(way, that.way);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(from, to, wayId, way);
+            }
+
+            @Override
+            public ArrayNode from() {
+                return from;
+            }
+
+            @Override
+            public ArrayNode to() {
+                return to;
+            }
+
+            @Override
+            public ArrayGraph<NodeDataType, WayDataType> graph() {
+                return ArrayGraph.this;
+            }
+
+            @Override
+            public WayDataType way() {
+                if (way == null) return null;
+                int fromId = from.node();
+                int toId = to.node();
+                if (fromId == -1 || toId == -1 || fromId >= connections.length || toId >= connections.length) {
+                    wayId = -1;
+                    return way = null;
+                }
+                ArrayList<WayDataType> cons = connections[fromId][toId];
+                if (cons == null || cons.size() <= wayId) {
+                    wayId = -1;
+                    return way = null;
+                }
+                WayDataType current = cons.get(wayId);
+                if (!current.equals(way)) {
+                    wayId = cons.indexOf(way);
+                    if (wayId == -1) {
+                        return way = null;
+                    }
+                }
+                return way;
+            }
+
+            @Override
+            public void remove() {
+                graph().removeConnection(this);
+            }
+        }
+    }
+
+
+    /**
+     * Read-only graph that stores the connections of every node sorted by target and gap encoded with varints in a
+     * single byte array, like WebGraph. The first target of a node is stored relative to the node id, every further
+     * target as the gap to the previous one. Only every {@value #BLOCK_SIZE}th node has its position stored, the
+     * nodes in between are skipped over sequentially.
+     * <p>
+     * Node and connection instances are created on access and compare by id.
+     *
+     * @see Graph#compress(Graph)
+     */
+    final class CompressedGraph<NodeDataType, WayDataType> implements Graph<NodeDataType, WayDataType> {
+        private static final int BLOCK_SHIFT = 5;
+        private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+        private final List<NodeDataType> data;
+        /**
+         * The ways of all connections in encoded order, so a connection is identified by its rank.
+         */
+        private final List<WayDataType> ways;
+        private final byte[] adjacency;
+        private final int[] blockPositions;
+        private final int[] blockRanks;
+        /**
+         * Built on the first {@link Node#origins()}, the ranks of the connections sorted by target.
+         */
+        private int[] originOffsets;
+        private int[] originRanks;
+        private int[] originSources;
+
+        private CompressedGraph(List<NodeDataType> data, List<WayDataType> ways, byte[] adjacency, int[] blockPositions, int[] blockRanks) {
+            this.data = data;
+            this.ways = ways;
+            this.adjacency = adjacency;
+            this.blockPositions = blockPositions;
+            this.blockRanks = blockRanks;
+        }
+
+        static <NodeDataType, WayDataType> CompressedGraph<NodeDataType, WayDataType> of(Graph<NodeDataType, WayDataType> graph) {
+            int count = graph.nodes().size();
+            if (graph.nodeIdBound() != count) throw new IllegalArgumentException("Node ids of the graph are not dense");
+            ArrayList<NodeDataType> data = new ArrayList<>(count);
+            ArrayList<WayDataType> ways = new ArrayList<>();
+            Encoder encoder = new Encoder();
+            int[] blockPositions = new int[(count + BLOCK_SIZE - 1) >>> BLOCK_SHIFT];
+            int[] blockRanks = new int[blockPositions.length];
+            Util.IntList targets = new Util.IntList();
+            List<WayDataType> nodeWays = new ArrayList<>();
+            for (int node = 0; node < count; node++) {
+                data.add(graph.node(node).data());
+                if ((node & (BLOCK_SIZE - 1)) == 0) {
+                    blockPositions[node >>> BLOCK_SHIFT] = encoder.size;
+                    blockRanks[node >>> BLOCK_SHIFT] = ways.size();
+                }
+                targets.clear();
+                nodeWays.clear();
+                graph.forEachNeighbor(node, (to, way) -> {
+                    targets.add(to);
+                    nodeWays.add(way);
+                });
+                // Sort by target, the connection index in the low bits keeps the order of parallel connections
+                long[] order = new long[targets.size()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = (long) targets.get(i) << 32 | i;
+                }
+                Arrays.sort(order);
+                encoder.writeVarInt(order.length);
+                int previous = node;
+                for (int i = 0; i < order.length; i++) {
+                    int target = (int) (order[i] >>> 32);
+                    if (i == 0) encoder.writeVarInt((target - node) << 1 ^ (target - node) >> 31);
+                    else encoder.writeVarInt(target - previous);
+                    previous = target;
+                    ways.add(nodeWays.get((int) order[i]));
+                }
+            }
+            ways.trimToSize();
+            return new CompressedGraph<>(data, ways, Arrays.copyOf(encoder.bytes, encoder.size), blockPositions, blockRanks);
+        }
+
+        /**
+         * @return the size of the encoded connections in bytes
+         */
+        public int adjacencyBytes() {
+            return adjacency.length;
+        }
+
+        /**
+         * @return a decoder positioned at the degree of the given node, its rank is the rank of the first connection
+         */
+        private Decoder locate(int node) {
+            if (node < 0 || node >= data.size()) throw new IndexOutOfBoundsException("Node " + node);
+            int block = node >>> BLOCK_SHIFT;
+            Decoder decoder = new Decoder(adjacency, blockPositions[block], blockRanks[block]);
+            for (int skip = block << BLOCK_SHIFT; skip < node; skip++) {
+                int degree = decoder.readVarInt();
+                decoder.skipVarInts(degree);
+                decoder.rank += degree;
+            }
+            return decoder;
+        }
+
+        @Override
+        public void forEachNeighbor(int node, IntObjConsumer<? super WayDataType> action) {
+            Decoder decoder = locate(node);
+            int degree = decoder.readVarInt();
+            int target = node;
+            for (int i = 0; i < degree; i++) {
+                target = decoder.next(target, i == 0);
+                action.accept(target, ways.get(decoder.rank + i));
+            }
+        }
+
+        @Override
+        public void forEachEdge(EdgeVisitor<? super WayDataType> visitor) {
+            Decoder decoder = new Decoder(adjacency, 0, 0);
+            for (int node = 0; node < data.size(); node++) {
+                int degree = decoder.readVarInt();
+                int target = node;
+                for (int i = 0; i < degree; i++) {
+                    target = decoder.next(target, i == 0);
+                    visitor.visit(node, target, ways.get(decoder.rank++));
+                }
+            }
+        }
+
+        private List<Node.Connection<NodeDataType, WayDataType>> connections(int node) {
+            Decoder decoder = locate(node);
+            int degree = decoder.readVarInt();
+            List<Node.Connection<NodeDataType, WayDataType>> connections = new ArrayList<>(degree);
+            int target = node;
+            for (int i = 0; i < degree; i++) {
+                target = decoder.next(target, i == 0);
+                connections.add(new CompressedConnection(node, target, decoder.rank + i));
+            }
+            return connections;
+        }
+
+        private synchronized void buildOrigins() {
+            if (originOffsets != null) return;
+            int[] offsets = new int[data.size() + 1];
+            forEachEdge((from, to, way) -> offsets[to + 1]++);
+            for (int node = 0; node < data.size(); node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] ranks = new int[ways.size()];
+            int[] sources = new int[ways.size()];
+            int[] sizes = new int[data.size()];
+            int[] rank = new int[1];
+            forEachEdge((from, to, way) -> {
+                int index = offsets[to] + sizes[to]++;
+                ranks[index] = rank[0]++;
+                sources[index] = from;
+            });
+            originRanks = ranks;
+            originSources = sources;
+            originOffsets = offsets;
+        }
+
+        @Override
+        public Collection<Node<NodeDataType, WayDataType>> nodes() {
+            return new AbstractCollection<Node<NodeDataType, WayDataType>>() {
+                @Override
+                public Iterator<Node<NodeDataType, WayDataType>> iterator() {
+                    return Spliterators.iterator(spliterator());
+                }
+
+                @Override
+                public int size() {
+                    return data.size();
+                }
+
+                @Override
+                public Spliterator<Node<NodeDataType, WayDataType>> spliterator() {
+                    return new Util.IndexSpliterator<>(0, data.size(), CompressedNode::new);
+                }
+            };
+        }
+
+        @Override
+        public Collection<Node.Connection<NodeDataType, WayDataType>> connections() {
+            return new AbstractCollection<Node.Connection<NodeDataType, WayDataType>>() {
+                @Override
+                public Iterator<Node.Connection<NodeDataType, WayDataType>> iterator() {
+                    return new Iterator<Node.Connection<NodeDataType, WayDataType>>() {
+                        private final Decoder decoder = new Decoder(adjacency, 0, 0);
+                        private int node = -1;
+                        private int remaining;
+                        private int target;
+                        private boolean first;
+
+                        @Override
+                        public boolean hasNext() {
+                            while (remaining == 0) {
+                                if (node + 1 >= data.size()) return false;
+                                node++;
+                                remaining = decoder.readVarInt();
+                                target = node;
+                                first = true;
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public Node.Connection<NodeDataType, WayDataType> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            target = decoder.next(target, first);
+                            first = false;
+                            remaining--;
+                            return new CompressedConnection(node, target, decoder.rank++);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ways.size();
+                }
+            };
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> node(int id) {
+            if (id < 0 || id >= data.size()) throw new IndexOutOfBoundsException("Node " + id);
+            return new CompressedNode(id);
+        }
+
+        @Override
+        public int nodeIdBound() {
+            return data.size();
+        }
+
+        @Override
+        public long version() {
+            return 0;
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> newNode(NodeDataType data) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeNode(Node<NodeDataType, WayDataType> node) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node.Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeConnection(Node.Connection<NodeDataType, WayDataType> connection) {
+            throw readOnly();
+        }
+
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("Compressed graphs are read-only");
+        }
+
+        @Override
+        public String toString() {
+            return "CompressedGraph{nodes=" + data.size() + ", connections=" + ways.size() + ", adjacencyBytes=" + adjacency.length + '}';
+        }
+
+        private static final class Encoder {
+            private byte[] bytes = new byte[64];
+            private int size;
+
+            private void writeVarInt(int value) {
+                if (size + 5 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                while ((value & ~0x7F) != 0) {
+                    bytes[size++] = (byte) (value & 0x7F | 0x80);
+                    value >>>= 7;
+                }
+                bytes[size++] = (byte) value;
+            }
+        }
+
+        private static final class Decoder {
+            private final byte[] bytes;
+            private int position;
+            private int rank;
+
+            private Decoder(byte[] bytes, int position, int rank) {
+                this.bytes = bytes;
+                this.position = position;
+                this.rank = rank;
+            }
+
+            private int readVarInt() {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                while ((b = bytes[position++]) < 0) {
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                }
+                return value | b << shift;
+            }
+
+            private void skipVarInts(int count) {
+                for (int i = 0; i < count; i++) {
+                    while (bytes[position++] < 0) {
+                        // Continuation byte
+                    }
+                }
+            }
+
+            /**
+             * @param previous the previous target, or the node itself for the first one
+             */
+            private int next(int previous, boolean first) {
+                int value = readVarInt();
+                if (first) return previous + (value >>> 1 ^ -(value & 1));
+                return previous + value;
+            }
+        }
+
+        private final class CompressedNode implements Node<NodeDataType, WayDataType> {
+            private final int id;
+
+            private CompressedNode(int id) {
+                this.id = id;
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> connections() {
+                return Collections.unmodifiableList(CompressedGraph.this.connections(id));
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> origins() {
+                buildOrigins();
+                List<Connection<NodeDataType, WayDataType>> origins = new ArrayList<>(originOffsets[id + 1] - originOffsets[id]);
+                for (int i = originOffsets[id]; i < originOffsets[id + 1]; i++) {
+                    origins.add(new CompressedConnection(originSources[i], id, originRanks[i]));
+                }
+                return Collections.unmodifiableList(origins);
+            }
+
+            @Override
+            public Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way) {
+                throw readOnly();
+            }
+
+            @Override
+            public void removeConnection(Connection<NodeDataType, WayDataType> connection) {
+                throw readOnly();
+            }
+
+            @Override
+            public NodeDataType data() {
+                return data.get(id);
+            }
+
+            @Override
+            public int id() {
+                return id;
+            }
+
+            @Override
+            public Graph<NodeDataType, WayDataType> graph() {
+                return CompressedGraph.this;
+            }
+
+            @Override
+            public void remove() {
+                throw readOnly();
+            }
+
+            @Override
+            public Collection<Node<NodeDataType, WayDataType>> reachableNodes() {
+                boolean[] visited = new boolean[data.size()];
+                Util.IntList queue = new Util.IntList();
+                visited[id] = true;
+                queue.add(id);
+                List<Node<NodeDataType, WayDataType>> reachable = new ArrayList<>();
+                for (int head = 0; head < queue.size(); head++) {
+                    int node = queue.get(head);
+                    reachable.add(new CompressedNode(node));
+                    forEachNeighbor(node, (to, way) -> {
+                        if (visited[to]) return;
+                        visited[to] = true;
+                        queue.add(to);
+                    });
+                }
+                return Collections.unmodifiableCollection(reachable);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof CompressedGraph.CompressedNode)) return false;
+                CompressedGraph<?, ?>.CompressedNode that = (CompressedGraph<?, ?>.CompressedNode) o;
+                return id == that.id && graph() == that.graph();
+            }
+
+            @Override
+            public int hashCode() {
+                return id;
+            }
+
+            @Override
+            public String toString() {
+                return "Node{id=" + id + ", data=" + data.get(id) + '}';
+            }
+        }
+
+        private final class CompressedConnection implements Node.Connection<NodeDataType, WayDataType> {
+            private final int from;
+            private final int to;
+            private final int rank;
+
+            private CompressedConnection(int from, int to, int rank) {
+                this.from = from;
+                this.to = to;
+                this.rank = rank;
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> from() {
+                return new CompressedNode(from);
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> to() {
+                return new CompressedNode(to);
+            }
+
+            @Override
+            public Graph<NodeDataType, WayDataType> graph() {
+                return CompressedGraph.this;
+            }
+
+            @Override
+            public WayDataType way() {
+                return ways.get(rank);
+            }
+
+            @Override
+            public void remove() {
+                throw readOnly();
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof CompressedGraph.CompressedConnection)) return false;
+                CompressedGraph<?, ?>.CompressedConnection that = (CompressedGraph<?, ?>.CompressedConnection) o;
+                return rank == that.rank && graph() == that.graph();
+            }
+
+            @Override
+            public int hashCode() {
+                return rank;
+            }
+
+            @Override
+            public String toString() {
+                return "Connection{from=" + data.get(from) + ", to=" + data.get(to) + ", way=" + ways.get(rank) + '}';
+            }
+        }
+    }
+
+
+    /**
+     * A read-only view of another graph that hides nodes and connections, without copying anything. Nodes keep the
+     * ids of the underlying graph, so ids are not dense: {@link #node(int)} returns null for hidden nodes and arrays
+     * indexed by id need {@link #nodeIdBound()} entries. Changes of the underlying graph or the mask show up immediately.
+     *
+     * @see Graph#view(BitSet, EdgeFilter)
+     */
+    final class FilteredGraph<NodeDataType, WayDataType> implements Graph<NodeDataType, WayDataType> {
+        private final Graph<NodeDataType, WayDataType> graph;
+        private final BitSet nodeMask;
+        private final EdgeFilter<? super WayDataType> edgeFilter;
+
+        private FilteredGraph(Graph<NodeDataType, WayDataType> graph, BitSet nodeMask, EdgeFilter<? super WayDataType> edgeFilter) {
+            this.graph = graph;
+            this.nodeMask = nodeMask;
+            this.edgeFilter = edgeFilter;
+        }
+
+        /**
+         * @return the graph this is a view of
+         */
+        public Graph<NodeDataType, WayDataType> graph() {
+            return graph;
+        }
+
+        private boolean visible(int node) {
+            return node >= 0 && node < graph.nodeIdBound() && (nodeMask == null || nodeMask.get(node));
+        }
+
+        private boolean visible(int from, int to, WayDataType way) {
+            return visible(to) && (edgeFilter == null || edgeFilter.accept(from, to, way));
+        }
+
+        private boolean visible(Node.Connection<NodeDataType, WayDataType> connection) {
+            return visible(connection.from().id()) && visible(connection.from().id(), connection.to().id(), connection.way());
+        }
+
+        @Override
+        public int nodeIdBound() {
+            return graph.nodeIdBound();
+        }
+
+        @Override
+        public boolean undirected() {
+            return graph.undirected();
+        }
+
+        @Override
+        public void forEachNode(IntConsumer action) {
+            int bound = graph.nodeIdBound();
+            if (nodeMask == null) {
+                for (int node = 0; node < bound; node++) {
+                    action.accept(node);
+                }
+                return;
+            }
+            for (int node = nodeMask.nextSetBit(0); node >= 0 && node < bound; node = nodeMask.nextSetBit(node + 1)) {
+                action.accept(node);
+            }
+        }
+
+        @Override
+        public void forEachNeighbor(int node, IntObjConsumer<? super WayDataType> action) {
+            if (!visible(node)) return;
+            graph.forEachNeighbor(node, (to, way) -> {
+                if (visible(node, to, way)) action.accept(to, way);
+            });
+        }
+
+        @Override
+        public void forEachEdge(EdgeVisitor<? super WayDataType> visitor) {
+            graph.forEachEdge((from, to, way) -> {
+                if (visible(from) && visible(from, to, way)) visitor.visit(from, to, way);
+            });
+        }
+
+        @Override
+        public Collection<Node<NodeDataType, WayDataType>> nodes() {
+            return new AbstractCollection<Node<NodeDataType, WayDataType>>() {
+                @Override
+                public Iterator<Node<NodeDataType, WayDataType>> iterator() {
+                    return new Iterator<Node<NodeDataType, WayDataType>>() {
+                        private int next = advance(0);
+
+                        private int advance(int from) {
+                            int bound = graph.nodeIdBound();
+                            if (nodeMask == null) return from < bound ? from : -1;
+                            int node = nodeMask.nextSetBit(from);
+                            return node < bound ? node : -1;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != -1;
+                        }
+
+                        @Override
+                        public Node<NodeDataType, WayDataType> next() {
+                            if (next == -1) throw new NoSuchElementException();
+                            Node<NodeDataType, WayDataType> node = new ViewNode(graph.node(next));
+                            next = advance(next + 1);
+                            return node;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int[] size = new int[1];
+                    forEachNode(node -> size[0]++);
+                    return size[0];
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return o instanceof FilteredGraph.ViewNode && ((FilteredGraph<?, ?>.ViewNode) o).graph() == FilteredGraph.this && visible(((FilteredGraph<?, ?>.ViewNode) o).id());
+                }
+            };
+        }
+
+        /**
+         * Counting the connections visits all of them.
+         */
+        @Override
+        public Collection<Node.Connection<NodeDataType, WayDataType>> connections() {
+            return new AbstractCollection<Node.Connection<NodeDataType, WayDataType>>() {
+                @Override
+                public Iterator<Node.Connection<NodeDataType, WayDataType>> iterator() {
+                    Iterator<Node.Connection<NodeDataType, WayDataType>> connections = graph.connections().iterator();
+                    return new Iterator<Node.Connection<NodeDataType, WayDataType>>() {
+                        private Node.Connection<NodeDataType, WayDataType> next = advance();
+
+                        private Node.Connection<NodeDataType, WayDataType> advance() {
+                            while (connections.hasNext()) {
+                                Node.Connection<NodeDataType, WayDataType> connection = connections.next();
+                                if (visible(connection)) return new ViewConnection(connection);
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public Node.Connection<NodeDataType, WayDataType> next() {
+                            if (next == null) throw new NoSuchElementException();
+                            Node.Connection<NodeDataType, WayDataType> connection = next;
+                            next = advance();
+                            return connection;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int[] size = new int[1];
+                    forEachEdge((from, to, way) -> size[0]++);
+                    return size[0];
+                }
+            };
+        }
+
+        /**
+         * @return the node with the given id, or null if it is hidden
+         */
+        @Override
+        public Node<NodeDataType, WayDataType> node(int id) {
+            return visible(id) ? new ViewNode(graph.node(id)) : null;
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> findNode(NodeDataType data) {
+            Node<NodeDataType, WayDataType> node = graph.findNode(data);
+            return node != null && visible(node.id()) ? new ViewNode(node) : null;
+        }
+
+        @Override
+        public Node<NodeDataType, WayDataType> newNode(NodeDataType data) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeNode(Node<NodeDataType, WayDataType> node) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node.Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeConnection(Node.Connection<NodeDataType, WayDataType> connection) {
+            throw readOnly();
+        }
+
+        /**
+         * Converts a node of the underlying graph to the node of this view, so searches that get it as start or target
+         * follow the connections of the view. Hidden nodes have no connections in the view.
+         *
+         * @throws IllegalArgumentException if the node belongs to neither this view nor the graph below it
+         */
+        Node<NodeDataType, WayDataType> own(Node<NodeDataType, WayDataType> node) {
+            if (node == null || node.graph() == this) return node;
+            if (node.graph() != graph) {
+                if (!(graph instanceof FilteredGraph)) throw new IllegalArgumentException("Node is not in this view: " + node);
+                node = ((FilteredGraph<NodeDataType, WayDataType>) graph).own(node);
+            }
+            return new ViewNode(node);
+        }
+
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("Graph views are read-only");
+        }
+
+        @Override
+        public String toString() {
+            return "FilteredGraph{graph=" + graph.getClass().getSimpleName() + ", nodes=" + nodes().size() + '}';
+        }
+
+        private final class ViewNode implements Node<NodeDataType, WayDataType> {
+            private final Node<NodeDataType, WayDataType> node;
+
+            private ViewNode(Node<NodeDataType, WayDataType> node) {
+                this.node = node;
+            }
+
+            private List<Connection<NodeDataType, WayDataType>> filter(List<Connection<NodeDataType, WayDataType>> connections) {
+                List<Connection<NodeDataType, WayDataType>> visible = new ArrayList<>(connections.size());
+                for (Connection<NodeDataType, WayDataType> connection : connections) {
+                    if (visible(connection)) visible.add(new ViewConnection(connection));
+                }
+                return Collections.unmodifiableList(visible);
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> connections() {
+                if (!visible(node.id())) return Collections.emptyList();
+                return filter(node.connections());
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> origins() {
+                if (!visible(node.id())) return Collections.emptyList();
+                return filter(node.origins());
+            }
+
+            @Override
+            public Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way) {
+                throw readOnly();
+            }
+
+            @Override
+            public void removeConnection(Connection<NodeDataType, WayDataType> connection) {
+                throw readOnly();
+            }
+
+            @Override
+            public NodeDataType data() {
+                return node.data();
+            }
+
+            @Override
+            public int id() {
+                return node.id();
+            }
+
+            @Override
+            public Graph<NodeDataType, WayDataType> graph() {
+                return FilteredGraph.this;
+            }
+
+            @Override
+            public void remove() {
+                throw readOnly();
+            }
+
+            @Override
+            public Collection<Node<NodeDataType, WayDataType>> reachableNodes() {
+                Set<Node<NodeDataType, WayDataType>> reachable = new HashSet<>();
+                if (!visible(node.id())) return reachable;
+                BitSet visited = new BitSet();
+                Util.IntList queue = new Util.IntList();
+                visited.set(node.id());
+                queue.add(node.id());
+                for (int head = 0; head < queue.size(); head++) {
+                    int current = queue.get(head);
+                    reachable.add(new ViewNode(graph.node(current)));
+                    forEachNeighbor(current, (to, way) -> {
+                        if (visited.get(to)) return;
+                        visited.set(to);
+                        queue.add(to);
+                    });
+                }
+                return Collections.unmodifiableCollection(reachable);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof FilteredGraph.ViewNode)) return false;
+                FilteredGraph<?, ?>.ViewNode that = (FilteredGraph<?, ?>.ViewNode) o;
+                return graph() == that.graph() && node.equals(that.node);
+            }
+
+            @Override
+            public int hashCode() {
+                return node.hashCode();
+            }
+
+            @Override
+            public String toString() {
+                return node.toString();
+            }
+        }
+
+        private final class ViewConnection implements Node.Connection<NodeDataType, WayDataType> {
+            private final Node.Connection<NodeDataType, WayDataType> connection;
+
+            private ViewConnection(Node.Connection<NodeDataType, WayDataType> connection) {
+                this.connection = connection;
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> from() {
+                return new ViewNode(connection.from());
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> to() {
+                return new ViewNode(connection.to());
+            }
+
+            @Override
+            public Graph<NodeDataType, WayDataType> graph() {
+                return FilteredGraph.this;
+            }
+
+            @Override
+            public WayDataType way() {
+                return connection.way();
+            }
+
+            @Override
+            public void remove() {
+                throw readOnly();
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof FilteredGraph.ViewConnection)) return false;
+                FilteredGraph<?, ?>.ViewConnection that = (FilteredGraph<?, ?>.ViewConnection) o;
+                return graph() == that.graph() && connection.equals(that.connection);
+            }
+
+            @Override
+            public int hashCode() {
+                return connection.hashCode();
+            }
+
+            @Override
+            public String toString() {
+                return connection.toString();
+            }
+        }
+    }
+
+
+    /**
+     * Collects nodes and connections from multiple threads and builds a {@link LinkedGraph} from them. Every thread
+     * appends to its own buffers without synchronization, {@link #build()} merges them and groups the connections by
+     * node in parallel.
+     * <p>
+     * Nodes are referenced by the ids returned by {@link #newNode(Object)}. Ids are dense and may be passed between
+     * threads, they are the ids of the nodes in the built graph. The connections of a node keep the order in which one
+     * thread added them. {@link #build()} may only be called once all producers are done, for example after joining
+     * them, the builder can not be used afterwards.
+     */
+    final class ConcurrentBuilder<NodeDataType, WayDataType> {
+        private final boolean undirected;
+        private final AtomicInteger nodeCount = new AtomicInteger();
+        private final List<Buffer<NodeDataType, WayDataType>> buffers = new ArrayList<>();
+        private final ThreadLocal<Buffer<NodeDataType, WayDataType>> local = ThreadLocal.withInitial(this::register);
+        private volatile boolean built;
+
+        private ConcurrentBuilder(boolean undirected) {
+            this.undirected = undirected;
+        }
+
+        /**
+         * @return the id of the new node
+         */
+        public int newNode(NodeDataType data) {
+            Buffer<NodeDataType, WayDataType> buffer = buffer();
+            int id = nodeCount.getAndIncrement();
+            buffer.nodeIds.add(id);
+            buffer.nodeData.add(data);
+            return id;
+        }
+
+        /**
+         * The nodes may be added later by any thread, they only have to exist when the graph is built.
+         */
+        public void newConnection(int from, int to, WayDataType way) {
+            if (from < 0 || to < 0) throw new IllegalArgumentException("Node " + Math.min(from, to));
+            Buffer<NodeDataType, WayDataType> buffer = buffer();
+            buffer.sources.add(from);
+            buffer.targets.add(to);
+            buffer.ways.add(way);
+        }
+
+        public int nodeCount() {
+            return nodeCount.get();
+        }
+
+        public LinkedGraph<NodeDataType, WayDataType> build() {
+            return build(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * @throws IllegalArgumentException if a connection uses a node that was never added
+         * @throws IllegalStateException    if the graph was already built
+         */
+        public LinkedGraph<NodeDataType, WayDataType> build(ForkJoinPool pool) {
+            synchronized (buffers) {
+                if (built) throw new IllegalStateException("The graph was already built");
+                built = true;
+            }
+            return pool.invoke(ForkJoinTask.adapt(this::merge));
+        }
+
+        private Buffer<NodeDataType, WayDataType> register() {
+            Buffer<NodeDataType, WayDataType> buffer = new Buffer<>();
+            synchronized (buffers) {
+                if (built) throw new IllegalStateException("The graph was already built");
+                buffers.add(buffer);
+            }
+            return buffer;
+        }
+
+        private Buffer<NodeDataType, WayDataType> buffer() {
+            if (built) throw new IllegalStateException("The graph was already built");
+            return local.get();
+        }
+
+        private LinkedGraph<NodeDataType, WayDataType> merge() {
+            int nodes = nodeCount.get();
+            int[] offsets = new int[buffers.size() + 1];
+            for (int index = 0; index < buffers.size(); index++) {
+                long end = (long) offsets[index] + buffers.get(index).ways.size();
+                if (end > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too many connections");
+                offsets[index + 1] = (int) end;
+            }
+            List<NodeDataType> data = new ArrayList<>(Collections.nCopies(nodes, null));
+            int[] sources = new int[offsets[buffers.size()]];
+            int[] targets = new int[sources.length];
+            List<WayDataType> ways = new ArrayList<>(Collections.nCopies(sources.length, null));
+            new Util.ParallelRange(0, buffers.size(), 1, (from, to) -> {
+                for (int index = from; index < to; index++) {
+                    Buffer<NodeDataType, WayDataType> buffer = buffers.get(index);
+                    try {
+                        for (int node = 0; node < buffer.nodeIds.size(); node++) {
+                            data.set(buffer.nodeIds.get(node), buffer.nodeData.get(node));
+                        }
+                        int offset = offsets[index];
+                        for (int connection = 0; connection < buffer.ways.size(); connection++) {
+                            int source = buffer.sources.get(connection);
+                            int target = buffer.targets.get(connection);
+                            if (source >= nodes || target >= nodes) {
+                                throw new IllegalArgumentException("Connection from " + source + " to " + target + " uses a node that was never added");
+                            }
+                            sources[offset + connection] = source;
+                            targets[offset + connection] = target;
+                            ways.set(offset + connection, buffer.ways.get(connection));
+                        }
+                    } finally {
+                        buffer.release();
+                    }
+                }
+            }).invoke();
+            buffers.clear();
+            LinkedGraph<NodeDataType, WayDataType> graph = new LinkedGraph<>(undirected);
+            graph.load(data, sources, targets, ways);
+            return graph;
+        }
+
+        private static final class Buffer<NodeDataType, WayDataType> {
+            private Util.IntList nodeIds = new Util.IntList();
+            private List<NodeDataType> nodeData = new ArrayList<>();
+            private Util.IntList sources = new Util.IntList();
+            private Util.IntList targets = new Util.IntList();
+            private List<WayDataType> ways = new ArrayList<>();
+
+            /**
+             * The thread local map of a producer keeps its buffer until the entry is expunged, which may take long in a
+             * long-lived pool. Dropping the contents keeps only the empty buffer reachable.
+             */
+            private void release() {
+                nodeIds = null;
+                nodeData = null;
+                sources = null;
+                targets = null;
+                ways = null;
+            }
+        }
+    }
+
+
+    class Util {
+        static final class IntList {
+            private int[] elements;
+            private int size;
+
+            IntList() {
+                this(16);
+            }
+
+            IntList(int capacity) {
+                elements = new int[Math.max(1, capacity)];
+            }
+
+            void add(int element) {
+                if (size == elements.length) elements = Arrays.copyOf(elements, size * 2);
+                elements[size++] = element;
+            }
+
+            void addAll(IntList list) {
+                if (size + list.size > elements.length) elements = Arrays.copyOf(elements, Math.max(size * 2, size + list.size));
+                System.arraycopy(list.elements, 0, elements, size, list.size);
+                size += list.size;
+            }
+
+            int get(int index) {
+                return elements[index];
+            }
+
+            int size() {
+                return size;
+            }
+
+            boolean isEmpty() {
+                return size == 0;
+            }
+
+            void clear() {
+                size = 0;
+            }
+
+            int removeLast() {
+                return elements[--size];
+            }
+        }
+
+        /**
+         * Multimap from a derived key to the entries of the nodes. The graph decides what an entry is, it has to be
+         * able to resolve it to the current node.
+         */
+        static final class SecondaryIndex<NodeDataType, WayDataType, K, E> implements NodeIndex<NodeDataType, WayDataType, K> {
+            private final HashMap<K, List<E>> entries = new HashMap<>();
+            private final Function<? super NodeDataType, ? extends K> key;
+            private final Function<E, Node<NodeDataType, WayDataType>> resolve;
+            private final Consumer<SecondaryIndex<NodeDataType, WayDataType, ?, E>> onClose;
+
+            SecondaryIndex(Function<? super NodeDataType, ? extends K> key, Function<E, Node<NodeDataType, WayDataType>> resolve, Consumer<SecondaryIndex<NodeDataType, WayDataType, ?, E>> onClose) {
+                this.key = key;
+                this.resolve = resolve;
+                this.onClose = onClose;
+            }
+
+            void added(NodeDataType data, E entry) {
+                entries.computeIfAbsent(key.apply(data), k -> new ArrayList<>(1)).add(entry);
+            }
+
+            void removed(NodeDataType data, E entry) {
+                K k = key.apply(data);
+                List<E> list = entries.get(k);
+                if (list == null) return;
+                list.remove(entry);
+                if (list.isEmpty()) entries.remove(k);
+            }
+
+            void clear() {
+                entries.clear();
+            }
+
+            @Override
+            public List<Node<NodeDataType, WayDataType>> find(K key) {
+                List<E> list = entries.get(key);
+                if (list == null) return Collections.emptyList();
+                List<Node<NodeDataType, WayDataType>> nodes = new ArrayList<>(list.size());
+                for (E entry : list) {
+                    nodes.add(resolve.apply(entry));
+                }
+                return nodes;
+            }
+
+            @Override
+            public void close() {
+                onClose.accept(this);
+                entries.clear();
+            }
+        }
+
+        /**
+         * Holds a value computed from a graph until the {@link Graph#version() version} of the graph changes. Value and
+         * version are published together, so concurrent readers never see a value with the wrong version.
+         */
+        static final class VersionCache<T> {
+            private volatile Entry<T> entry;
+
+            T get(long currentVersion, Supplier<T> compute) {
+                if (currentVersion == -1) return compute.get();
+                Entry<T> current = entry;
+                if (current == null || current.version != currentVersion) {
+                    current = new Entry<>(currentVersion, compute.get());
+                    entry = current;
+                }
+                return current.value;
+            }
+
+            private static final class Entry<T> {
+                private final long version;
+                private final T value;
+
+                private Entry(long version, T value) {
+                    this.version = version;
+                    this.value = value;
+                }
+            }
+        }
+
+        /**
+         * Records the calls on a {@link Batch}. Connections added earlier to nodes that are removed later in the batch
+         * are dropped, so graphs can apply all removals before all additions.
+         */
+        static final class MutationBatch<NodeDataType, WayDataType> implements Batch<NodeDataType, WayDataType> {
+            private final Function<NodeDataType, Node<NodeDataType, WayDataType>> pending;
+            private final Set<Node<NodeDataType, WayDataType>> created = Collections.newSetFromMap(new IdentityHashMap<>());
+            final Set<Node<NodeDataType, WayDataType>> newNodes = Collections.newSetFromMap(new LinkedHashMap<>());
+            final Set<Node<NodeDataType, WayDataType>> removedNodes = new LinkedHashSet<>();
+            final List<Node.Connection<NodeDataType, WayDataType>> removedConnections = new ArrayList<>();
+            private final List<Node<NodeDataType, WayDataType>> newFrom = new ArrayList<>();
+            private final List<Node<NodeDataType, WayDataType>> newTo = new ArrayList<>();
+            private final List<WayDataType> newWays = new ArrayList<>();
+
+            /**
+             * @param pending creates the nodes returned by {@link #newNode(Object)}
+             */
+            MutationBatch(Function<NodeDataType, Node<NodeDataType, WayDataType>> pending) {
+                this.pending = pending;
+            }
+
+            @Override
+            public Node<NodeDataType, WayDataType> newNode(NodeDataType data) {
+                Node<NodeDataType, WayDataType> node = pending.apply(data);
+                created.add(node);
+                newNodes.add(node);
+                return node;
+            }
+
+            @Override
+            public void removeNode(Node<NodeDataType, WayDataType> node) {
+                if (created.contains(node)) newNodes.remove(node);
+                else removedNodes.add(node);
+            }
+
+            @Override
+            public void newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way) {
+                if (removed(from) || removed(to)) throw new IllegalArgumentException("Node is removed in this batch");
+                newFrom.add(from);
+                newTo.add(to);
+                newWays.add(way);
+            }
+
+            @Override
+            public void removeConnection(Node.Connection<NodeDataType, WayDataType> connection) {
+                if (removed(connection.from()) || removed(connection.to())) {
+                    throw new IllegalStateException("Connection is removed with its node in this batch");
+                }
+                removedConnections.add(connection);
+            }
+
+            private boolean removed(Node<NodeDataType, WayDataType> node) {
+                return created.contains(node) ? !newNodes.contains(node) : removedNodes.contains(node);
+            }
+
+            int newConnectionCount() {
+                return newWays.size();
+            }
+
+            Node<NodeDataType, WayDataType> newFrom(int index) {
+                return newFrom.get(index);
+            }
+
+            Node<NodeDataType, WayDataType> newTo(int index) {
+                return newTo.get(index);
+            }
+
+            WayDataType newWay(int index) {
+                return newWays.get(index);
+            }
+
+            /**
+             * @return true if one of the nodes of the new connection was removed after the connection was added
+             */
+            boolean dropped(int index) {
+                return removed(newFrom.get(index)) || removed(newTo.get(index));
+            }
+
+            void applyInOrder(Graph<NodeDataType, WayDataType> graph) {
+                for (Node.Connection<NodeDataType, WayDataType> connection : removedConnections) {
+                    graph.removeConnection(connection);
+                }
+                for (Node<NodeDataType, WayDataType> node : removedNodes) {
+                    graph.removeNode(node);
+                }
+                for (Node<NodeDataType, WayDataType> node : newNodes) {
+                    ((PendingNode<NodeDataType, WayDataType>) node).resolve(graph.newNode(node.data()));
+                }
+                for (int index = 0; index < newWays.size(); index++) {
+                    if (dropped(index)) continue;
+                    graph.newConnection(PendingNode.resolved(newFrom.get(index)), PendingNode.resolved(newTo.get(index)), newWays.get(index));
+                }
+            }
+        }
+
+        /**
+         * Returned by {@link Batch#newNode(Object)} when the graph can not create its node before the batch is applied,
+         * forwards to the added node afterwards.
+         */
+        static final class PendingNode<NodeDataType, WayDataType> implements Node<NodeDataType, WayDataType> {
+            private final Graph<NodeDataType, WayDataType> graph;
+            private final NodeDataType data;
+            private Node<NodeDataType, WayDataType> node;
+
+            PendingNode(Graph<NodeDataType, WayDataType> graph, NodeDataType data) {
+                this.graph = graph;
+                this.data = data;
+            }
+
+            static <NodeDataType, WayDataType> Node<NodeDataType, WayDataType> resolved(Node<NodeDataType, WayDataType> node) {
+                return node instanceof PendingNode ? ((PendingNode<NodeDataType, WayDataType>) node).node() : node;
+            }
+
+            void resolve(Node<NodeDataType, WayDataType> node) {
+                this.node = node;
+            }
+
+            private Node<NodeDataType, WayDataType> node() {
+                if (node == null) throw new IllegalStateException("Node is not added before the batch is applied");
+                return node;
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> connections() {
+                return node().connections();
+            }
+
+            @Override
+            public List<Connection<NodeDataType, WayDataType>> origins() {
+                return node().origins();
+            }
+
+            @Override
+            public Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way) {
+                return node().newConnection(resolved(to), way);
+            }
+
+            @Override
+            public void removeConnection(Connection<NodeDataType, WayDataType> connection) {
+                node().removeConnection(connection);
+            }
+
+            @Override
+            public NodeDataType data() {
+                return node == null ? data : node.data();
+            }
+
+            @Override
+            public int id() {
+                return node == null ? -1 : node.id();
+            }
+
+            @Override
+            public Graph<NodeDataType, WayDataType> graph() {
+                return graph;
+            }
+
+            @Override
+            public void remove() {
+                node().remove();
+            }
+
+            @Override
+            public Collection<Node<NodeDataType, WayDataType>> reachableNodes() {
+                return node().reachableNodes();
+            }
+
+            @Override
+            public String toString() {
+                return node == null ? "PendingNode{data=" + data + '}' : node.toString();
+            }
+        }
+
+        /**
+         * Union-find over int ids that may be used from multiple threads. Roots are linked by CAS, finds halve the paths.
+         */
+        static final class ConcurrentUnionFind {
+            private final AtomicIntegerArray parents;
+
+            ConcurrentUnionFind(int size) {
+                parents = new AtomicIntegerArray(size);
+                for (int i = 0; i < size; i++) {
+                    parents.set(i, i);
+                }
+            }
+
+            int find(int element) {
+                int parent;
+                while ((parent = parents.get(element)) != element) {
+                    int grandparent = parents.get(parent);
+                    if (grandparent != parent) parents.compareAndSet(element, parent, grandparent);
+                    element = grandparent;
+                }
+                return element;
+            }
+
+            /**
+             * @return false if both elements already were in the same set
+             */
+            boolean union(int a, int b) {
+                while (true) {
+                    int rootA = find(a);
+                    int rootB = find(b);
+                    if (rootA == rootB) return false;
+                    // Always link the larger root below the smaller one, so concurrent unions can not form a cycle
+                    if (rootA < rootB) {
+                        int swap = rootA;
+                        rootA = rootB;
+                        rootB = swap;
+                    }
+                    if (parents.compareAndSet(rootA, rootA, rootB)) return true;
+                }
+            }
+        }
+
+        /**
+         * The indexes of a key array grouped by key like a counting sort, indexes with the same key stay in ascending
+         * order. Runs in the current {@link ForkJoinPool}.
+         */
+        static final class Grouping {
+            static final int CHUNK = 1 << 12;
+            /**
+             * The most chunks of indexes and ranges of keys the work is split into.
+             */
+            private static final int PARTS = 256;
+
+            /**
+             * The indexes with the key {@code k} are {@code order[offsets[k]]} to {@code order[offsets[k + 1] - 1]}.
+             */
+            final int[] offsets;
+            final int[] order;
+
+            private Grouping(int[] offsets, int[] order) {
+                this.offsets = offsets;
+                this.order = order;
+            }
+
+            /**
+             * Two stable passes that both run in parallel. The indexes are first scattered by range of keys, every chunk
+             * of indexes writes to its own precomputed positions. Then every range of keys is sorted by key on its own,
+             * from the chunk order that is still ascending by index.
+             */
+            static Grouping of(int[] keys, int keyCount) {
+                int length = keys.length;
+                int[] offsets = new int[keyCount + 1];
+                int[] order = new int[length];
+                if (length == 0) return new Grouping(offsets, order);
+                int chunks = Math.min(PARTS, (length + CHUNK - 1) / CHUNK);
+                int ranges = Math.min(PARTS, keyCount);
+                int width = (keyCount + ranges - 1) / ranges;
+                // The position of the next index of chunk c with a key in range r is at cursors[c * ranges + r]
+                int[] cursors = new int[chunks * ranges];
+                new ParallelRange(0, chunks, 1, (from, to) -> {
+                    for (int chunk = from; chunk < to; chunk++) {
+                        for (int index = chunkStart(chunk, chunks, length); index < chunkStart(chunk + 1, chunks, length); index++) {
+                            cursors[chunk * ranges + keys[index] / width]++;
+                        }
+                    }
+                }).invoke();
+                int[] rangeStarts = new int[ranges + 1];
+                int position = 0;
+                for (int range = 0; range < ranges; range++) {
+                    rangeStarts[range] = position;
+                    for (int chunk = 0; chunk < chunks; chunk++) {
+                        int count = cursors[chunk * ranges + range];
+                        cursors[chunk * ranges + range] = position;
+                        position += count;
+                    }
+                }
+                rangeStarts[ranges] = position;
+                int[] byRange = new int[length];
+                new ParallelRange(0, chunks, 1, (from, to) -> {
+                    for (int chunk = from; chunk < to; chunk++) {
+                        for (int index = chunkStart(chunk, chunks, length); index < chunkStart(chunk + 1, chunks, length); index++) {
+                            byRange[cursors[chunk * ranges + keys[index] / width]++] = index;
+                        }
+                    }
+                }).invoke();
+                new ParallelRange(0, ranges, 1, (from, to) -> {
+                    for (int range = from; range < to; range++) {
+                        int first = range * width;
+                        int[] next = new int[Math.max(0, Math.min(keyCount, first + width) - first)];
+                        for (int i = rangeStarts[range]; i < rangeStarts[range + 1]; i++) {
+                            next[keys[byRange[i]] - first]++;
+                        }
+                        int end = rangeStarts[range];
+                        for (int key = 0; key < next.length; key++) {
+                            int start = end;
+                            end += next[key];
+                            next[key] = start;
+                            offsets[first + key + 1] = end;
+                        }
+                        for (int i = rangeStarts[range]; i < rangeStarts[range + 1]; i++) {
+                            int index = byRange[i];
+                            order[next[keys[index] - first]++] = index;
+                        }
+                    }
+                }).invoke();
+                return new Grouping(offsets, order);
+            }
+
+            private static int chunkStart(int chunk, int chunks, int length) {
+                return (int) ((long) length * chunk / chunks);
+            }
+
+            int size(int key) {
+                return offsets[key + 1] - offsets[key];
+            }
+        }
+
+        /**
+         * Runs an action on chunks of an int range in a fork join pool.
+         */
+        @SuppressWarnings("serial")
+        static final class ParallelRange extends RecursiveAction {
+            private final int from;
+            private final int to;
+            private final int threshold;
+            private final RangeAction action;
+
+            ParallelRange(int from, int to, int threshold, RangeAction action) {
+                this.from = from;
+                this.to = to;
+                this.threshold = threshold;
+                this.action = action;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= threshold) {
+                    action.run(from, to);
+                    return;
+                }
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParallelRange(from, mid, threshold, action), new ParallelRange(mid, to, threshold, action));
+            }
+
+            interface RangeAction {
+                void run(int from, int to);
+            }
+        }
+
+        /**
+         * Min queue of int values with long keys. There is no decrease key, push the value again and skip
+         * entries whose key is outdated when they are popped.
+         */
+        interface IntLongQueue {
+            /**
+             * Largest max weight that still gets a {@link DialQueue} from {@link Algorithm.QueueType#AUTO}.
+             */
+            int DIAL_MAX_WEIGHT = 1 << 16;
+
+            /**
+             * @param maxWeight the declared max weight, or {@code -1} if unknown
+             */
+            static IntLongQueue create(Algorithm.QueueType type, long maxWeight) {
+                switch (type) {
+                    case AUTO:
+                        if (maxWeight == -1) return new IntLongHeap();
+                        return maxWeight <= DIAL_MAX_WEIGHT ? new DialQueue(maxWeight) : new RadixHeap();
+                    case BINARY_HEAP:
+                        return new IntLongHeap();
+                    case DIAL:
+                        if (maxWeight == -1) throw new IllegalArgumentException("Dial queue needs a declared max weight");
+                        if (maxWeight >= Integer.MAX_VALUE) throw new IllegalArgumentException("Max weight too large for a dial queue: " + maxWeight);
+                        return new DialQueue(maxWeight);
+                    case RADIX_HEAP:
+                        return new RadixHeap();
+                    default:
+                        throw new IllegalArgumentException("Unknown queue type " + type);
+                }
+            }
+
+            void push(int value, long key);
+
+            long peekKey();
+
+            int pop();
+
+            int size();
+
+            default boolean isEmpty() {
+                return size() == 0;
+            }
+        }
+
+        /**
+         * Dial's bucket queue. Keys must be pushed in the window from the last popped key (initially {@code 0}) to
+         * that key plus the max weight, which holds for Dijkstra. Every bucket of the circular array holds the values of a single key.
+         */
+        static final class DialQueue implements IntLongQueue {
+            private final IntList[] buckets;
+            private long current;
+            private int cursor;
+            private int size;
+
+            DialQueue(long maxWeight) {
+                buckets = new IntList[(int) maxWeight + 1];
+            }
+
+            @Override
+            public void push(int value, long key) {
+                long offset = key - current;
+                if (offset < 0 || offset >= buckets.length) {
+                    throw new IllegalArgumentException("Key " + key + " outside of [" + current + ", " + (current + buckets.length - 1) + "], weight negative or larger than the max weight");
+                }
+                int index = cursor + (int) offset;
+                if (index >= buckets.length) index -= buckets.length;
+                IntList bucket = buckets[index];
+                if (bucket == null) buckets[index] = bucket = new IntList(4);
+                bucket.add(value);
+                size++;
+            }
+
+            @Override
+            public long peekKey() {
+                advance();
+                return current;
+            }
+
+            @Override
+            public int pop() {
+                advance();
+                size--;
+                return buckets[cursor].removeLast();
+            }
+
+            private void advance() {
+                if (size == 0) throw new NoSuchElementException();
+                while (buckets[cursor] == null || buckets[cursor].isEmpty()) {
+                    if (++cursor == buckets.length) cursor = 0;
+                    current++;
+                }
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+
+        /**
+         * Monotone radix heap: bucket {@code i} holds the keys whose highest bit that differs from the last popped key is
+         * {@code i - 1}. Popping from an empty bucket 0 moves the smallest non-empty bucket down, every entry moves at
+         * most 64 times. Keys must not be smaller than the last popped key.
+         */
+        static final class RadixHeap implements IntLongQueue {
+            private final int[][] values = new int[65][];
+            private final long[][] keys = new long[65][];
+            private final int[] sizes = new int[65];
+            private long last;
+            private int size;
+
+            @Override
+            public void push(int value, long key) {
+                if (key < last) throw new IllegalArgumentException("Key " + key + " is smaller than the last popped key " + last + ", weight negative");
+                add(bucket(key), value, key);
+                size++;
+            }
+
+            private int bucket(long key) {
+                return 64 - Long.numberOfLeadingZeros(key ^ last);
+            }
+
+            private void add(int bucket, int value, long key) {
+                int index = sizes[bucket]++;
+                if (values[bucket] == null) {
+                    values[bucket] = new int[8];
+                    keys[bucket] = new long[8];
+                } else if (index == values[bucket].length) {
+                    values[bucket] = Arrays.copyOf(values[bucket], index * 2);
+                    keys[bucket] = Arrays.copyOf(keys[bucket], index * 2);
+                }
+                values[bucket][index] = value;
+                keys[bucket][index] = key;
+            }
+
+            @Override
+            public long peekKey() {
+                refill();
+                return last;
+            }
+
+            @Override
+            public int pop() {
+                refill();
+                size--;
+                return values[0][--sizes[0]];
+            }
+
+            private void refill() {
+                if (sizes[0] > 0) return;
+                if (size == 0) throw new NoSuchElementException();
+                int bucket = 1;
+                while (sizes[bucket] == 0) bucket++;
+                int count = sizes[bucket];
+                long[] bucketKeys = keys[bucket];
+                int[] bucketValues = values[bucket];
+                long min = bucketKeys[0];
+                for (int i = 1; i < count; i++) {
+                    min = Math.min(min, bucketKeys[i]);
+                }
+                last = min;
+                sizes[bucket] = 0;
+                // All keys of the bucket now share a higher bit with the new last key, so they move to lower buckets
+                for (int i = 0; i < count; i++) {
+                    add(bucket(bucketKeys[i]), bucketValues[i], bucketKeys[i]);
+                }
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+
+        /**
+         * Binary min heap of int values with long keys.
+         */
+        static final class IntLongHeap implements IntLongQueue {
+            private long[] keys = new long[16];
+            private int[] values = new int[16];
+            private int size;
+
+            @Override
+            public void push(int value, long key) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                int index = size++;
+                while (index > 0) {
+                    int parent = (index - 1) >>> 1;
+                    if (keys[parent] <= key) break;
+                    keys[index] = keys[parent];
+                    values[index] = values[parent];
+                    index = parent;
+                }
+                keys[index] = key;
+                values[index] = value;
+            }
+
+            @Override
+            public long peekKey() {
+                return keys[0];
+            }
+
+            @Override
+            public int pop() {
+                int result = values[0];
+                int last = --size;
+                long key = keys[last];
+                int value = values[last];
+                int index = 0;
+                int half = last >>> 1;
+                while (index < half) {
+                    int child = 2 * index + 1;
+                    if (child + 1 < last && keys[child + 1] < keys[child]) child++;
+                    if (key <= keys[child]) break;
+                    keys[index] = keys[child];
+                    values[index] = values[child];
+                    index = child;
+                }
+                keys[index] = key;
+                values[index] = value;
+                return result;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+
+        /**
+         * Unweighted adjacency in compressed sparse row form, read with {@link Graph#forEachNeighbor(int, IntObjConsumer)}.
+         * The neighbors of {@code node} are {@code targets[offsets[node]]} to {@code targets[offsets[node + 1] - 1]}.
+         */
+        static final class Adjacency {
+            final int nodeCount;
+            /**
+             * The ids of the visible nodes, ascending.
+             */
+            final int[] nodes;
+            final int[] offsets;
+            final int[] targets;
+
+            private Adjacency(int nodeCount, int[] nodes, int[] offsets, int[] targets) {
+                this.nodeCount = nodeCount;
+                this.nodes = nodes;
+                this.offsets = offsets;
+                this.targets = targets;
+            }
+
+            int degree(int node) {
+                return offsets[node + 1] - offsets[node];
+            }
+
+            /**
+             * Counts the neighbors of chunks of nodes in parallel, then fills them in parallel.
+             */
+            static Adjacency of(Graph<?, ?> graph, ForkJoinPool pool) {
+                int nodeCount = graph.nodeIdBound();
+                IntList visible = new IntList();
+                graph.forEachNode(visible::add);
+                int[] nodes = Arrays.copyOf(visible.elements, visible.size);
+                int[] offsets = new int[nodeCount + 1];
+                return pool.invoke(ForkJoinTask.adapt(() -> {
+                    new ParallelRange(0, nodes.length, Grouping.CHUNK, (from, to) -> {
+                        int[] degree = new int[1];
+                        IntObjConsumer<Object> counter = (target, way) -> degree[0]++;
+                        for (int i = from; i < to; i++) {
+                            degree[0] = 0;
+                            graph.forEachNeighbor(nodes[i], counter);
+                            offsets[nodes[i] + 1] = degree[0];
+                        }
+                    }).invoke();
+                    for (int node = 0; node < nodeCount; node++) {
+                        offsets[node + 1] += offsets[node];
+                    }
+                    int[] targets = new int[offsets[nodeCount]];
+                    new ParallelRange(0, nodes.length, Grouping.CHUNK, (from, to) -> {
+                        int[] position = new int[1];
+                        IntObjConsumer<Object> writer = (target, way) -> targets[position[0]++] = target;
+                        for (int i = from; i < to; i++) {
+                            position[0] = offsets[nodes[i]];
+                            graph.forEachNeighbor(nodes[i], writer);
+                        }
+                    }).invoke();
+                    return new Adjacency(nodeCount, nodes, offsets, targets);
+                }));
+            }
+
+            /**
+             * Must run inside a {@link ForkJoinPool}.
+             *
+             * @return the adjacency with every edge reversed, the predecessors of every node ascending
+             */
+            Adjacency transpose() {
+                int[] sources = new int[targets.length];
+                new ParallelRange(0, nodes.length, Grouping.CHUNK, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        Arrays.fill(sources, offsets[nodes[i]], offsets[nodes[i] + 1], nodes[i]);
+                    }
+                }).invoke();
+                Grouping grouping = Grouping.of(targets, nodeCount);
+                int[] reverseTargets = new int[targets.length];
+                new ParallelRange(0, targets.length, Grouping.CHUNK, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        reverseTargets[i] = sources[grouping.order[i]];
+                    }
+                }).invoke();
+                return new Adjacency(nodeCount, nodes, grouping.offsets, reverseTargets);
+            }
+        }
+
+        /**
+         * Compressed sparse row copy of the outgoing connections of a graph with their weights, indexed by node id.
+         * The connections of node {@code n} are at {@code offsets[n]} until {@code offsets[n + 1]}.
+         */
+        static final class WeightedAdjacency<NodeDataType, WayDataType> {
+            private static final int CHUNK_SIZE = 4096;
+
+            final int nodeCount;
+            final int[] offsets;
+            final int[] targets;
+            final long[] weights;
+            /**
+             * Only present if requested when building.
+             */
+            final List<Node.Connection<NodeDataType, WayDataType>> connections;
+            final long maxWeight;
+
+            private WeightedAdjacency(int nodeCount, int[] offsets, int[] targets, long[] weights, List<Node.Connection<NodeDataType, WayDataType>> connections, long maxWeight) {
+                this.nodeCount = nodeCount;
+                this.offsets = offsets;
+                this.targets = targets;
+                this.weights = weights;
+                this.connections = connections;
+                this.maxWeight = maxWeight;
+            }
+
+            int edgeCount() {
+                return offsets[nodeCount];
+            }
+
+            /**
+             * @return the adjacency with every edge reversed, without connections
+             */
+            WeightedAdjacency<NodeDataType, WayDataType> transpose() {
+                int[] reverseOffsets = new int[nodeCount + 1];
+                for (int edge = 0; edge < edgeCount(); edge++) {
+                    reverseOffsets[targets[edge] + 1]++;
+                }
+                for (int node = 0; node < nodeCount; node++) {
+                    reverseOffsets[node + 1] += reverseOffsets[node];
+                }
+                int[] position = Arrays.copyOf(reverseOffsets, nodeCount);
+                int[] reverseTargets = new int[edgeCount()];
+                long[] reverseWeights = new long[edgeCount()];
+                for (int node = 0; node < nodeCount; node++) {
+                    for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                        int index = position[targets[edge]]++;
+                        reverseTargets[index] = node;
+                        reverseWeights[index] = weights[edge];
+                    }
+                }
+                return new WeightedAdjacency<>(nodeCount, reverseOffsets, reverseTargets, reverseWeights, null, maxWeight);
+            }
+
+            /**
+             * Sequential Dijkstra over all nodes.
+             *
+             * @return the distances from the source, {@link Long#MAX_VALUE} for unreachable nodes
+             */
+            long[] shortestPaths(int source) {
+                long[] distances = new long[nodeCount];
+                Arrays.fill(distances, Long.MAX_VALUE);
+                distances[source] = 0;
+                IntLongQueue heap = IntLongQueue.create(Algorithm.QueueType.AUTO, maxWeight);
+                heap.push(source, 0);
+                while (!heap.isEmpty()) {
+                    long distance = heap.peekKey();
+                    int node = heap.pop();
+                    if (distance > distances[node]) continue;
+                    for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                        long candidate = distance + weights[edge];
+                        int target = targets[edge];
+                        if (candidate < distances[target]) {
+                            distances[target] = candidate;
+                            heap.push(target, candidate);
+                        }
+                    }
+                }
+                return distances;
+            }
+
+            /**
+             * Reads chunks of nodes in parallel and concatenates them.
+             *
+             * @throws IllegalArgumentException if a weight is negative
+             */
+            static <NodeDataType, WayDataType> WeightedAdjacency<NodeDataType, WayDataType> build(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator, boolean keepConnections, ForkJoinPool pool) {
+                int nodeCount = graph.nodeIdBound();
+                List<ForkJoinTask<Chunk<NodeDataType, WayDataType>>> tasks = new ArrayList<>();
+                for (int from = 0; from < nodeCount; from += CHUNK_SIZE) {
+                    int start = from;
+                    int end = Math.min(nodeCount, from + CHUNK_SIZE);
+                    Callable<Chunk<NodeDataType, WayDataType>> chunk = () -> new Chunk<>(graph, weightCalculator, keepConnections, start, end);
+                    ForkJoinTask<Chunk<NodeDataType, WayDataType>> task = ForkJoinTask.adapt(chunk);
+                    if (nodeCount > CHUNK_SIZE) pool.execute(task);
+                    else task.invoke();
+                    tasks.add(task);
+                }
+                int[] offsets = new int[nodeCount + 1];
+                List<Chunk<NodeDataType, WayDataType>> chunks = new ArrayList<>(tasks.size());
+                long maxWeight = 0;
+                for (ForkJoinTask<Chunk<NodeDataType, WayDataType>> task : tasks) {
+                    Chunk<NodeDataType, WayDataType> chunk = task.join();
+                    chunks.add(chunk);
+                    maxWeight = Math.max(maxWeight, chunk.maxWeight);
+                    for (int node = chunk.start; node < chunk.end; node++) {
+                        offsets[node + 1] = offsets[node] + chunk.degrees[node - chunk.start];
+                    }
                 }
-            };
-        }
+                int edgeCount = offsets[nodeCount];
+                int[] targets = new int[edgeCount];
+                long[] weights = new long[edgeCount];
+                List<Node.Connection<NodeDataType, WayDataType>> connections = keepConnections ? new ArrayList<>(edgeCount) : null;
+                for (Chunk<NodeDataType, WayDataType> chunk : chunks) {
+                    int offset = offsets[chunk.start];
+                    System.arraycopy(chunk.targets.elements, 0, targets, offset, chunk.targets.size);
+                    System.arraycopy(chunk.weights, 0, weights, offset, chunk.targets.size);
+                    if (keepConnections) connections.addAll(chunk.connections);
+                }
+                return new WeightedAdjacency<>(nodeCount, offsets, targets, weights, connections, maxWeight);
+            }
 
-        @Override
-        public Node<NodeDataType, WayDataType> newNode(NodeDataType data) {
-            LinkedNode node = new LinkedNode(data);
-            nodes.add(node);
-            return node;
+            private static final class Chunk<NodeDataType, WayDataType> {
+                private final int start;
+                private final int end;
+                private final int[] degrees;
+                private final IntList targets = new IntList();
+                private long[] weights = new long[16];
+                private final List<Node.Connection<NodeDataType, WayDataType>> connections;
+                private long maxWeight;
+
+                private Chunk(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator, boolean keepConnections, int start, int end) {
+                    this.start = start;
+                    this.end = end;
+                    this.degrees = new int[end - start];
+                    this.connections = keepConnections ? new ArrayList<>() : null;
+                    for (int node = start; node < end; node++) {
+                        Node<NodeDataType, WayDataType> from = graph.node(node);
+                        if (from == null) continue;
+                        List<Node.Connection<NodeDataType, WayDataType>> list = from.connections();
+                        degrees[node - start] = list.size();
+                        for (Node.Connection<NodeDataType, WayDataType> connection : list) {
+                            long weight = weightCalculator.weight(connection);
+                            if (weight < 0) throw new IllegalArgumentException("Negative weight " + weight + " for " + connection);
+                            int index = targets.size();
+                            if (index == weights.length) weights = Arrays.copyOf(weights, index * 2);
+                            targets.add(connection.to().id());
+                            weights[index] = weight;
+                            if (keepConnections) connections.add(connection);
+                            maxWeight = Math.max(maxWeight, weight);
+                        }
+                    }
+                }
+            }
         }
 
-        @Override
-        public void removeNode(Node<NodeDataType, WayDataType> node) {
-            if (!LinkedNode.class.isInstance(node)) {
-                throw new IllegalArgumentException("Not a valid node");
+        /**
+         * Spliterator over elements that are grouped, for example connections grouped by their node.
+         * {@code offsets[group]} is the rank of the first element of a group, so the spliterator knows the
+         * exact size of every split and splits in the middle of the range instead of at group borders.
+         */
+        static final class RankSpliterator<T> implements Spliterator<T> {
+            private final int[] offsets;
+            private final IntFunction<Iterator<T>> groups;
+            private final int end;
+            private int index;
+            private int group;
+            private Iterator<T> current;
+
+            RankSpliterator(int[] offsets, int index, int end, IntFunction<Iterator<T>> groups) {
+                this.offsets = offsets;
+                this.index = index;
+                this.end = end;
+                this.groups = groups;
             }
-            LinkedNode snode = (LinkedNode) node;
-            if (!snode.graph().equals(this)) {
-                throw new IllegalArgumentException("Node is not in this graph");
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (index >= end) return false;
+                if (current == null) {
+                    group = group(index);
+                    current = groups.apply(group);
+                    for (int skip = index - offsets[group]; skip > 0; skip--) {
+                        current.next();
+                    }
+                }
+                while (!current.hasNext()) {
+                    current = groups.apply(++group);
+                }
+                index++;
+                action.accept(current.next());
+                return true;
             }
-            while (!snode.connections.isEmpty()) {
-                snode.connections.get(0).remove();
+
+            @Override
+            public RankSpliterator<T> trySplit() {
+                if (current != null) return null;
+                int mid = (index + end) >>> 1;
+                if (mid <= index) return null;
+                RankSpliterator<T> prefix = new RankSpliterator<>(offsets, index, mid, groups);
+                index = mid;
+                return prefix;
             }
-            while (!snode.origins.isEmpty()) {
-                snode.origins.get(0).remove();
+
+            private int group(int rank) {
+                int low = 0;
+                int high = offsets.length - 2;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (offsets[mid] <= rank) low = mid;
+                    else high = mid - 1;
+                }
+                return low;
             }
-            nodes.remove(snode);
-        }
 
-        @Override
-        public Node.Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way) {
-            return from.newConnection(to, way);
-        }
+            Iterator<T> iterator() {
+                return Spliterators.iterator(this);
+            }
 
-        @Override
-        public void removeConnection(Node.Connection<NodeDataType, WayDataType> connection) {
-            connection.from().removeConnection(connection);
-        }
+            @Override
+            public long estimateSize() {
+                return end - index;
+            }
 
-        @Override
-        public String toString() {
-            StringBuilder b = new StringBuilder();
-            b.append("Graph: ");
-            for (Node<NodeDataType, WayDataType> n : nodes) {
-                b.append('\n').append(" - ").append(n);
+            @Override
+            public int characteristics() {
+                return ORDERED | SIZED | SUBSIZED | NONNULL;
             }
-            return b.toString();
         }
 
-        private class LinkedNode implements Node<NodeDataType, WayDataType> {
-            private final NodeDataType data;
-            private final ArrayList<Connection<NodeDataType, WayDataType>> connections;
-            private final List<Connection<NodeDataType, WayDataType>> connectionsUnmodifiable;
-            private final ArrayList<Connection<NodeDataType, WayDataType>> origins;
+        static final class IndexSpliterator<T> implements Spliterator<T> {
+            private final IntFunction<T> elements;
+            private final int end;
+            private int index;
 
-            public LinkedNode(NodeDataType data) {
-                this.data = data;
-                this.connections = new ArrayList<>();
-                this.connectionsUnmodifiable = Collections.unmodifiableList(connections);
-                this.origins = new ArrayList<>();
+            IndexSpliterator(int index, int end, IntFunction<T> elements) {
+                this.index = index;
+                this.end = end;
+                this.elements = elements;
             }
 
-            public LinkedGraph<NodeDataType, WayDataType> graph() {
-                return LinkedGraph.this;
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (index >= end) return false;
+                action.accept(elements.apply(index++));
+                return true;
             }
 
             @Override
-            public NodeDataType data() {
-                return data;
+            public void forEachRemaining(Consumer<? super T> action) {
+                for (; index < end; index++) {
+                    action.accept(elements.apply(index));
+                }
             }
 
             @Override
-            public List<Connection<NodeDataType, WayDataType>> connections() {
-                return connectionsUnmodifiable;
+            public IndexSpliterator<T> trySplit() {
+                int mid = (index + end) >>> 1;
+                if (mid <= index) return null;
+                IndexSpliterator<T> prefix = new IndexSpliterator<>(index, mid, elements);
+                index = mid;
+                return prefix;
             }
 
             @Override
-            public Collection<Node<NodeDataType, WayDataType>> reachableNodes() {
-                Set<Node<NodeDataType, WayDataType>> nodes = new HashSet<>();
-                Deque<Node<NodeDataType, WayDataType>> unchecked = new ArrayDeque<>(Collections.singleton(this));
-                Node<NodeDataType, WayDataType> node;
-                while ((node = unchecked.pollFirst()) != null) {
-                    if (!nodes.contains(node)) {
-                        nodes.add(node);
-                        for (Connection<NodeDataType, WayDataType> connection : node.connections()) {
-                            unchecked.add(connection.to());
-                        }
-                    }
-                }
-                return Collections.unmodifiableCollection(nodes);
+            public long estimateSize() {
+                return end - index;
             }
 
             @Override
-            public Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way) {
-                if (!to.getClass().equals(LinkedNode.class)) {
-                    throw new IllegalArgumentException("Illegal node");
-                }
-                LinkedNode sto = (LinkedNode) to;
-                if (sto.graph() != graph()) {
-                    throw new IllegalArgumentException("Illegal node");
-                }
-                LinkedConnection con = new LinkedConnection(this, sto, way);
-                sto.origins.add(con);
-                connections.add(con);
-                return con;
+            public int characteristics() {
+                return ORDERED | SIZED | SUBSIZED | NONNULL;
             }
+        }
 
-            @Override
-            public void removeConnection(Connection<NodeDataType, WayDataType> connection) {
-                if (!LinkedConnection.class.isInstance(connection)) {
-                    throw new IllegalArgumentException("This node does not have that connection!");
-                }
-                LinkedConnection linkedConnection = (LinkedConnection) connection;
-                if (!connections.contains(linkedConnection)) {
-                    throw new IllegalStateException("This node does not have that connection!");
+        private static final class Probe {
+            private final Algorithm.SearchStats stats;
+            private final Object event;
+            private final long start;
+            private boolean finished;
+
+            private Probe(Algorithm.SearchStats stats, Object event) {
+                this.stats = stats;
+                this.event = event;
+                this.start = System.nanoTime();
+            }
+
+            /**
+             * @return null if neither the caller, the {@link Algorithm.SearchMetrics} nor a flight recording wants stats
+             */
+            private static Probe start(String algorithm, Algorithm.SearchStats requested) {
+                Object event = SearchEvents.begin(algorithm);
+                Algorithm.SearchStats stats = requested;
+                if (stats == null) {
+                    if (event == null && !Algorithm.SearchMetrics.global().enabled()) return null;
+                    stats = new Algorithm.SearchStats();
+                } else {
+                    stats.reset();
                 }
-                linkedConnection.to.origins.remove(linkedConnection);
-                linkedConnection.from.connections.remove(linkedConnection);
+                return new Probe(stats, event);
             }
 
-            @Override
-            public void remove() {
-                removeNode(this);
+            private void finish(boolean found) {
+                finished = true;
+                record(found, false);
             }
 
-            private String ctoString() {
-                Iterator<Connection<NodeDataType, WayDataType>> it = connections.iterator();
-                if (!it.hasNext()) return "[]";
-                StringBuilder sb = new StringBuilder();
-                sb.append('[');
-                for (; ; ) {
-                    LinkedConnection e = (LinkedConnection) it.next();
-                    sb.append(e.nodeToString());
-                    if (!it.hasNext()) return sb.append(']').toString();
-                    sb.append(',').append(' ');
-                }
+            /**
+             * Records the search as cancelled unless it {@link #finish(boolean) finished}, so searches that end with an
+             * exception, for example from {@link Algorithm.SearchControl#checkpoint()}, still show up in the stats.
+             */
+            private void abort() {
+                if (!finished) record(false, true);
             }
 
-            @Override
-            public String toString() {
-                return "Node{data=" + data + ", connections=" + ctoString() + '}';
+            private void record(boolean found, boolean cancelled) {
+                stats.wallTimeNanos = System.nanoTime() - start;
+                Algorithm.SearchMetrics metrics = Algorithm.SearchMetrics.global();
+                if (metrics.enabled()) metrics.record(stats, found, cancelled);
+                if (event != null) SearchEvents.end(event, stats, found, cancelled);
             }
         }
 
-        private class LinkedConnection implements Node.Connection<NodeDataType, WayDataType> {
-
-            private final LinkedNode from;
-            private final LinkedNode to;
-            private final WayDataType way;
+        private static class SimplePath<NodeDataType, WayDataType> implements Path<NodeDataType, WayDataType> {
+            private final ArrayList<Node.Connection<NodeDataType, WayDataType>> connections = new ArrayList<>();
+            private final Graph<NodeDataType, WayDataType> graph;
 
-            public LinkedConnection(LinkedNode from, LinkedNode to, WayDataType way) {
-                this.from = from;
-                this.to = to;
-                this.way = way;
+            public SimplePath(Graph<NodeDataType, WayDataType> graph) {
+                this.graph = graph;
             }
 
-            @Override
-            public Node<NodeDataType, WayDataType> to() {
-                return to;
+            public SimplePath(Graph<NodeDataType, WayDataType> graph, Collection<Node.Connection<NodeDataType, WayDataType>> connections) {
+                this(graph);
+                this.connections.addAll(connections);
             }
 
             @Override
-            public WayDataType way() {
-                return way;
+            public Iterator<Node.Connection<NodeDataType, WayDataType>> iterator() {
+                return connections.iterator();
             }
 
             @Override
-            public Node<NodeDataType, WayDataType> from() {
-                return from;
+            public SimplePath<NodeDataType, WayDataType> clone() {
+                return new SimplePath<>(graph, new ArrayList<>(connections));
             }
 
             @Override
             public Graph<NodeDataType, WayDataType> graph() {
-                return LinkedGraph.this;
+                return graph;
             }
 
             @Override
-            public void remove() {
-                removeConnection(this);
+            public String toString() {
+                StringBuilder sb = new StringBuilder();
+                sb.append("Path[");
+                boolean first = true;
+                for (Node.Connection<NodeDataType, WayDataType> connection : connections) {
+                    if (first) {
+                        first = false;
+                        sb.append(connection.from().data().toString());
+                    }
+                    sb.append(" -> ").append(connection.way()).append(" -> ").append(connection.to().data().toString());
+                }
+                sb.append(']');
+                return sb.toString();
             }
 
-            public String nodeToString() {
-                return "Connection{to=" + to.data() + ", way=" + way + '}';
+            @Override
+            public Node<NodeDataType, WayDataType> last() {
+                return connections.isEmpty() ? null : connections.get(connections.size() - 1).to();
             }
 
             @Override
-            public String toString() {
-                return "Connection{from=" + from.data() + ", to=" + to.data() + ", way=" + way + '}';
+            public Node<NodeDataType, WayDataType> first() {
+                return connections.isEmpty() ? null : connections.get(0).from();
             }
         }
-    }
 
+        private static final class SimplePartialPath<NodeDataType, WayDataType> extends SimplePath<NodeDataType, WayDataType> implements PartialPath<NodeDataType, WayDataType> {
+            private final Node<NodeDataType, WayDataType> frontier;
+            private final long frontierDistance;
+            private final Algorithm.SearchBudget.Reason reason;
 
-    class ArrayGraph<NodeDataType, WayDataType> implements Graph<NodeDataType, WayDataType> {
-        private final ArrayList<NodeDataType> nodes = new ArrayList<>();
-        private ArrayList<WayDataType>[][] connections;
+            public SimplePartialPath(Graph<NodeDataType, WayDataType> graph, Node<NodeDataType, WayDataType> frontier, long frontierDistance, Algorithm.SearchBudget.Reason reason) {
+                super(graph);
+                this.frontier = frontier;
+                this.frontierDistance = frontierDistance;
+                this.reason = reason;
+            }
 
-        public ArrayGraph() {
-            this.connections = new ArrayList[1][1];
-        }
+            @Override
+            public Algorithm.SearchBudget.Reason reason() {
+                return reason;
+            }
 
-        @Override
-        public Collection<Node<NodeDataType, WayDataType>> nodes() {
-            Collection<Node<NodeDataType, WayDataType>> nodes = new HashSet<>();
-            int i = 0;
-            for (int node = 0; node < this.nodes.size(); node++) {
-                nodes.add(new ArrayNode(node));
+            @Override
+            public Node<NodeDataType, WayDataType> frontier() {
+                return frontier;
+            }
+
+            @Override
+            public long frontierDistance() {
+                return frontierDistance;
+            }
+
+            @Override
+            public String toString() {
+                return "Partial" + super.toString() + "{reason=" + reason + ", frontierDistance=" + frontierDistance + '}';
             }
-            return Collections.unmodifiableCollection(nodes);
         }
 
-        @Override
-        public Collection<Node.Connection<NodeDataType, WayDataType>> connections() {
-            List<Node.Connection<NodeDataType, WayDataType>> connections = new ArrayList<>();
-            int max = Math.min(nodes.size(), this.connections.length);
-            for (int fromId = 0; fromId < max; fromId++) {
-                for (int toId = 0; toId < max; toId++) {
-                    if (this.connections[fromId][toId] != null) {
-                        for (int way = 0; way < this.connections[fromId][toId].size(); way++) {
-                            connections.add(new ArrayConnection(new ArrayNode(fromId), new ArrayNode(toId), way, this.connections[fromId][toId].get(way)));
+        private static final class YenKShortestPaths<NodeDataType, WayDataType> implements Algorithm<Algorithm.DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, List<Path<NodeDataType, WayDataType>>> {
+            private final int k;
+
+            private YenKShortestPaths(int k) {
+                if (k < 1) throw new IllegalArgumentException("k must be positive: " + k);
+                this.k = k;
+            }
+
+            @Override
+            public List<Path<NodeDataType, WayDataType>> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data) {
+                data = data.on(graph);
+                Probe probe = Probe.start("kShortestPaths", data.stats());
+                try {
+                    List<Path<NodeDataType, WayDataType>> paths = new Search(graph, data, probe == null ? null : probe.stats).run();
+                    if (probe != null) probe.finish(!paths.isEmpty());
+                    return paths;
+                } finally {
+                    if (probe != null) probe.abort();
+                }
+            }
+
+            private final class Search {
+                private final Graph<NodeDataType, WayDataType> graph;
+                private final Algorithm.DijkstraData<NodeDataType, WayDataType> data;
+                private final Algorithm.SearchStats stats;
+                private final Algorithm.SearchControl control = Algorithm.SearchControl.current();
+                private final Algorithm.SearchBudget.Tracker budget;
+                private final Map<Node<NodeDataType, WayDataType>, Long> toTarget = new HashMap<>();
+                private final Map<Node<NodeDataType, WayDataType>, Node.Connection<NodeDataType, WayDataType>> tree = new HashMap<>();
+                private final Candidate exhausted = new Candidate(Collections.emptyList(), 0, -1);
+                private long radius;
+
+                private Search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data, Algorithm.SearchStats stats) {
+                    this.graph = graph;
+                    this.data = data;
+                    this.stats = stats;
+                    this.budget = Algorithm.SearchBudget.Tracker.start(data.budget());
+                }
+
+                private List<Path<NodeDataType, WayDataType>> run() {
+                    List<Candidate> found = new ArrayList<>();
+                    Candidate first = searchTree();
+                    if (first == null) return Collections.emptyList();
+                    found.add(first);
+                    PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+                    Set<List<Node.Connection<NodeDataType, WayDataType>>> known = new HashSet<>();
+                    known.add(first.connections);
+                    int sequence = 0;
+                    search:
+                    while (found.size() < k) {
+                        Candidate previous = found.get(found.size() - 1);
+                        Set<Node<NodeDataType, WayDataType>> bannedNodes = new HashSet<>();
+                        long rootCost = 0;
+                        for (int spur = 0; spur < previous.connections.size(); spur++) {
+                            List<Node.Connection<NodeDataType, WayDataType>> root = previous.connections.subList(0, spur);
+                            Node<NodeDataType, WayDataType> spurNode = previous.connections.get(spur).from();
+                            Set<Node.Connection<NodeDataType, WayDataType>> bannedConnections = new HashSet<>();
+                            for (Candidate path : found) {
+                                if (path.connections.size() > spur && path.connections.subList(0, spur).equals(root)) {
+                                    bannedConnections.add(path.connections.get(spur));
+                                }
+                            }
+                            Candidate spurPath = spurSearch(spurNode, rootCost, bannedConnections, bannedNodes);
+                            if (spurPath == exhausted) break search;
+                            if (spurPath != null) {
+                                List<Node.Connection<NodeDataType, WayDataType>> connections = new ArrayList<>(spur + spurPath.connections.size());
+                                connections.addAll(root);
+                                connections.addAll(spurPath.connections);
+                                if (known.add(connections)) {
+                                    candidates.add(new Candidate(connections, rootCost + spurPath.cost, sequence++));
+                                }
+                            }
+                            bannedNodes.add(spurNode);
+                            rootCost += weight(previous.connections.get(spur));
                         }
+                        Candidate next = candidates.poll();
+                        if (next == null) break;
+                        found.add(next);
+                    }
+                    List<Path<NodeDataType, WayDataType>> paths = new ArrayList<>(found.size());
+                    for (Candidate candidate : found) {
+                        paths.add(new SimplePath<>(graph, candidate.connections));
                     }
+                    return paths;
                 }
-            }
-            return connections;
-        }
 
-        @Override
-        public Node<NodeDataType, WayDataType> newNode(NodeDataType data) {
-            int index = nodes.size();
-            nodes.add(data);
-            return new ArrayNode(index);
-        }
+                /**
+                 * Searches backwards from the target until the start node is settled.
+                 * Nodes that were not settled are at least {@link #radius} away from the target.
+                 */
+                private Candidate searchTree() {
+                    Node<NodeDataType, WayDataType> start = data.startNode();
+                    Map<Node<NodeDataType, WayDataType>, Long> tentative = new HashMap<>();
+                    PriorityQueue<Label> queue = new PriorityQueue<>();
+                    queue.add(new Label(data.targetNode(), null, null, 0, 0));
+                    push(queue);
+                    Label label;
+                    while ((label = queue.poll()) != null) {
+                        if (toTarget.containsKey(label.node)) continue;
+                        if (control != null) control.checkpoint();
+                        if (budget != null && budget.settle(label.distance) != null) return null;
+                        if (stats != null) stats.nodesSettled++;
+                        toTarget.put(label.node, label.distance);
+                        tree.put(label.node, label.connection);
+                        if (label.node.equals(start)) {
+                            radius = label.distance;
+                            List<Node.Connection<NodeDataType, WayDataType>> connections = new ArrayList<>();
+                            for (Node<NodeDataType, WayDataType> node = start; !node.equals(data.targetNode()); ) {
+                                Node.Connection<NodeDataType, WayDataType> connection = tree.get(node);
+                                connections.add(connection);
+                                node = connection.to();
+                            }
+                            return new Candidate(connections, label.distance, -1);
+                        }
+                        for (Node.Connection<NodeDataType, WayDataType> connection : label.node.origins()) {
+                            if (stats != null) stats.edgesRelaxed++;
+                            Node<NodeDataType, WayDataType> from = connection.from();
+                            if (toTarget.containsKey(from)) continue;
+                            long distance = label.distance + weight(connection);
+                            Long old = tentative.get(from);
+                            if (old != null && old <= distance) continue;
+                            if (old != null && stats != null) stats.decreaseKeys++;
+                            tentative.put(from, distance);
+                            queue.add(new Label(from, connection, null, distance, distance));
+                            push(queue);
+                        }
+                    }
+                    return null;
+                }
 
-        @Override
-        public void removeNode(Node<NodeDataType, WayDataType> node) {
-            ArrayNode an = cast(node);
-            int index = an.node();
-            if (index == -1) return;
-            int newSize = nodes.size();
-            if (newSize * 2 < connections.length && newSize != 0) {
-                ArrayList<WayDataType>[][] oldConnections = connections;
-                System.out.println("resizing to " + oldConnections.length / 2);
-                connections = new ArrayList[oldConnections.length / 2][oldConnections.length / 2];
-                for (int fromId = 0, oldFromId = 0; fromId < connections.length; fromId++, oldFromId++) {
-                    if (oldFromId == index) oldFromId++;
-                    for (int toId = 0, oldToId = 0; toId < connections[fromId].length; toId++, oldToId++) {
-                        if (oldToId == index) oldToId++;
-                        connections[fromId][toId] = oldConnections[oldFromId][oldToId];
+                /**
+                 * A* from the spur node to the target, using the distances of the backward search as heuristic.
+                 *
+                 * @return null if the target can not be reached, {@link #exhausted} if the budget ran out
+                 */
+                private Candidate spurSearch(Node<NodeDataType, WayDataType> spurNode, long rootCost, Set<Node.Connection<NodeDataType, WayDataType>> bannedConnections, Set<Node<NodeDataType, WayDataType>> bannedNodes) {
+                    Map<Node<NodeDataType, WayDataType>, Long> best = new HashMap<>();
+                    Set<Node<NodeDataType, WayDataType>> settled = new HashSet<>();
+                    PriorityQueue<Label> queue = new PriorityQueue<>();
+                    queue.add(new Label(spurNode, null, null, 0, heuristic(spurNode)));
+                    push(queue);
+                    best.put(spurNode, 0L);
+                    Label label;
+                    while ((label = queue.poll()) != null) {
+                        if (!settled.add(label.node)) continue;
+                        if (control != null) control.checkpoint();
+                        if (budget != null && budget.settle(rootCost + label.distance) != null) return exhausted;
+                        if (stats != null) stats.nodesSettled++;
+                        if (label.node.equals(data.targetNode())) {
+                            LinkedList<Node.Connection<NodeDataType, WayDataType>> connections = new LinkedList<>();
+                            for (Label l = label; l.connection != null; l = l.previous) {
+                                connections.addFirst(l.connection);
+                            }
+                            return new Candidate(new ArrayList<>(connections), label.distance, -1);
+                        }
+                        for (Node.Connection<NodeDataType, WayDataType> connection : label.node.connections()) {
+                            if (stats != null) stats.edgesRelaxed++;
+                            Node<NodeDataType, WayDataType> to = connection.to();
+                            if (settled.contains(to) || bannedNodes.contains(to) || bannedConnections.contains(connection)) continue;
+                            long distance = label.distance + weight(connection);
+                            Long old = best.get(to);
+                            if (old != null && old <= distance) continue;
+                            if (old != null && stats != null) stats.decreaseKeys++;
+                            best.put(to, distance);
+                            queue.add(new Label(to, connection, label, distance, distance + heuristic(to)));
+                            push(queue);
+                        }
                     }
+                    return null;
                 }
-            }
-        }
 
-        @Override
-        public Node.Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> from, Node<NodeDataType, WayDataType> to, WayDataType way) {
-            ArrayNode afrom = cast(from);
-            ArrayNode ato = cast(to);
-            int min = Math.max(afrom.node(), ato.node());
-            if (connections.length <= min) {
-                int newLength = connections.length;
-                do {
-                    newLength *= 2;
-                } while (newLength <= min);
-                System.out.println("resizing to " + newLength + "x" + newLength);
-                ArrayList<WayDataType>[][] oldConnections = connections;
-                connections = new ArrayList[newLength][newLength];
-                for (int fromId = 0; fromId < oldConnections.length; fromId++) {
-                    System.arraycopy(oldConnections[fromId], 0, connections[fromId], 0, oldConnections[fromId].length);
+                private long heuristic(Node<NodeDataType, WayDataType> node) {
+                    Long distance = toTarget.get(node);
+                    return distance == null ? radius : distance;
+                }
+
+                private long weight(Node.Connection<NodeDataType, WayDataType> connection) {
+                    return data.weightCalculator().weight(connection);
+                }
+
+                private void push(PriorityQueue<Label> queue) {
+                    if (stats != null) {
+                        stats.queuePushes++;
+                        stats.peakQueueSize = Math.max(stats.peakQueueSize, queue.size());
+                    }
                 }
             }
-            ArrayList<WayDataType> ways = connections[afrom.node][ato.node];
-            if (ways == null) {
-                ways = new ArrayList<>(1);
-                connections[afrom.node][ato.node] = ways;
-            }
-            int wayId = ways.size();
-            ways.add(wayId, way);
-            return new ArrayConnection(afrom, ato, wayId, way);
-        }
 
-        @Override
-        public void removeConnection(Node.Connection<NodeDataType, WayDataType> connection) {
-            ArrayConnection con = cast(connection);
-            WayDataType way = con.way();
-            if (way == null) return;
-            ArrayList<WayDataType> ways = connections[con.from.node()][con.to.node()];
-            ways.remove(con.wayId);
-            if (ways.isEmpty()) {
-                connections[con.from.node][con.to.node] = null;
+            private final class Label implements Comparable<Label> {
+                private final Node<NodeDataType, WayDataType> node;
+                private final Node.Connection<NodeDataType, WayDataType> connection;
+                private final Label previous;
+                private final long distance;
+                private final long estimate;
+
+                private Label(Node<NodeDataType, WayDataType> node, Node.Connection<NodeDataType, WayDataType> connection, Label previous, long distance, long estimate) {
+                    this.node = node;
+                    this.connection = connection;
+                    this.previous = previous;
+                    this.distance = distance;
+                    this.estimate = estimate;
+                }
+
+                @Override
+                public int compareTo(Label o) {
+                    return Long.compare(estimate, o.estimate);
+                }
             }
-        }
 
-        private ArrayConnection cast(Node.Connection<NodeDataType, WayDataType> connection) {
-            if (!ArrayConnection.class.isInstance(connection)) throw new IllegalArgumentException("Wrong connection");
-            if (connection.graph() != ArrayGraph.this) throw new IllegalStateException("Connection not of this graph");
-            return (ArrayConnection) connection;
-        }
+            private final class Candidate implements Comparable<Candidate> {
+                private final List<Node.Connection<NodeDataType, WayDataType>> connections;
+                private final long cost;
+                private final int sequence;
 
-        private ArrayNode cast(Node<NodeDataType, WayDataType> node) {
-            if (!ArrayNode.class.isInstance(node)) throw new IllegalArgumentException("Wrong node");
-            if (((ArrayNode) node).graph() != this) throw new IllegalStateException("Node not of this graph");
-            return (ArrayNode) node;
+                private Candidate(List<Node.Connection<NodeDataType, WayDataType>> connections, long cost, int sequence) {
+                    this.connections = connections;
+                    this.cost = cost;
+                    this.sequence = sequence;
+                }
+
+                @Override
+                public int compareTo(Candidate o) {
+                    int comp = Long.compare(cost, o.cost);
+                    if (comp == 0) comp = Integer.compare(sequence, o.sequence);
+                    return comp;
+                }
+            }
         }
 
-        private class ArrayNode implements Node<NodeDataType, WayDataType> {
+        private static final class DeltaStepping<NodeDataType, WayDataType> implements Algorithm<Algorithm.SingleSourceData<NodeDataType, WayDataType>, NodeDataType, WayDataType, long[]> {
+            /**
+             * Frontiers smaller than this are relaxed on the calling thread.
+             */
+            private static final int PARALLEL_THRESHOLD = 512;
 
-            private int node;
-            private NodeDataType data;
+            private final long delta;
+            private final ForkJoinPool pool;
 
-            public ArrayNode(int node) {
-                this.node = node;
-                this.data = nodes.get(node);
+            private DeltaStepping(long delta, ForkJoinPool pool) {
+                if (delta < 0) throw new IllegalArgumentException("Negative delta: " + delta);
+                this.delta = delta;
+                this.pool = pool;
             }
 
             @Override
-            public boolean equals(Object o) {
-                if (this == o) return true;
-                if (o == null || getClass() != o.getClass()) return false;
-                ArrayNode arrayNode = (ArrayNode) o;
-                return node == arrayNode.node && data.equals(arrayNode.data);
+            public long[] search(Graph<NodeDataType, WayDataType> graph, Algorithm.SingleSourceData<NodeDataType, WayDataType> data) {
+                data = data.on(graph);
+                WeightedAdjacency<NodeDataType, WayDataType> adjacency = WeightedAdjacency.build(graph, data.weightCalculator(), false, pool);
+                long delta = this.delta;
+                if (delta == 0) {
+                    // Meyer and Sanders: max weight / average degree keeps both the phases per bucket and the re-relaxations low
+                    long averageDegree = Math.max(1, adjacency.edgeCount() / Math.max(1, adjacency.nodeCount));
+                    delta = Math.max(1, adjacency.maxWeight / averageDegree);
+                }
+                return pool.invoke(ForkJoinTask.adapt(new Run(adjacency, delta, data.source().id())::run));
             }
 
-            @Override
-            public int hashCode() {
-                return Objects.hash(node, data);
-            }
+            private final class Run {
+                private final WeightedAdjacency<NodeDataType, WayDataType> adjacency;
+                private final long delta;
+                private final int source;
+                private final AtomicLongArray distances;
+                private final int[] stamps;
+                private final TreeMap<Long, IntList> buckets = new TreeMap<>();
+                private final Algorithm.SearchControl control = Algorithm.SearchControl.current();
+                private int stamp;
+
+                private Run(WeightedAdjacency<NodeDataType, WayDataType> adjacency, long delta, int source) {
+                    this.adjacency = adjacency;
+                    this.delta = delta;
+                    this.source = source;
+                    this.distances = new AtomicLongArray(adjacency.nodeCount);
+                    this.stamps = new int[adjacency.nodeCount];
+                }
 
-            public int node() {
-                if (node == -1) return -1;
-                if (nodes.size() <= node) {
-                    data = null;
-                    return node = -1;
+                private long[] run() {
+                    for (int node = 0; node < adjacency.nodeCount; node++) {
+                        distances.set(node, Long.MAX_VALUE);
+                    }
+                    distances.set(source, 0);
+                    IntList start = new IntList(1);
+                    start.add(source);
+                    buckets.put(0L, start);
+                    Map.Entry<Long, IntList> entry;
+                    while ((entry = buckets.pollFirstEntry()) != null) {
+                        long bucket = entry.getKey();
+                        IntList frontier = select(entry.getValue(), bucket);
+                        IntList settled = new IntList();
+                        while (!frontier.isEmpty()) {
+                            if (control != null) control.checkpoint();
+                            settled.addAll(frontier);
+                            IntList improved = relax(frontier, true);
+                            frontier = new IntList();
+                            distribute(improved, bucket, frontier);
+                        }
+                        distribute(relax(deduplicate(settled), false), bucket, null);
+                    }
+                    long[] result = new long[adjacency.nodeCount];
+                    for (int node = 0; node < result.length; node++) {
+                        result[node] = distances.get(node);
+                    }
+                    return result;
                 }
-                NodeDataType current = nodes.get(node);
-                if (!current.equals(data)) {
-                    node = nodes.indexOf(data);
-                    if (node == -1) {
-                        data = null; // Node removed
+
+                /**
+                 * @return the nodes of the list that still belong into the bucket, without duplicates
+                 */
+                private IntList select(IntList nodes, long bucket) {
+                    stamp++;
+                    IntList selected = new IntList(nodes.size());
+                    for (int i = 0; i < nodes.size(); i++) {
+                        int node = nodes.get(i);
+                        if (stamps[node] == stamp || distances.get(node) / delta != bucket) continue;
+                        stamps[node] = stamp;
+                        selected.add(node);
                     }
+                    return selected;
                 }
-                return node;
-            }
 
-            @Override
-            public List<Connection<NodeDataType, WayDataType>> connections() {
-                List<Connection<NodeDataType, WayDataType>> con = new ArrayList<>();
-                int node = node();
-                if (node == -1) {
-                    return Collections.emptyList(); // Node removed
+                private IntList deduplicate(IntList nodes) {
+                    stamp++;
+                    IntList unique = new IntList(nodes.size());
+                    for (int i = 0; i < nodes.size(); i++) {
+                        int node = nodes.get(i);
+                        if (stamps[node] == stamp) continue;
+                        stamps[node] = stamp;
+                        unique.add(node);
+                    }
+                    return unique;
                 }
-                ArrayList<WayDataType>[] con2 = connections[node];
-                for (int toNr = 0; toNr < con2.length; toNr++) {
-                    if (con2[toNr] == null) continue;
-                    for (int i = 0; i < con2[toNr].size(); i++) {
-                        con.add(new ArrayConnection(new ArrayNode(node), new ArrayNode(toNr), i, con2[toNr].get(i)));
+
+                /**
+                 * Puts the improved nodes into their buckets, or into the frontier if they stay in the current bucket.
+                 */
+                private void distribute(IntList improved, long current, IntList frontier) {
+                    stamp++;
+                    for (int i = 0; i < improved.size(); i++) {
+                        int node = improved.get(i);
+                        if (stamps[node] == stamp) continue;
+                        stamps[node] = stamp;
+                        long bucket = distances.get(node) / delta;
+                        if (bucket == current && frontier != null) frontier.add(node);
+                        else buckets.computeIfAbsent(bucket, b -> new IntList()).add(node);
                     }
                 }
-                return Collections.unmodifiableList(con);
-            }
 
-            @Override
-            public Connection<NodeDataType, WayDataType> newConnection(Node<NodeDataType, WayDataType> to, WayDataType way) {
-                return graph().newConnection(this, to, way);
-            }
+                private IntList relax(IntList nodes, boolean light) {
+                    if (nodes.size() < PARALLEL_THRESHOLD) return relax(nodes, 0, nodes.size(), light);
+                    return new RelaxTask(nodes, 0, nodes.size(), light).invoke();
+                }
 
-            @Override
-            public void removeConnection(Connection<NodeDataType, WayDataType> connection) {
-                graph().removeConnection(connection);
-            }
+                /**
+                 * @return the targets whose distance was lowered
+                 */
+                private IntList relax(IntList nodes, int from, int to, boolean light) {
+                    IntList improved = new IntList();
+                    int[] offsets = adjacency.offsets;
+                    int[] targets = adjacency.targets;
+                    long[] weights = adjacency.weights;
+                    for (int i = from; i < to; i++) {
+                        int node = nodes.get(i);
+                        long distance = distances.get(node);
+                        for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                            long weight = weights[edge];
+                            if ((weight <= delta) != light) continue;
+                            int target = targets[edge];
+                            long candidate = distance + weight;
+                            long current;
+                            while (candidate < (current = distances.get(target))) {
+                                if (distances.compareAndSet(target, current, candidate)) {
+                                    improved.add(target);
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                    return improved;
+                }
 
-            @Override
-            public NodeDataType data() {
-                node();
-                return data;
-            }
+                @SuppressWarnings("serial")
+                private final class RelaxTask extends RecursiveTask<IntList> {
+                    private final IntList nodes;
+                    private final int from;
+                    private final int to;
+                    private final boolean light;
+
+                    private RelaxTask(IntList nodes, int from, int to, boolean light) {
+                        this.nodes = nodes;
+                        this.from = from;
+                        this.to = to;
+                        this.light = light;
+                    }
 
-            @Override
-            public ArrayGraph<NodeDataType, WayDataType> graph() {
-                return ArrayGraph.this;
+                    @Override
+                    protected IntList compute() {
+                        if (to - from <= PARALLEL_THRESHOLD) return relax(nodes, from, to, light);
+                        int mid = (from + to) >>> 1;
+                        RelaxTask right = new RelaxTask(nodes, mid, to, light);
+                        right.fork();
+                        IntList improved = new RelaxTask(nodes, from, mid, light).compute();
+                        improved.addAll(right.join());
+                        return improved;
+                    }
+                }
             }
+        }
 
-            @Override
-            public void remove() {
-                graph().removeNode(this);
+        private static final class AltSearch<NodeDataType, WayDataType> implements Algorithm<Algorithm.DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> {
+            private final Algorithm.Landmarks<NodeDataType, WayDataType> landmarks;
+
+            private AltSearch(Algorithm.Landmarks<NodeDataType, WayDataType> landmarks) {
+                this.landmarks = landmarks;
             }
 
             @Override
-            public Collection<Node<NodeDataType, WayDataType>> reachableNodes() {
-                Collection<Node<NodeDataType, WayDataType>> reachable = new HashSet<>();
-                Set<Integer> used = new HashSet<>();
-                reachableNodes(reachable, used, this.node());
-                used.clear();
-                return Collections.unmodifiableCollection(reachable);
+            public Path<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data) {
+                data = data.on(graph);
+                landmarks.checkGraph(graph);
+                Probe probe = Probe.start("alt", data.stats());
+                try {
+                    Path<NodeDataType, WayDataType> path = search(graph, data, probe == null ? null : probe.stats);
+                    if (probe != null) probe.finish(path != null && !(path instanceof PartialPath));
+                    return path;
+                } finally {
+                    if (probe != null) probe.abort();
+                }
             }
 
-            private void reachableNodes(Collection<Node<NodeDataType, WayDataType>> nodes, Set<Integer> used, int currentNode) {
-                used.add(currentNode);
-                nodes.add(new ArrayNode(currentNode));
-                for (int toNr = 0; toNr < connections[currentNode].length; toNr++) {
-                    if (used.contains(toNr)) continue;
-                    ArrayList<WayDataType> ways = connections[currentNode][toNr];
-                    if (ways == null) continue;
-                    reachableNodes(nodes, used, toNr);
+            private Path<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data, Algorithm.SearchStats stats) {
+                Algorithm.SearchControl control = Algorithm.SearchControl.current();
+                Algorithm.SearchBudget.Tracker budget = Algorithm.SearchBudget.Tracker.start(data.budget());
+                Node<NodeDataType, WayDataType> target = data.targetNode();
+                int targetId = target.id();
+                Map<Node<NodeDataType, WayDataType>, Label> best = new HashMap<>();
+                Set<Node<NodeDataType, WayDataType>> settled = new HashSet<>();
+                PriorityQueue<Label> queue = new PriorityQueue<>();
+                long startBound = landmarks.lowerBound(data.startNode().id(), targetId);
+                if (startBound == Long.MAX_VALUE) return null;
+                Label start = new Label(data.startNode(), null, null, 0, startBound);
+                queue.add(start);
+                best.put(start.node, start);
+                if (stats != null) {
+                    stats.queuePushes++;
+                    stats.peakQueueSize = 1;
                 }
+                Label label;
+                while ((label = queue.poll()) != null) {
+                    if (!settled.add(label.node)) continue;
+                    if (control != null) control.checkpoint();
+                    if (budget != null) {
+                        Algorithm.SearchBudget.Reason reason = budget.settle(label.distance);
+                        if (reason != null) {
+                            SimplePartialPath<NodeDataType, WayDataType> path = new SimplePartialPath<>(graph, label.node, label.distance, reason);
+                            label.fill(path);
+                            return path;
+                        }
+                    }
+                    if (stats != null) stats.nodesSettled++;
+                    if (label.node.equals(target)) {
+                        SimplePath<NodeDataType, WayDataType> path = new SimplePath<>(graph);
+                        label.fill(path);
+                        return path;
+                    }
+                    for (Node.Connection<NodeDataType, WayDataType> connection : label.node.connections()) {
+                        if (stats != null) stats.edgesRelaxed++;
+                        Node<NodeDataType, WayDataType> to = connection.to();
+                        if (settled.contains(to)) continue;
+                        long distance = label.distance + data.weightCalculator().weight(connection);
+                        Label old = best.get(to);
+                        if (old != null && old.distance <= distance) continue;
+                        long bound = old != null ? old.estimate - old.distance : landmarks.lowerBound(to.id(), targetId);
+                        if (bound == Long.MAX_VALUE) continue;
+                        Label next = new Label(to, connection, label, distance, distance + bound);
+                        best.put(to, next);
+                        queue.add(next);
+                        if (stats != null) {
+                            if (old != null) stats.decreaseKeys++;
+                            else stats.queuePushes++;
+                            stats.peakQueueSize = Math.max(stats.peakQueueSize, queue.size());
+                        }
+                    }
+                }
+                return null;
             }
-        }
 
+            private final class Label implements Comparable<Label> {
+                private final Node<NodeDataType, WayDataType> node;
+                private final Node.Connection<NodeDataType, WayDataType> connection;
+                private final Label previous;
+                private final long distance;
+                private final long estimate;
+
+                private Label(Node<NodeDataType, WayDataType> node, Node.Connection<NodeDataType, WayDataType> connection, Label previous, long distance, long estimate) {
+                    this.node = node;
+                    this.connection = connection;
+                    this.previous = previous;
+                    this.distance = distance;
+                    this.estimate = estimate;
+                }
 
-        private class ArrayConnection implements Node.Connection<NodeDataType, WayDataType> {
-
-            private final ArrayNode from;
-            private final ArrayNode to;
-            private int wayId;
-            private WayDataType way;
+                private void fill(SimplePath<NodeDataType, WayDataType> path) {
+                    for (Label label = this; label.connection != null; label = label.previous) {
+                        path.connections.add(label.connection);
+                    }
+                    Collections.reverse(path.connections);
+                }
 
-            public ArrayConnection(ArrayNode from, ArrayNode to, int wayId, WayDataType way) {
-                this.from = from;
-                this.to = to;
-                this.wayId = wayId;
-                this.way = way;
+                @Override
+                public int compareTo(Label o) {
+                    return Long.compare(estimate, o.estimate);
+                }
             }
+        }
 
-            @Override
-            public boolean equals(Object o) {
-                if (this == o) return true;
-                if (o == null || getClass() != o.getClass()) return false;
-                ArrayConnection that = (ArrayConnection) o;
-                return wayId == that.wayId && Objects.equals(from, that.from) && Objects.equals(to, that.to) && Objects.equals(way, that.way);
+        static final class QueueDijkstra<NodeDataType, WayDataType> implements Algorithm<Algorithm.DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> {
+            private final Algorithm.QueueType type;
+
+            QueueDijkstra(Algorithm.QueueType type) {
+                this.type = type;
             }
 
             @Override
-            public int hashCode() {
-                return Objects.hash(from, to, wayId, way);
+            public Path<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data) {
+                data = data.on(graph);
+                Probe probe = Probe.start("dijkstra", data.stats());
+                try {
+                    Path<NodeDataType, WayDataType> path = search(graph, data, probe == null ? null : probe.stats);
+                    if (probe != null) probe.finish(path != null && !(path instanceof PartialPath));
+                    return path;
+                } finally {
+                    if (probe != null) probe.abort();
+                }
             }
 
-            @Override
-            public ArrayNode from() {
-                return from;
+            private Path<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data, Algorithm.SearchStats stats) {
+                Algorithm.SearchControl control = Algorithm.SearchControl.current();
+                Algorithm.SearchBudget.Tracker budget = Algorithm.SearchBudget.Tracker.start(data.budget());
+                long maxWeight = data.maxWeight();
+                IntLongQueue queue = IntLongQueue.create(type, maxWeight);
+                int count = graph.nodeIdBound();
+                long[] distances = new long[count];
+                Arrays.fill(distances, Long.MAX_VALUE);
+                List<Node.Connection<NodeDataType, WayDataType>> previous = new ArrayList<>(Collections.nCopies(count, null));
+                boolean[] settled = new boolean[count];
+                int start = data.startNode().id();
+                int target = data.targetNode().id();
+                distances[start] = 0;
+                queue.push(start, 0);
+                if (stats != null) {
+                    stats.queuePushes++;
+                    stats.peakQueueSize = 1;
+                }
+                while (!queue.isEmpty()) {
+                    long distance = queue.peekKey();
+                    int nodeId = queue.pop();
+                    if (settled[nodeId] || distance > distances[nodeId]) continue;
+                    if (control != null) control.checkpoint();
+                    Node<NodeDataType, WayDataType> node = graph.node(nodeId);
+                    if (budget != null) {
+                        Algorithm.SearchBudget.Reason reason = budget.settle(distance);
+                        if (reason != null) {
+                            SimplePartialPath<NodeDataType, WayDataType> path = new SimplePartialPath<>(graph, node, distance, reason);
+                            fill(path, previous, nodeId);
+                            return path;
+                        }
+                    }
+                    settled[nodeId] = true;
+                    if (stats != null) stats.nodesSettled++;
+                    if (nodeId == target) {
+                        SimplePath<NodeDataType, WayDataType> path = new SimplePath<>(graph);
+                        fill(path, previous, nodeId);
+                        return path;
+                    }
+                    for (Node.Connection<NodeDataType, WayDataType> connection : node.connections()) {
+                        if (stats != null) stats.edgesRelaxed++;
+                        int to = connection.to().id();
+                        if (settled[to]) continue;
+                        long weight = data.weightCalculator().weight(connection);
+                        if (maxWeight != -1 && weight > maxWeight) throw new IllegalArgumentException("Weight " + weight + " larger than the declared max weight " + maxWeight);
+                        long candidate = distance + weight;
+                        if (candidate >= distances[to]) continue;
+                        if (stats != null) {
+                            if (distances[to] != Long.MAX_VALUE) stats.decreaseKeys++;
+                            else stats.queuePushes++;
+                        }
+                        distances[to] = candidate;
+                        previous.set(to, connection);
+                        queue.push(to, candidate);
+                        if (stats != null) stats.peakQueueSize = Math.max(stats.peakQueueSize, queue.size());
+                    }
+                }
+                return null;
             }
 
-            @Override
-            public ArrayNode to() {
-                return to;
+            private static <NodeDataType, WayDataType> void fill(SimplePath<NodeDataType, WayDataType> path, List<Node.Connection<NodeDataType, WayDataType>> previous, int nodeId) {
+                for (Node.Connection<NodeDataType, WayDataType> connection; (connection = previous.get(nodeId)) != null; nodeId = connection.from().id()) {
+                    path.connections.add(connection);
+                }
+                Collections.reverse(path.connections);
             }
+        }
 
-            @Override
-            public ArrayGraph<NodeDataType, WayDataType> graph() {
-                return ArrayGraph.this;
+        private static final class DagPath<NodeDataType, WayDataType> implements Algorithm<Algorithm.DijkstraData<NodeDataType, WayDataType>, NodeDataType, WayDataType, Path<NodeDataType, WayDataType>> {
+            private final boolean longest;
+
+            private DagPath(boolean longest) {
+                this.longest = longest;
             }
 
             @Override
-            public WayDataType way() {
-                if (way == null) return null;
-                ArrayList<WayDataType> cons = connections[from.node()][to.node()];
-                if (cons.size() <= wayId) {
-                    wayId = -1;
-                    return way = null;
+            public Path<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data) {
+                data = data.on(graph);
+                Probe probe = Probe.start(longest ? "dag-longest" : "dag-shortest", data.stats());
+                try {
+                    Path<NodeDataType, WayDataType> path = search(graph, data, probe == null ? null : probe.stats);
+                    if (probe != null) probe.finish(path != null && !(path instanceof PartialPath));
+                    return path;
+                } finally {
+                    if (probe != null) probe.abort();
                 }
-                WayDataType current = cons.get(wayId);
-                if (!current.equals(way)) {
-                    wayId = cons.indexOf(way);
-                    if (wayId == -1) {
-                        return way = null;
+            }
+
+            private Path<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData<NodeDataType, WayDataType> data, Algorithm.SearchStats stats) {
+                NodeOrder order = graph.topologicalOrder();
+                Algorithm.SearchControl control = Algorithm.SearchControl.current();
+                Algorithm.SearchBudget.Tracker budget = Algorithm.SearchBudget.Tracker.start(data.budget());
+                long unreached = longest ? Long.MIN_VALUE : Long.MAX_VALUE;
+                int first = order.newId(data.startNode().id());
+                int last = order.newId(data.targetNode().id());
+                if (last < first) return null;
+                // Only nodes between start and target in topological order can be on a path
+                long[] distances = new long[last - first + 1];
+                List<Node.Connection<NodeDataType, WayDataType>> previous = new ArrayList<>(Collections.nCopies(distances.length, null));
+                Arrays.fill(distances, unreached);
+                distances[0] = 0;
+                for (int position = first; position <= last; position++) {
+                    long distance = distances[position - first];
+                    if (distance == unreached) continue;
+                    if (control != null) control.checkpoint();
+                    Node<NodeDataType, WayDataType> node = graph.node(order.oldId(position));
+                    if (budget != null) {
+                        Algorithm.SearchBudget.Reason reason = budget.settle(Long.MIN_VALUE);
+                        if (reason != null) {
+                            SimplePartialPath<NodeDataType, WayDataType> path = new SimplePartialPath<>(graph, node, distance, reason);
+                            fill(path, previous, order, first, position);
+                            return path;
+                        }
+                    }
+                    if (stats != null) stats.nodesSettled++;
+                    if (position == last) {
+                        SimplePath<NodeDataType, WayDataType> path = new SimplePath<>(graph);
+                        fill(path, previous, order, first, position);
+                        return path;
+                    }
+                    for (Node.Connection<NodeDataType, WayDataType> connection : node.connections()) {
+                        int to = order.newId(connection.to().id());
+                        if (to > last) continue;
+                        if (stats != null) stats.edgesRelaxed++;
+                        long next = distance + data.weightCalculator().weight(connection);
+                        long old = distances[to - first];
+                        if (old == unreached || (longest ? next > old : next < old)) {
+                            distances[to - first] = next;
+                            previous.set(to - first, connection);
+                        }
                     }
                 }
-                return way;
+                return null;
             }
 
-            @Override
-            public void remove() {
-                graph().removeConnection(this);
+            private static <NodeDataType, WayDataType> void fill(SimplePath<NodeDataType, WayDataType> path, List<Node.Connection<NodeDataType, WayDataType>> previous, NodeOrder order, int first, int position) {
+                for (Node.Connection<NodeDataType, WayDataType> connection; (connection = previous.get(position - first)) != null; position = order.newId(connection.from().id())) {
+                    path.connections.add(connection);
+                }
+                Collections.reverse(path.connections);
             }
         }
-    }
-
-
-    class Util {
-        private static final class SimplePath<NodeDataType, WayDataType> implements Path<NodeDataType, WayDataType> {
-            private final ArrayList<Node.Connection<NodeDataType, WayDataType>> connections = new ArrayList<>();
-            private final Graph<NodeDataType, WayDataType> graph;
 
-            public SimplePath(Graph<NodeDataType, WayDataType> graph) {
-                this.graph = graph;
-            }
+        private static final class MinimumSpanningForest<NodeDataType, WayDataType> implements Algorithm<Algorithm.DijkstraData.WeightCalculator<NodeDataType, WayDataType>, NodeDataType, WayDataType, Algorithm.SpanningForest<NodeDataType, WayDataType>> {
+            /**
+             * Graphs with fewer edges use Kruskal, sorting is cheaper than the parallel rounds then.
+             */
+            private static final int KRUSKAL_THRESHOLD = 1 << 16;
+            private static final int CHUNK = 1 << 12;
 
-            public SimplePath(Graph<NodeDataType, WayDataType> graph, Collection<Node.Connection<NodeDataType, WayDataType>> connections) {
-                this(graph);
-                this.connections.addAll(connections);
-            }
+            private final ForkJoinPool pool;
 
-            @Override
-            public Iterator<Node.Connection<NodeDataType, WayDataType>> iterator() {
-                return connections.iterator();
+            private MinimumSpanningForest(ForkJoinPool pool) {
+                this.pool = pool;
             }
 
             @Override
-            public SimplePath<NodeDataType, WayDataType> clone() {
-                return new SimplePath<>(graph, new ArrayList<>(connections));
+            public Algorithm.SpanningForest<NodeDataType, WayDataType> search(Graph<NodeDataType, WayDataType> graph, Algorithm.DijkstraData.WeightCalculator<NodeDataType, WayDataType> weightCalculator) {
+                WeightedAdjacency<NodeDataType, WayDataType> adjacency = WeightedAdjacency.build(graph, weightCalculator, true, pool);
+                int edgeCount = adjacency.edgeCount();
+                int[] sources = new int[edgeCount];
+                for (int node = 0; node < adjacency.nodeCount; node++) {
+                    Arrays.fill(sources, adjacency.offsets[node], adjacency.offsets[node + 1], node);
+                }
+                // Both endpoints of an undirected connection list it, only use it from the one with the lower id
+                boolean undirected = graph.undirected();
+                IntList candidates = new IntList(edgeCount);
+                for (int edge = 0; edge < edgeCount; edge++) {
+                    if (!undirected || adjacency.targets[edge] >= sources[edge]) candidates.add(edge);
+                }
+                int[] edges = Arrays.copyOf(candidates.elements, candidates.size());
+                boolean[] chosen = edges.length < KRUSKAL_THRESHOLD ? kruskal(adjacency, sources, edges) : pool.invoke(ForkJoinTask.adapt(() -> boruvka(adjacency, sources, edges)));
+                List<Node.Connection<NodeDataType, WayDataType>> connections = new ArrayList<>();
+                IntList edgeIds = new IntList();
+                long totalWeight = 0;
+                for (int id = 0; id < edges.length; id++) {
+                    int edge = edges[id];
+                    if (!chosen[edge]) continue;
+                    connections.add(adjacency.connections.get(edge));
+                    edgeIds.add(id);
+                    totalWeight += adjacency.weights[edge];
+                }
+                return new Algorithm.SpanningForest<>(connections, Arrays.copyOf(edgeIds.elements, edgeIds.size()), totalWeight, graph.nodes().size() - edgeIds.size());
             }
 
-            @Override
-            public Graph<NodeDataType, WayDataType> graph() {
-                return graph;
+            private static boolean less(WeightedAdjacency<?, ?> adjacency, int edge, int other) {
+                long weight = adjacency.weights[edge];
+                long otherWeight = adjacency.weights[other];
+                return weight < otherWeight || weight == otherWeight && edge < other;
             }
 
-            @Override
-            public String toString() {
-                StringBuilder sb = new StringBuilder();
-                sb.append("Path[");
-                boolean first = true;
-                for (Node.Connection<NodeDataType, WayDataType> connection : connections) {
-                    if (first) {
-                        first = false;
-                        sb.append(connection.from().data().toString());
+            private boolean[] kruskal(WeightedAdjacency<NodeDataType, WayDataType> adjacency, int[] sources, int[] edges) {
+                // Weights use all 64 bits, their rank fits in the upper half of a key that sorts by weight, then by edge
+                long[] weights = new long[edges.length];
+                for (int i = 0; i < edges.length; i++) {
+                    weights[i] = adjacency.weights[edges[i]];
+                }
+                Arrays.sort(weights);
+                int distinct = 0;
+                for (int i = 0; i < weights.length; i++) {
+                    if (i == 0 || weights[i] != weights[distinct - 1]) weights[distinct++] = weights[i];
+                }
+                long[] order = new long[edges.length];
+                for (int i = 0; i < edges.length; i++) {
+                    long rank = Arrays.binarySearch(weights, 0, distinct, adjacency.weights[edges[i]]);
+                    order[i] = rank << 32 | edges[i];
+                }
+                Arrays.sort(order);
+                ConcurrentUnionFind components = new ConcurrentUnionFind(adjacency.nodeCount);
+                boolean[] chosen = new boolean[adjacency.edgeCount()];
+                int remaining = adjacency.nodeCount - 1;
+                for (int i = 0; i < order.length && remaining > 0; i++) {
+                    int edge = (int) order[i];
+                    if (components.union(sources[edge], adjacency.targets[edge])) {
+                        chosen[edge] = true;
+                        remaining--;
                     }
-                    sb.append(" -> ").append(connection.way()).append(" -> ").append(connection.to().data().toString());
                 }
-                sb.append(']');
-                return sb.toString();
+                return chosen;
             }
 
-            @Override
-            public Node<NodeDataType, WayDataType> last() {
-                return connections.isEmpty() ? null : connections.get(connections.size() - 1).to();
+            /**
+             * Every round each component picks its cheapest outgoing edge, then all picked edges are merged.
+             * The number of components at least halves per round.
+             */
+            private boolean[] boruvka(WeightedAdjacency<NodeDataType, WayDataType> adjacency, int[] sources, int[] edges) {
+                int edgeCount = adjacency.edgeCount();
+                int[] targets = adjacency.targets;
+                ConcurrentUnionFind components = new ConcurrentUnionFind(adjacency.nodeCount);
+                AtomicIntegerArray cheapest = new AtomicIntegerArray(adjacency.nodeCount);
+                for (int node = 0; node < adjacency.nodeCount; node++) {
+                    cheapest.set(node, -1);
+                }
+                boolean[] chosen = new boolean[edgeCount];
+                int[] alive = edges;
+                int aliveCount = edges.length;
+                while (aliveCount > 0) {
+                    // Drop the edges inside a component and find the cheapest edge of every component
+                    int[] current = alive;
+                    IntList[] kept = new IntList[(aliveCount + CHUNK - 1) / CHUNK];
+                    new ParallelRange(0, kept.length, 1, (from, to) -> {
+                        for (int chunk = from; chunk < to; chunk++) {
+                            IntList list = new IntList(CHUNK);
+                            int end = Math.min(current.length, (chunk + 1) * CHUNK);
+                            for (int i = chunk * CHUNK; i < end; i++) {
+                                int edge = current[i];
+                                int source = components.find(sources[edge]);
+                                int target = components.find(targets[edge]);
+                                if (source == target) continue;
+                                list.add(edge);
+                                offer(adjacency, cheapest, source, edge);
+                                offer(adjacency, cheapest, target, edge);
+                            }
+                            kept[chunk] = list;
+                        }
+                    }).invoke();
+                    IntList next = new IntList(aliveCount);
+                    for (IntList list : kept) {
+                        next.addAll(list);
+                    }
+                    if (next.isEmpty()) break;
+                    new ParallelRange(0, adjacency.nodeCount, CHUNK, (from, to) -> {
+                        for (int component = from; component < to; component++) {
+                            int edge = cheapest.get(component);
+                            if (edge == -1) continue;
+                            cheapest.set(component, -1);
+                            if (components.union(sources[edge], targets[edge])) chosen[edge] = true;
+                        }
+                    }).invoke();
+                    alive = Arrays.copyOf(next.elements, next.size());
+                    aliveCount = alive.length;
+                }
+                return chosen;
             }
 
-            @Override
-            public Node<NodeDataType, WayDataType> first() {
-                return connections.isEmpty() ? null : connections.get(0).from();
+            private static void offer(WeightedAdjacency<?, ?> adjacency, AtomicIntegerArray cheapest, int component, int edge) {
+                int current;
+                while (((current = cheapest.get(component)) == -1 || less(adjacency, edge, current)) && !cheapest.compareAndSet(component, current, edge)) {
+                    // Another thread offered an edge in between, compare against that one
+                }
             }
         }
     }
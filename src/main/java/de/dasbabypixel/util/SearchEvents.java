@@ -0,0 +1,21 @@
+package de.dasbabypixel.util;
+
+/**
+ * Bridge to the JDK Flight Recorder. This is the Java 8 variant, which never records anything.
+ * The multi-release jar replaces it on Java 11+ with a variant that emits {@code de.dasbabypixel.util.Search} events.
+ */
+final class SearchEvents {
+
+    private SearchEvents() {
+    }
+
+    /**
+     * @return an opaque event handle, or null if no event should be recorded
+     */
+    static Object begin(String algorithm) {
+        return null;
+    }
+
+    static void end(Object event, Graph.Algorithm.SearchStats stats, boolean found, boolean cancelled) {
+    }
+}
@@ -0,0 +1,18 @@
+package de.dasbabypixel.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Default executor for {@link Graph#searchAsync(Graph.Algorithm.AlgorithmWithData)}.
+ * The multi-release jar replaces this class on Java 21+ with a virtual thread per search.
+ */
+final class SearchExecutors {
+
+    private SearchExecutors() {
+    }
+
+    static Executor defaultExecutor() {
+        return ForkJoinPool.commonPool();
+    }
+}
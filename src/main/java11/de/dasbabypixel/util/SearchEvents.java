@@ -0,0 +1,60 @@
+package de.dasbabypixel.util;
+
+import jdk.jfr.*;
+
+/**
+ * Bridge to the JDK Flight Recorder, emits one {@code de.dasbabypixel.util.Search} event per search.
+ */
+final class SearchEvents {
+
+    private SearchEvents() {
+    }
+
+    /**
+     * @return an opaque event handle, or null if no event should be recorded
+     */
+    static Object begin(String algorithm) {
+        SearchEvent event = new SearchEvent();
+        if (!event.isEnabled()) return null;
+        event.algorithm = algorithm;
+        event.begin();
+        return event;
+    }
+
+    static void end(Object event, Graph.Algorithm.SearchStats stats, boolean found, boolean cancelled) {
+        SearchEvent searchEvent = (SearchEvent) event;
+        searchEvent.end();
+        if (!searchEvent.shouldCommit()) return;
+        searchEvent.found = found;
+        searchEvent.cancelled = cancelled;
+        searchEvent.nodesSettled = stats.nodesSettled();
+        searchEvent.edgesRelaxed = stats.edgesRelaxed();
+        searchEvent.queuePushes = stats.queuePushes();
+        searchEvent.decreaseKeys = stats.decreaseKeys();
+        searchEvent.peakQueueSize = stats.peakQueueSize();
+        searchEvent.commit();
+    }
+
+    @Name("de.dasbabypixel.util.Search")
+    @Label("Graph Search")
+    @Category({"DasBabyPixel", "Graph"})
+    @StackTrace(false)
+    static final class SearchEvent extends Event {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Found")
+        boolean found;
+        @Label("Cancelled")
+        boolean cancelled;
+        @Label("Nodes Settled")
+        long nodesSettled;
+        @Label("Edges Relaxed")
+        long edgesRelaxed;
+        @Label("Queue Pushes")
+        long queuePushes;
+        @Label("Decrease Keys")
+        long decreaseKeys;
+        @Label("Peak Queue Size")
+        long peakQueueSize;
+    }
+}
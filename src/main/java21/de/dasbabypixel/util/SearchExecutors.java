@@ -0,0 +1,22 @@
+package de.dasbabypixel.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Default executor for {@link Graph#searchAsync(Graph.Algorithm.AlgorithmWithData)}, starts a virtual thread per search.
+ */
+final class SearchExecutors {
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newThreadPerTaskExecutor(Thread
+            .ofVirtual()
+            .name("graph-search-", 0)
+            .factory());
+
+    private SearchExecutors() {
+    }
+
+    static Executor defaultExecutor() {
+        return VIRTUAL_THREADS;
+    }
+}
@@ -0,0 +1,53 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AltSearchTest {
+
+    @Test
+    void pathsMatchDijkstra() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(14), 400, 2000, 100);
+            for (int count : new int[]{1, 4, 16}) {
+                assertMatchesDijkstra(graph, Graph.Algorithm.Landmarks.select(graph, Graph.Node.Connection::way, count), new Random(count));
+            }
+        }
+    }
+
+    @Test
+    void pathsMatchDijkstraWithLargeWeights() {
+        // Distances beyond the int range are stored as long
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(15), 300, 1500, 1L << 40);
+        assertMatchesDijkstra(graph, Graph.Algorithm.Landmarks.select(graph, Graph.Node.Connection::way, 8), new Random(15));
+    }
+
+    @Test
+    void outdatedLandmarksAreRejected() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(16), 50, 200, 10);
+        Graph.Algorithm.Landmarks<Integer, Long> landmarks = Graph.Algorithm.Landmarks.select(graph, Graph.Node.Connection::way, 4);
+        graph.node(0).newConnection(graph.node(1), 1L);
+        assertThrows(IllegalStateException.class, () -> graph.search(Graph.Algorithm.alt(landmarks).withData(TestGraphs.data(graph.node(0), graph.node(49)))));
+
+        Graph<Integer, Long> other = TestGraphs.fill(Graph.linkedGraph(), new Random(16), 50, 200, 10);
+        Graph.Algorithm.Landmarks<Integer, Long> current = Graph.Algorithm.Landmarks.select(graph, Graph.Node.Connection::way, 4);
+        assertThrows(IllegalArgumentException.class, () -> other.search(Graph.Algorithm.alt(current).withData(TestGraphs.data(other.node(0), other.node(49)))));
+    }
+
+    private static void assertMatchesDijkstra(Graph<Integer, Long> graph, Graph.Algorithm.Landmarks<Integer, Long> landmarks, Random random) {
+        int nodes = graph.nodes().size();
+        for (int i = 0; i < 100; i++) {
+            Graph.Node<Integer, Long> start = graph.node(random.nextInt(nodes));
+            Graph.Node<Integer, Long> target = graph.node(random.nextInt(nodes));
+            Graph.Path<Integer, Long> expected = graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(start, target)));
+            Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.alt(landmarks).withData(TestGraphs.data(start, target)));
+            assertEquals(TestGraphs.cost(expected), TestGraphs.cost(path), start + " -> " + target);
+            if (path != null) TestGraphs.assertPath(path, start, target);
+        }
+    }
+}
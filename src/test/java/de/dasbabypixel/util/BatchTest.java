@@ -0,0 +1,204 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchTest {
+
+    @Test
+    void batchEqualsTheCallsOneByOne() {
+        List<Supplier<Graph<Integer, Long>>> factories = TestGraphs.directed();
+        factories.add(Graph::undirectedLinkedGraph);
+        for (Supplier<Graph<Integer, Long>> factory : factories) {
+            for (int seed = 0; seed < 20; seed++) {
+                Graph<Integer, Long> sequential = TestGraphs.fill(factory.get(), new Random(seed), 60, 200, 20);
+                Graph<Integer, Long> batched = TestGraphs.fill(factory.get(), new Random(seed), 60, 200, 20);
+                long version = batched.version();
+                List<Operation> operations = operations(sequential, new Random(seed));
+                apply(sequential, operations, new Operations<Integer, Long>() {
+                    @Override
+                    public Graph.Node<Integer, Long> newNode(Integer data) {
+                        return sequential.newNode(data);
+                    }
+
+                    @Override
+                    public void removeNode(Graph.Node<Integer, Long> node) {
+                        sequential.removeNode(node);
+                    }
+
+                    @Override
+                    public void newConnection(Graph.Node<Integer, Long> from, Graph.Node<Integer, Long> to, Long way) {
+                        from.newConnection(to, way);
+                    }
+
+                    @Override
+                    public void removeConnection(Graph.Node.Connection<Integer, Long> connection) {
+                        connection.remove();
+                    }
+                });
+                batched.batch(batch -> apply(batched, operations, new Operations<Integer, Long>() {
+                    @Override
+                    public Graph.Node<Integer, Long> newNode(Integer data) {
+                        return batch.newNode(data);
+                    }
+
+                    @Override
+                    public void removeNode(Graph.Node<Integer, Long> node) {
+                        batch.removeNode(node);
+                    }
+
+                    @Override
+                    public void newConnection(Graph.Node<Integer, Long> from, Graph.Node<Integer, Long> to, Long way) {
+                        batch.newConnection(from, to, way);
+                    }
+
+                    @Override
+                    public void removeConnection(Graph.Node.Connection<Integer, Long> connection) {
+                        batch.removeConnection(connection);
+                    }
+                }));
+                assertEquals(describe(sequential), describe(batched), "seed " + seed);
+                if (version != -1) assertEquals(version + 1, batched.version());
+                assertEquals(TestGraphs.cost(sequential.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(sequential.node(0), sequential.node(sequential.nodes().size() - 1))))),
+                        TestGraphs.cost(batched.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(batched.node(0), batched.node(batched.nodes().size() - 1))))));
+            }
+        }
+    }
+
+    @Test
+    void failedBatchLeavesTheGraphUnchanged() {
+        List<Supplier<Graph<Integer, Long>>> factories = TestGraphs.directed();
+        factories.add(Graph::undirectedLinkedGraph);
+        for (Supplier<Graph<Integer, Long>> factory : factories) {
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(35), 30, 90, 10);
+            List<String> before = describe(graph);
+            long version = graph.version();
+            assertThrows(IllegalStateException.class, () -> graph.batch(batch -> {
+                Graph.Node<Integer, Long> node = batch.newNode(30);
+                batch.newConnection(graph.node(0), node, 1L);
+                batch.removeNode(graph.node(1));
+                throw new IllegalStateException("Abort");
+            }));
+            Graph.Node<Integer, Long> removed = graph.node(2);
+            assertThrows(IllegalArgumentException.class, () -> graph.batch(batch -> {
+                batch.newConnection(graph.node(0), graph.node(3), 1L);
+                batch.removeNode(removed);
+                batch.newConnection(removed, graph.node(3), 1L);
+            }));
+            assertEquals(before, describe(graph));
+            assertEquals(version, graph.version());
+        }
+    }
+
+    /**
+     * The modifications of a batch, so the same ones can be made on the graph directly.
+     */
+    private interface Operations<NodeDataType, WayDataType> {
+        Graph.Node<NodeDataType, WayDataType> newNode(NodeDataType data);
+
+        void removeNode(Graph.Node<NodeDataType, WayDataType> node);
+
+        void newConnection(Graph.Node<NodeDataType, WayDataType> from, Graph.Node<NodeDataType, WayDataType> to, WayDataType way);
+
+        void removeConnection(Graph.Node.Connection<NodeDataType, WayDataType> connection);
+    }
+
+    /**
+     * Nodes are referenced by their data, connections by their index in {@link Graph#connections()} before the batch.
+     */
+    private static final class Operation {
+        private final int type;
+        private final int first;
+        private final int second;
+        private final long way;
+
+        private Operation(int type, int first, int second, long way) {
+            this.type = type;
+            this.first = first;
+            this.second = second;
+            this.way = way;
+        }
+    }
+
+    /**
+     * Random operations that are valid when made one after another. Node data stays unique, array graphs need that.
+     * Only connections without parallel connections are removed, array graphs tell those apart by position.
+     */
+    private static List<Operation> operations(Graph<Integer, Long> graph, Random random) {
+        List<Graph.Node.Connection<Integer, Long>> connections = new ArrayList<>(graph.connections());
+        Map<String, Integer> pairs = new HashMap<>();
+        for (Graph.Node.Connection<Integer, Long> connection : connections) {
+            pairs.merge(pair(connection), 1, Integer::sum);
+        }
+        List<Integer> nodes = new ArrayList<>();
+        for (Graph.Node<Integer, Long> node : graph.nodes()) {
+            nodes.add(node.data());
+        }
+        Set<Integer> removedConnections = new HashSet<>();
+        int created = nodes.size();
+        List<Operation> operations = new ArrayList<>();
+        for (int i = 0; i < 80; i++) {
+            int type = random.nextInt(4);
+            if (type == 0) {
+                nodes.add(created);
+                operations.add(new Operation(0, created++, 0, 0));
+            } else if (type == 1 && nodes.size() > 2) {
+                // Keep the first node, it is the start of the compared search
+                operations.add(new Operation(1, nodes.remove(1 + random.nextInt(nodes.size() - 1)), 0, 0));
+            } else if (type == 2) {
+                operations.add(new Operation(2, nodes.get(random.nextInt(nodes.size())), nodes.get(random.nextInt(nodes.size())), random.nextInt(20)));
+            } else if (type == 3) {
+                int index = random.nextInt(connections.size());
+                Graph.Node.Connection<Integer, Long> connection = connections.get(index);
+                if (pairs.get(pair(connection)) == 1 && nodes.contains(connection.from().data()) && nodes.contains(connection.to().data()) && removedConnections.add(index)) {
+                    operations.add(new Operation(3, index, 0, 0));
+                }
+            }
+        }
+        return operations;
+    }
+
+    private static void apply(Graph<Integer, Long> graph, List<Operation> operations, Operations<Integer, Long> target) {
+        List<Graph.Node.Connection<Integer, Long>> connections = new ArrayList<>(graph.connections());
+        Map<Integer, Graph.Node<Integer, Long>> nodes = new HashMap<>();
+        for (Graph.Node<Integer, Long> node : graph.nodes()) {
+            nodes.put(node.data(), node);
+        }
+        for (Operation operation : operations) {
+            if (operation.type == 0) nodes.put(operation.first, target.newNode(operation.first));
+            else if (operation.type == 1) target.removeNode(nodes.remove(operation.first));
+            else if (operation.type == 2) target.newConnection(nodes.get(operation.first), nodes.get(operation.second), operation.way);
+            else target.removeConnection(connections.get(operation.first));
+        }
+    }
+
+    private static String pair(Graph.Node.Connection<Integer, Long> connection) {
+        return connection.from().data() + ">" + connection.to().data();
+    }
+
+    /**
+     * @return every node with its data and connections, in id order
+     */
+    private static List<String> describe(Graph<Integer, Long> graph) {
+        List<String> described = new ArrayList<>();
+        for (int id = 0; id < graph.nodes().size(); id++) {
+            StringBuilder builder = new StringBuilder().append(graph.node(id).data()).append(':');
+            for (Graph.Node.Connection<Integer, Long> connection : graph.node(id).connections()) {
+                builder.append(' ').append(connection.to().data()).append('=').append(connection.way());
+            }
+            described.add(builder.toString());
+        }
+        return described;
+    }
+}
@@ -0,0 +1,175 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CentralityTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    void betweennessAndClosenessMatchAllShortestPaths() {
+        Random random = new Random(37);
+        for (int round = 0; round < 40; round++) {
+            boolean undirected = round % 2 == 1;
+            int nodes = 2 + random.nextInt(12);
+            int[][] adjacency = simple(random, nodes, random.nextInt(nodes * 3), undirected);
+            Graph<Integer, Long> graph = undirected ? Graph.undirectedLinkedGraph() : Graph.linkedGraph();
+            build(graph, adjacency, undirected);
+
+            // The adjacency holds both directions of undirected connections, so the searches follow them both ways
+            int[][] distances = new int[nodes][];
+            long[][] paths = new long[nodes][];
+            for (int source = 0; source < nodes; source++) {
+                distances[source] = new int[nodes];
+                paths[source] = new long[nodes];
+                breadthFirst(adjacency, source, distances[source], paths[source]);
+            }
+            double[] betweenness = new double[nodes];
+            double[] closeness = new double[nodes];
+            for (int node = 0; node < nodes; node++) {
+                int reached = 0;
+                long total = 0;
+                for (int s = 0; s < nodes; s++) {
+                    if (s != node && distances[node][s] != -1) {
+                        reached++;
+                        total += distances[node][s];
+                    }
+                    for (int t = 0; t < nodes; t++) {
+                        if (s == node || t == node || s == t || distances[s][t] == -1 || distances[s][node] == -1 || distances[node][t] == -1) continue;
+                        if (distances[s][node] + distances[node][t] == distances[s][t]) {
+                            betweenness[node] += (double) paths[s][node] * paths[node][t] / paths[s][t];
+                        }
+                    }
+                }
+                if (undirected) betweenness[node] /= 2;
+                closeness[node] = reached == 0 ? 0 : (double) reached / total * reached / (nodes - 1);
+            }
+            assertArrayEquals(betweenness, Graph.Algorithm.Centrality.betweenness(graph), DELTA);
+            assertArrayEquals(closeness, Graph.Algorithm.Centrality.closeness(graph), DELTA);
+            ForkJoinPool pool = new ForkJoinPool(3);
+            try {
+                assertArrayEquals(betweenness, Graph.Algorithm.Centrality.betweenness(graph, pool), DELTA);
+                assertArrayEquals(closeness, Graph.Algorithm.Centrality.closeness(graph, pool), DELTA);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void sampledBetweennessOfAllNodesIsExact() {
+        Random random = new Random(38);
+        int[][] adjacency = simple(random, 50, 150, false);
+        Graph<Integer, Long> graph = Graph.linkedGraph();
+        build(graph, adjacency, false);
+        double[] exact = Graph.Algorithm.Centrality.betweenness(graph);
+        assertArrayEquals(exact, Graph.Algorithm.Centrality.sampledBetweenness(graph, 1000, 1), 1e-6);
+        assertArrayEquals(Graph.Algorithm.Centrality.sampledBetweenness(graph, 10, 7), Graph.Algorithm.Centrality.sampledBetweenness(graph, 10, 7), 0);
+    }
+
+    @Test
+    void pageRankMatchesPowerIteration() {
+        Random random = new Random(39);
+        for (int round = 0; round < 20; round++) {
+            boolean undirected = round % 2 == 1;
+            int nodes = 1 + random.nextInt(60);
+            int[][] adjacency = simple(random, nodes, random.nextInt(nodes * 4 + 1), undirected);
+            Graph<Integer, Long> graph = undirected ? Graph.undirectedLinkedGraph() : Graph.linkedGraph();
+            build(graph, adjacency, undirected);
+            double[] ranks = Graph.Algorithm.Centrality.pageRank(graph, 0.85, 1e-12, 1000, ForkJoinPool.commonPool());
+            assertEquals(1, Arrays.stream(ranks).sum(), 1e-9);
+
+            double[] expected = new double[nodes];
+            Arrays.fill(expected, 1.0 / nodes);
+            for (int iteration = 0; iteration < 1000; iteration++) {
+                double dangling = 0;
+                for (int node = 0; node < nodes; node++) {
+                    if (adjacency[node].length == 0) dangling += expected[node];
+                }
+                double[] next = new double[nodes];
+                Arrays.fill(next, (0.15 + 0.85 * dangling) / nodes);
+                for (int node = 0; node < nodes; node++) {
+                    for (int to : adjacency[node]) {
+                        next[to] += 0.85 * expected[node] / adjacency[node].length;
+                    }
+                }
+                expected = next;
+            }
+            assertArrayEquals(expected, ranks, 1e-9);
+        }
+    }
+
+    /**
+     * Random connections without self loops and parallel connections, BFS path counts are ambiguous with those.
+     *
+     * @return the targets of every node, both directions of every connection if {@code undirected}
+     */
+    private static int[][] simple(Random random, int nodes, int connections, boolean undirected) {
+        Set<Long> used = new HashSet<>();
+        int[][] adjacency = new int[nodes][0];
+        for (int i = 0; i < connections; i++) {
+            int from = random.nextInt(nodes);
+            int to = random.nextInt(nodes);
+            if (from == to || used.contains((long) from * nodes + to)) continue;
+            used.add((long) from * nodes + to);
+            adjacency[from] = append(adjacency[from], to);
+            if (undirected) {
+                used.add((long) to * nodes + from);
+                adjacency[to] = append(adjacency[to], from);
+            }
+        }
+        return adjacency;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    /**
+     * Adds the connections, every undirected connection once from the endpoint with the lower id.
+     */
+    private static void build(Graph<Integer, Long> graph, int[][] adjacency, boolean undirected) {
+        for (int node = 0; node < adjacency.length; node++) {
+            graph.newNode(node);
+        }
+        for (int from = 0; from < adjacency.length; from++) {
+            for (int to : adjacency[from]) {
+                if (!undirected || from < to) graph.node(from).newConnection(graph.node(to), 1L);
+            }
+        }
+    }
+
+    /**
+     * Fills the distances ({@code -1} if unreachable) and the number of shortest paths from the source.
+     */
+    private static void breadthFirst(int[][] adjacency, int source, int[] distances, long[] paths) {
+        Arrays.fill(distances, -1);
+        distances[source] = 0;
+        paths[source] = 1;
+        int[] queue = new int[adjacency.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int to : adjacency[node]) {
+                if (distances[to] == -1) {
+                    distances[to] = distances[node] + 1;
+                    queue[tail++] = to;
+                }
+                if (distances[to] == distances[node] + 1) paths[to] += paths[node];
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedGraphTest {
+
+    @Test
+    void compressedGraphEqualsItsSource() {
+        Random random = new Random(29);
+        // Enough nodes for gaps of three varint bytes, plus self loops and parallel connections
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), random, 70000, 200000, 1000);
+        for (int i = 0; i < 1000; i++) {
+            Graph.Node<Integer, Long> node = graph.node(random.nextInt(70000));
+            node.newConnection(node, 1L);
+            node.newConnection(graph.node(random.nextInt(70000)), 2L);
+        }
+        for (int node = 0; node < 100; node++) {
+            graph.node(node).newConnection(graph.node(node), 3L);
+        }
+        Graph.CompressedGraph<Integer, Long> compressed = Graph.compress(graph);
+        assertEquals(graph.nodes().size(), compressed.nodes().size());
+        assertEquals(graph.connections().size(), compressed.connections().size());
+        assertTrue(compressed.adjacencyBytes() < graph.connections().size() * 4);
+        for (int id = 0; id < graph.nodeIdBound(); id++) {
+            Graph.Node<Integer, Long> node = compressed.node(id);
+            assertEquals(id, node.id());
+            assertEquals(graph.node(id).data(), node.data());
+            assertEquals(describe(graph.node(id).connections()), describe(node.connections()), "node " + id);
+        }
+        // Origins of the source graph are found by scanning all connections
+        for (int id = 0; id < graph.nodeIdBound(); id += 997) {
+            assertEquals(describe(graph.node(id).origins()), describe(compressed.node(id).origins()), "origins of node " + id);
+        }
+        for (int i = 0; i < 5; i++) {
+            Graph.Node<Integer, Long> start = graph.node(random.nextInt(70000));
+            Graph.Node<Integer, Long> target = graph.node(random.nextInt(70000));
+            Graph.Path<Integer, Long> path = compressed.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(compressed.node(start.id()), compressed.node(target.id()))));
+            assertEquals(TestGraphs.cost(graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(start, target)))), TestGraphs.cost(path));
+            if (path != null) TestGraphs.assertPath(path, compressed.node(start.id()), compressed.node(target.id()));
+        }
+    }
+
+    @Test
+    void compressedGraphIsReadOnly() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.arrayGraph(), new Random(30), 40, 100, 10);
+        Graph.CompressedGraph<Integer, Long> compressed = Graph.compress(graph);
+        Graph.Node<Integer, Long> node = compressed.node(0);
+        assertThrows(UnsupportedOperationException.class, () -> compressed.newNode(40));
+        assertThrows(UnsupportedOperationException.class, () -> compressed.newConnection(node, node, 1L));
+        assertThrows(UnsupportedOperationException.class, () -> compressed.removeNode(node));
+        assertThrows(IndexOutOfBoundsException.class, () -> compressed.node(40));
+
+        BitSet visible = new BitSet();
+        visible.set(0, 40, true);
+        visible.clear(7);
+        assertThrows(IllegalArgumentException.class, () -> Graph.compress(graph.view(visible, (from, to, way) -> true)));
+    }
+
+    /**
+     * @return the connections by node id, sorted because the compressed graph sorts them by target
+     */
+    private static List<String> describe(Iterable<Graph.Node.Connection<Integer, Long>> connections) {
+        List<String> described = new ArrayList<>();
+        for (Graph.Node.Connection<Integer, Long> connection : connections) {
+            described.add(connection.from().id() + ">" + connection.to().id() + ":" + connection.way());
+        }
+        Collections.sort(described);
+        return described;
+    }
+}
@@ -0,0 +1,129 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConcurrentBuilderTest {
+
+    private static final int THREADS = 4;
+    private static final int NODES_PER_THREAD = 500;
+    private static final int CONNECTIONS = 8000;
+
+    @Test
+    void concurrentBuildEqualsASequentialBuild() throws Exception {
+        for (boolean undirected : new boolean[]{false, true}) {
+            Graph.ConcurrentBuilder<Integer, Long> builder = undirected ? Graph.undirectedConcurrentBuilder() : Graph.concurrentBuilder();
+            int nodes = THREADS * NODES_PER_THREAD;
+            Integer[] data = new Integer[nodes];
+            long[][] connections = new long[CONNECTIONS][];
+            Random random = new Random(36);
+            for (int i = 0; i < CONNECTIONS; i++) {
+                connections[i] = new long[]{random.nextInt(nodes), random.nextInt(nodes), random.nextInt(100)};
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int thread = 0; thread < THREADS; thread++) {
+                    int first = thread * NODES_PER_THREAD;
+                    futures.add(executor.submit(() -> {
+                        for (int i = first; i < first + NODES_PER_THREAD; i++) {
+                            int id = builder.newNode(i);
+                            data[id] = i;
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                futures.clear();
+                // Every node gets its connections from one thread, so their order is known
+                for (int thread = 0; thread < THREADS; thread++) {
+                    int owner = thread;
+                    futures.add(executor.submit(() -> {
+                        for (long[] connection : connections) {
+                            if (connection[0] % THREADS == owner) builder.newConnection((int) connection[0], (int) connection[1], connection[2]);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(nodes, builder.nodeCount());
+            ForkJoinPool pool = new ForkJoinPool(THREADS);
+            Graph<Integer, Long> built;
+            try {
+                built = builder.build(pool);
+            } finally {
+                pool.shutdown();
+            }
+
+            Graph<Integer, Long> expected = undirected ? Graph.undirectedLinkedGraph() : Graph.linkedGraph();
+            for (int id = 0; id < nodes; id++) {
+                expected.newNode(data[id]);
+            }
+            for (long[] connection : connections) {
+                expected.node((int) connection[0]).newConnection(expected.node((int) connection[1]), connection[2]);
+            }
+            assertEquals(undirected, built.undirected());
+            assertEquals(describe(expected, undirected), describe(built, undirected));
+            assertEquals(expected.connections().size(), built.connections().size());
+            for (int i = 0; i < 20; i++) {
+                int start = random.nextInt(nodes);
+                int target = random.nextInt(nodes);
+                assertEquals(TestGraphs.cost(expected.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(expected.node(start), expected.node(target))))),
+                        TestGraphs.cost(built.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(built.node(start), built.node(target))))));
+            }
+            // The built graph is an ordinary graph
+            built.node(0).newConnection(built.node(1), 1L);
+            built.removeNode(built.node(2));
+        }
+    }
+
+    @Test
+    void builderIsUsedOnce() {
+        Graph.ConcurrentBuilder<Integer, Long> builder = Graph.concurrentBuilder();
+        int a = builder.newNode(0);
+        int b = builder.newNode(1);
+        builder.newConnection(a, b, 1L);
+        assertEquals(1, builder.build().connections().size());
+        assertThrows(IllegalStateException.class, builder::build);
+        assertThrows(IllegalStateException.class, () -> builder.newNode(2));
+
+        Graph.ConcurrentBuilder<Integer, Long> missing = Graph.concurrentBuilder();
+        missing.newNode(0);
+        missing.newConnection(0, 1, 1L);
+        assertThrows(IllegalArgumentException.class, missing::build);
+        assertThrows(IllegalArgumentException.class, () -> Graph.<Integer, Long>concurrentBuilder().newConnection(-1, 0, 1L));
+    }
+
+    /**
+     * @return every node with its data and connections in id order, the connections sorted in undirected graphs where
+     * the connections added from the other endpoint are interleaved differently
+     */
+    private static List<String> describe(Graph<Integer, Long> graph, boolean sorted) {
+        List<String> described = new ArrayList<>();
+        for (int id = 0; id < graph.nodes().size(); id++) {
+            List<String> connections = new ArrayList<>();
+            for (Graph.Node.Connection<Integer, Long> connection : graph.node(id).connections()) {
+                connections.add(connection.to().id() + "=" + connection.way());
+            }
+            if (sorted) Collections.sort(connections);
+            described.add(graph.node(id).data() + ": " + connections);
+        }
+        return described;
+    }
+}
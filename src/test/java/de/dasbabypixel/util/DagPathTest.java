@@ -0,0 +1,102 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DagPathTest {
+
+    @Test
+    void shortestPathsMatchDijkstra() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fillAcyclic(factory.get(), new Random(22), 300, 1500, 0, 100);
+            Random random = new Random(22);
+            for (int i = 0; i < 100; i++) {
+                Graph.Node<Integer, Long> start = graph.node(random.nextInt(300));
+                Graph.Node<Integer, Long> target = graph.node(random.nextInt(300));
+                Graph.Path<Integer, Long> expected = graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(start, target)));
+                Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.<Integer, Long>dagShortestPath().withData(TestGraphs.data(start, target)));
+                assertEquals(TestGraphs.cost(expected), TestGraphs.cost(path), start + " -> " + target);
+                if (path != null) TestGraphs.assertPath(path, start, target);
+            }
+        }
+    }
+
+    @Test
+    void pathsMatchDynamicProgramming() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            // Negative weights are allowed in acyclic graphs
+            Graph<Integer, Long> graph = TestGraphs.fillAcyclic(factory.get(), new Random(23), 200, 1000, -50, 50);
+            for (int start = 0; start < 200; start += 37) {
+                long[] shortest = dynamicProgramming(graph, start, false);
+                long[] longest = dynamicProgramming(graph, start, true);
+                for (int target = 0; target < 200; target += 7) {
+                    Graph.Algorithm.DijkstraData<Integer, Long> data = TestGraphs.data(graph.node(start), graph.node(target));
+                    Graph.Path<Integer, Long> shortestPath = graph.search(Graph.Algorithm.<Integer, Long>dagShortestPath().withData(data));
+                    Graph.Path<Integer, Long> longestPath = graph.search(Graph.Algorithm.<Integer, Long>dagLongestPath().withData(data));
+                    if (shortest[target] == Long.MAX_VALUE) {
+                        assertNull(shortestPath);
+                        assertNull(longestPath);
+                        continue;
+                    }
+                    TestGraphs.assertPath(shortestPath, graph.node(start), graph.node(target));
+                    TestGraphs.assertPath(longestPath, graph.node(start), graph.node(target));
+                    assertEquals(shortest[target], TestGraphs.cost(shortestPath));
+                    assertEquals(longest[target], TestGraphs.cost(longestPath));
+                }
+            }
+        }
+    }
+
+    @Test
+    void cyclesAreReported() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fillAcyclic(factory.get(), new Random(24), 50, 200, 1, 10);
+            Graph.Algorithm.DijkstraData<Integer, Long> data = TestGraphs.data(graph.node(0), graph.node(49));
+            graph.search(Graph.Algorithm.<Integer, Long>dagShortestPath().withData(data));
+            // The cached order must not survive the modification
+            graph.node(40).newConnection(graph.node(10), 1L);
+            graph.node(10).newConnection(graph.node(40), 1L);
+            Graph.CycleException exception = assertThrows(Graph.CycleException.class, () -> graph.search(Graph.Algorithm.<Integer, Long>dagShortestPath().withData(data)));
+            List<Graph.Node<?, ?>> cycle = exception.cycle();
+            assertFalse(cycle.isEmpty());
+            for (int i = 0; i < cycle.size(); i++) {
+                Graph.Node<?, ?> next = cycle.get((i + 1) % cycle.size());
+                assertTrue(cycle.get(i).connections().stream().anyMatch(connection -> connection.to().equals(next)), "no connection from " + cycle.get(i) + " to " + next);
+            }
+            assertThrows(Graph.CycleException.class, graph::topologicalOrder);
+        }
+    }
+
+    /**
+     * Relaxes the nodes in id order, which is topological for {@link TestGraphs#fillAcyclic}.
+     *
+     * @return the shortest or longest distances from the start, {@link Long#MAX_VALUE} for unreachable nodes
+     */
+    private static long[] dynamicProgramming(Graph<Integer, Long> graph, int start, boolean longest) {
+        long[] distances = new long[graph.nodeIdBound()];
+        boolean[] reached = new boolean[distances.length];
+        reached[start] = true;
+        for (int id = start; id < distances.length; id++) {
+            if (!reached[id]) continue;
+            for (Graph.Node.Connection<Integer, Long> connection : graph.node(id).connections()) {
+                int to = connection.to().id();
+                long distance = distances[id] + connection.way();
+                if (!reached[to] || (longest ? distance > distances[to] : distance < distances[to])) distances[to] = distance;
+                reached[to] = true;
+            }
+        }
+        for (int id = 0; id < distances.length; id++) {
+            if (!reached[id]) distances[id] = Long.MAX_VALUE;
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,87 @@
+package de.dasbabypixel.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares {@link Graph.Algorithm#deltaStepping(long, ForkJoinPool)} with pools of parallelism {@code 1} to {@code N}
+ * against {@link Graph.Algorithm#dijkstra()} on a random graph, and checks that all of them find the same distances.
+ * <p>
+ * Arguments: {@code [nodes] [connections] [max weight] [max parallelism] [rounds]}, defaults are
+ * {@code 200000 1000000 1000 <available processors> 5}.
+ */
+public final class DeltaSteppingBenchmark {
+
+    private DeltaSteppingBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        long maxWeight = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        int maxParallelism = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(42), nodes, connections, maxWeight);
+        Graph.Node<Integer, Long> source = graph.node(0);
+        Graph.Algorithm.SingleSourceData<Integer, Long> data = new Graph.Algorithm.SingleSourceData<>(source, Graph.Node.Connection::way);
+        System.out.printf("%d nodes, %d connections, weights 0..%d%n", nodes, connections, maxWeight);
+
+        long[] expected = expected(graph, source);
+        // Dijkstra to the farthest reachable node settles every node first, which is the same work as a full search
+        Graph.Node<Integer, Long> farthest = source;
+        for (int id = 0; id < expected.length; id++) {
+            if (expected[id] != Long.MAX_VALUE && expected[id] > expected[farthest.id()]) farthest = graph.node(id);
+        }
+        Graph.Algorithm.AlgorithmWithData<Graph.Algorithm.DijkstraData<Integer, Long>, Integer, Long, Graph.Path<Integer, Long>> dijkstra = Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(source, farthest));
+        long dijkstraNanos = time(rounds, () -> graph.search(dijkstra));
+        System.out.printf("dijkstra          %8.2f ms%n", dijkstraNanos / 1e6);
+
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism++) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                Graph.Algorithm.AlgorithmWithData<Graph.Algorithm.SingleSourceData<Integer, Long>, Integer, Long, long[]> deltaStepping = Graph.Algorithm.<Integer, Long>deltaStepping(0, pool).withData(data);
+                long[] distances = graph.search(deltaStepping);
+                if (!Arrays.equals(expected, distances)) {
+                    throw new AssertionError("Delta-stepping with parallelism " + parallelism + " found other distances than dijkstra");
+                }
+                long nanos = time(rounds, () -> graph.search(deltaStepping));
+                System.out.printf("delta-stepping %2d %8.2f ms  %5.2fx%n", parallelism, nanos / 1e6, (double) dijkstraNanos / nanos);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * The distances of {@link TestGraphs#distances(Graph, Graph.Node)}. A sample of them is checked with
+     * {@link Graph.Algorithm#dijkstra()} searches, a search for every node would take too long on large graphs.
+     */
+    private static long[] expected(Graph<Integer, Long> graph, Graph.Node<Integer, Long> source) {
+        long[] expected = TestGraphs.distances(graph, source);
+        Random random = new Random(7);
+        for (int i = 0; i < 20; i++) {
+            Graph.Node<Integer, Long> target = graph.node(random.nextInt(expected.length));
+            long cost = TestGraphs.cost(graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(source, target))));
+            if (cost != (expected[target.id()] == Long.MAX_VALUE ? -1 : expected[target.id()])) {
+                throw new AssertionError("Dijkstra found " + cost + " to " + target + ", expected " + expected[target.id()]);
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * @return the fastest of {@code rounds} runs after one warmup run
+     */
+    private static long time(int rounds, Runnable run) {
+        run.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,62 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeltaSteppingTest {
+
+    @Test
+    void distancesMatchDijkstra() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            for (int seed = 0; seed < 5; seed++) {
+                Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(seed), 2000, 10000, 1000);
+                Graph.Node<Integer, Long> source = graph.node(seed);
+                long[] distances = graph.search(Graph.Algorithm.<Integer, Long>deltaStepping().withData(new Graph.Algorithm.SingleSourceData<>(source, Graph.Node.Connection::way)));
+                assertArrayEquals(TestGraphs.distances(graph, source), distances);
+            }
+        }
+    }
+
+    @Test
+    void distancesDoNotDependOnDeltaOrParallelism() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.arrayGraph(), new Random(12), 3000, 15000, 100);
+        Graph.Node<Integer, Long> source = graph.node(0);
+        long[] expected = TestGraphs.distances(graph, source);
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (long delta : new long[]{0, 1, 7, 100, 10000}) {
+                    long[] distances = graph.search(Graph.Algorithm.<Integer, Long>deltaStepping(delta, pool).withData(new Graph.Algorithm.SingleSourceData<>(source, Graph.Node.Connection::way)));
+                    assertArrayEquals(expected, distances, "delta " + delta + ", parallelism " + parallelism);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void distancesOnAViewOnlyUseVisibleNodes() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(13), 500, 2500, 50);
+        BitSet visible = new BitSet();
+        visible.set(0, 500);
+        for (int id = 1; id < 500; id += 3) {
+            visible.clear(id);
+        }
+        Graph<Integer, Long> view = graph.view(visible, (from, to, way) -> true);
+        Graph.Node<Integer, Long> source = view.node(0);
+        long[] distances = view.search(Graph.Algorithm.<Integer, Long>deltaStepping().withData(new Graph.Algorithm.SingleSourceData<>(source, Graph.Node.Connection::way)));
+        long[] expected = TestGraphs.distances(view, source);
+        assertEquals(expected.length, distances.length);
+        for (int id = 0; id < expected.length; id++) {
+            assertEquals(visible.get(id) ? expected[id] : Long.MAX_VALUE, distances[id], "node " + id);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FilteredGraphTest {
+
+    private static final int NODES = 400;
+
+    @Test
+    void searchesMatchACopiedSubgraph() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Random random = new Random(33);
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), random, NODES, 2400, 60);
+            BitSet visible = new BitSet(NODES);
+            for (int id = 0; id < NODES; id++) {
+                if (random.nextInt(4) != 0) visible.set(id);
+            }
+            Graph.FilteredGraph<Integer, Long> view = graph.view(visible, (from, to, way) -> way % 3 != 0);
+            // The copy gets dense ids, copyIds maps the ids of the graph to them
+            int[] copyIds = new int[NODES];
+            Arrays.fill(copyIds, -1);
+            Graph<Integer, Long> copy = Graph.linkedGraph();
+            for (int id = visible.nextSetBit(0); id >= 0; id = visible.nextSetBit(id + 1)) {
+                copyIds[id] = copy.newNode(id).id();
+            }
+            int[] connections = new int[1];
+            graph.forEachEdge((from, to, way) -> {
+                if (visible.get(from) && visible.get(to) && way % 3 != 0) {
+                    copy.node(copyIds[from]).newConnection(copy.node(copyIds[to]), way);
+                    connections[0]++;
+                }
+            });
+            assertEquals(visible.cardinality(), view.nodes().size());
+            assertEquals(NODES, view.nodeIdBound());
+            assertEquals(connections[0], view.connections().size());
+
+            Graph.Algorithm.Landmarks<Integer, Long> landmarks = Graph.Algorithm.Landmarks.select(view, Graph.Node.Connection::way, 4);
+            for (int i = 0; i < 100; i++) {
+                int start = visible.nextSetBit(random.nextInt(NODES - 10));
+                int target = visible.nextSetBit(random.nextInt(NODES - 10));
+                long expected = TestGraphs.cost(copy.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(copy.node(copyIds[start]), copy.node(copyIds[target])))));
+                Graph.Algorithm.DijkstraData<Integer, Long> data = TestGraphs.data(view.node(start), view.node(target));
+                Graph.Path<Integer, Long> path = view.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(data));
+                assertEquals(expected, TestGraphs.cost(path), start + " -> " + target);
+                if (path != null) TestGraphs.assertPath(path, view.node(start), view.node(target));
+                assertEquals(expected, TestGraphs.cost(view.search(Graph.Algorithm.alt(landmarks).withData(data))));
+                assertEquals(expected, TestGraphs.cost(view.search(Graph.Algorithm.<Integer, Long>dijkstra(Graph.Algorithm.QueueType.RADIX_HEAP).withData(data.withMaxWeight(60)))));
+            }
+            int source = visible.nextSetBit(0);
+            long[] distances = view.search(Graph.Algorithm.<Integer, Long>deltaStepping().withData(new Graph.Algorithm.SingleSourceData<>(view.node(source), Graph.Node.Connection::way)));
+            long[] expected = TestGraphs.distances(copy, copy.node(copyIds[source]));
+            for (int id = 0; id < NODES; id++) {
+                assertEquals(visible.get(id) ? expected[copyIds[id]] : Long.MAX_VALUE, distances[id], "node " + id);
+            }
+            assertEquals(copy.search(Graph.Algorithm.<Integer, Long>minimumSpanningForest().withData(Graph.Node.Connection::way)).totalWeight(),
+                    view.search(Graph.Algorithm.<Integer, Long>minimumSpanningForest().withData(Graph.Node.Connection::way)).totalWeight());
+        }
+    }
+
+    @Test
+    void viewsAreReadOnly() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(34), 20, 60, 10);
+        Graph.FilteredGraph<Integer, Long> view = graph.view(null, null);
+        assertEquals(graph.nodes().size(), view.nodes().size());
+        assertEquals(graph.connections().size(), view.connections().size());
+        assertThrows(UnsupportedOperationException.class, () -> view.newNode(20));
+        assertThrows(UnsupportedOperationException.class, () -> view.removeNode(view.node(0)));
+        assertThrows(UnsupportedOperationException.class, () -> view.newConnection(view.node(0), view.node(1), 1L));
+    }
+}
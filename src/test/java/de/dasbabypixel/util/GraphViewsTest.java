@@ -0,0 +1,76 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphViewsTest {
+
+    @Test
+    void connectionsViewMatchesTheConnectionsOfAllNodes() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(2), 300, 1500, 100);
+            List<String> expected = new ArrayList<>();
+            for (Graph.Node<Integer, Long> node : graph.nodes()) {
+                for (Graph.Node.Connection<Integer, Long> connection : node.connections()) {
+                    expected.add(describe(connection));
+                }
+            }
+            assertEquals(expected.size(), graph.connections().size());
+            assertEquals(expected, graph.connections().stream().map(GraphViewsTest::describe).collect(Collectors.toList()));
+            assertEquals(expected, graph.connections().parallelStream().map(GraphViewsTest::describe).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void spliteratorsSplitIntoSizedHalves() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(3), 1000, 5000, 100);
+            assertSplits(graph.nodes());
+            assertSplits(graph.connections());
+        }
+    }
+
+    @Test
+    void nodesViewContainsOnlyLiveNodes() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(4), 20, 40, 10);
+            Graph.Node<Integer, Long> removed = graph.node(5);
+            graph.removeNode(removed);
+            assertEquals(19, graph.nodes().size());
+            assertFalse(graph.nodes().contains(removed));
+            assertTrue(graph.nodes().contains(graph.node(5)));
+            assertEquals(graph.nodes().size(), graph.nodes().stream().count());
+        }
+    }
+
+    private static <T> void assertSplits(Collection<T> collection) {
+        Spliterator<T> second = collection.spliterator();
+        assertTrue(second.hasCharacteristics(Spliterator.SIZED));
+        Spliterator<T> first = second.trySplit();
+        assertNotNull(first);
+        long total = first.estimateSize() + second.estimateSize();
+        assertEquals(collection.size(), total);
+        // Halves differ by at most one element
+        assertTrue(Math.abs(first.estimateSize() - second.estimateSize()) <= 1);
+        long[] counted = new long[1];
+        first.forEachRemaining(element -> counted[0]++);
+        second.forEachRemaining(element -> counted[0]++);
+        assertEquals(total, counted[0]);
+    }
+
+    private static String describe(Graph.Node.Connection<Integer, Long> connection) {
+        return connection.from().data() + ">" + connection.to().data() + ":" + connection.way();
+    }
+}
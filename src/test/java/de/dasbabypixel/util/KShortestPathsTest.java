@@ -0,0 +1,97 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KShortestPathsTest {
+
+    @Test
+    void pathsMatchAllSimplePathsInOrder() {
+        Random random = new Random(11);
+        for (int round = 0; round < 30; round++) {
+            Graph<Integer, Long> graph = round % 2 == 0 ? Graph.linkedGraph() : Graph.arrayGraph();
+            int nodes = 5 + random.nextInt(5);
+            fillSimple(graph, random, nodes, nodes * 2 + random.nextInt(nodes * 2));
+            Graph.Node<Integer, Long> start = graph.node(0);
+            Graph.Node<Integer, Long> target = graph.node(nodes - 1);
+            List<Long> expected = new ArrayList<>();
+            enumerate(start, target, new BitSet(), 0, expected);
+            Collections.sort(expected);
+            int k = 1 + random.nextInt(12);
+            List<Graph.Path<Integer, Long>> paths = graph.search(Graph.Algorithm.<Integer, Long>kShortestPaths(k).withData(TestGraphs.data(start, target)));
+            assertEquals(Math.min(k, expected.size()), paths.size(), "round " + round);
+            Set<List<Integer>> distinct = new HashSet<>();
+            for (int i = 0; i < paths.size(); i++) {
+                Graph.Path<Integer, Long> path = paths.get(i);
+                TestGraphs.assertPath(path, start, target);
+                assertEquals(expected.get(i).longValue(), TestGraphs.cost(path), "round " + round + ", path " + i);
+                List<Integer> visited = new ArrayList<>();
+                visited.add(start.id());
+                for (Graph.Node.Connection<Integer, Long> connection : path) {
+                    visited.add(connection.to().id());
+                }
+                assertEquals(visited.size(), new HashSet<>(visited).size(), "path " + i + " has a loop");
+                assertTrue(distinct.add(visited), "path " + i + " was found twice");
+            }
+        }
+    }
+
+    @Test
+    void firstPathIsTheShortestPath() {
+        for (int seed = 0; seed < 10; seed++) {
+            Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(seed), 300, 1500, 50);
+            Graph.Node<Integer, Long> start = graph.node(0);
+            Graph.Node<Integer, Long> target = graph.node(299);
+            List<Graph.Path<Integer, Long>> paths = graph.search(Graph.Algorithm.<Integer, Long>kShortestPaths(4).withData(TestGraphs.data(start, target)));
+            long expected = TestGraphs.distances(graph, start)[target.id()];
+            if (expected == Long.MAX_VALUE) {
+                assertTrue(paths.isEmpty());
+                continue;
+            }
+            assertEquals(expected, TestGraphs.cost(paths.get(0)));
+            for (int i = 1; i < paths.size(); i++) {
+                assertTrue(TestGraphs.cost(paths.get(i - 1)) <= TestGraphs.cost(paths.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Random connections without self loops and without parallel connections, so every simple path is one node sequence.
+     */
+    private static void fillSimple(Graph<Integer, Long> graph, Random random, int nodes, int connections) {
+        for (int i = 0; i < nodes; i++) {
+            graph.newNode(i);
+        }
+        Set<Long> used = new HashSet<>();
+        for (int i = 0; i < connections; i++) {
+            int from = random.nextInt(nodes);
+            int to = random.nextInt(nodes);
+            if (from == to || !used.add((long) from * nodes + to)) continue;
+            graph.node(from).newConnection(graph.node(to), (long) random.nextInt(10));
+        }
+    }
+
+    private static void enumerate(Graph.Node<Integer, Long> node, Graph.Node<Integer, Long> target, BitSet visited, long cost, List<Long> costs) {
+        if (node.equals(target)) {
+            costs.add(cost);
+            return;
+        }
+        visited.set(node.id());
+        for (Graph.Node.Connection<Integer, Long> connection : node.connections()) {
+            if (!visited.get(connection.to().id())) {
+                enumerate(connection.to(), target, visited, cost + connection.way(), costs);
+            }
+        }
+        visited.clear(node.id());
+    }
+}
@@ -0,0 +1,130 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MinimumSpanningForestTest {
+
+    @Test
+    void weightMatchesAllSpanningForestsOfSmallGraphs() {
+        Random random = new Random(20);
+        for (int round = 0; round < 200; round++) {
+            Graph<Integer, Long> graph = round % 2 == 0 ? Graph.linkedGraph() : Graph.arrayGraph();
+            TestGraphs.fill(graph, random, 2 + random.nextInt(6), random.nextInt(13), 9);
+            long[][] edges = edges(graph);
+            int nodes = graph.nodeIdBound();
+            int trees = nodes - forestSize(nodes, edges, (1 << edges.length) - 1);
+            long expected = Long.MAX_VALUE;
+            for (int subset = 0; subset < 1 << edges.length; subset++) {
+                if (Integer.bitCount(subset) != nodes - trees || forestSize(nodes, edges, subset) != nodes - trees) continue;
+                long weight = 0;
+                for (int edge = 0; edge < edges.length; edge++) {
+                    if ((subset >>> edge & 1) != 0) weight += edges[edge][2];
+                }
+                expected = Math.min(expected, weight);
+            }
+            Graph.Algorithm.SpanningForest<Integer, Long> forest = graph.search(Graph.Algorithm.<Integer, Long>minimumSpanningForest().withData(Graph.Node.Connection::way));
+            assertEquals(expected, forest.totalWeight(), "round " + round);
+            assertEquals(trees, forest.trees());
+            assertForest(graph, forest);
+        }
+    }
+
+    @Test
+    void weightMatchesKruskalOnLargeGraphs() {
+        Random random = new Random(21);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            // Below and above the number of edges at which Boruvka replaces Kruskal
+            for (int connections : new int[]{5000, 60000, 70000, 150000}) {
+                Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), random, connections / 4, connections, 30);
+                Graph.Algorithm.SpanningForest<Integer, Long> forest = graph.search(Graph.Algorithm.<Integer, Long>minimumSpanningForest(pool).withData(Graph.Node.Connection::way));
+                long[][] edges = edges(graph);
+                Arrays.sort(edges, Comparator.comparingLong(edge -> edge[2]));
+                int[] parents = parents(graph.nodeIdBound());
+                long weight = 0;
+                int trees = graph.nodeIdBound();
+                for (long[] edge : edges) {
+                    if (union(parents, (int) edge[0], (int) edge[1])) {
+                        weight += edge[2];
+                        trees--;
+                    }
+                }
+                assertEquals(weight, forest.totalWeight(), connections + " connections");
+                assertEquals(trees, forest.trees());
+                assertForest(graph, forest);
+                Graph.Algorithm.SpanningForest<Integer, Long> sequential = graph.search(Graph.Algorithm.<Integer, Long>minimumSpanningForest(single).withData(Graph.Node.Connection::way));
+                assertArrayEquals(forest.edgeIds(), sequential.edgeIds());
+            }
+        } finally {
+            pool.shutdown();
+            single.shutdown();
+        }
+    }
+
+    /**
+     * Checks that the chosen connections are acyclic, their number fits the trees and their weight is the total weight.
+     */
+    private static void assertForest(Graph<Integer, Long> graph, Graph.Algorithm.SpanningForest<Integer, Long> forest) {
+        int[] parents = parents(graph.nodeIdBound());
+        long weight = 0;
+        for (Graph.Node.Connection<Integer, Long> connection : forest.connections()) {
+            assertTrue(union(parents, connection.from().id(), connection.to().id()), "cycle at " + connection);
+            weight += connection.way();
+        }
+        assertEquals(graph.nodeIdBound() - forest.trees(), forest.connections().size());
+        assertEquals(forest.totalWeight(), weight);
+    }
+
+    private static long[][] edges(Graph<Integer, Long> graph) {
+        List<long[]> edges = new ArrayList<>();
+        graph.forEachEdge((from, to, way) -> edges.add(new long[]{from, to, way}));
+        return edges.toArray(new long[0][]);
+    }
+
+    /**
+     * @return the number of edges of the subset that join two trees
+     */
+    private static int forestSize(int nodes, long[][] edges, int subset) {
+        int[] parents = parents(nodes);
+        int joined = 0;
+        for (int edge = 0; edge < edges.length; edge++) {
+            if ((subset >>> edge & 1) != 0 && union(parents, (int) edges[edge][0], (int) edges[edge][1])) joined++;
+        }
+        return joined;
+    }
+
+    private static int[] parents(int nodes) {
+        int[] parents = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            parents[i] = i;
+        }
+        return parents;
+    }
+
+    private static boolean union(int[] parents, int a, int b) {
+        a = find(parents, a);
+        b = find(parents, b);
+        if (a == b) return false;
+        parents[a] = b;
+        return true;
+    }
+
+    private static int find(int[] parents, int node) {
+        while (parents[node] != node) {
+            node = parents[node] = parents[parents[node]];
+        }
+        return node;
+    }
+}
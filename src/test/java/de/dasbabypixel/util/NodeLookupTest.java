@@ -0,0 +1,92 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NodeLookupTest {
+
+    @Test
+    void findNodeMatchesAScan() {
+        for (boolean indexed : new boolean[]{false, true}) {
+            // Few distinct values, so there is duplicate data
+            assertLookups(Graph.linkedGraph(), indexed, false);
+            // Array graphs identify nodes by their data, it has to be unique
+            assertLookups(Graph.arrayGraph(), indexed, true);
+        }
+    }
+
+    @Test
+    void missingDataIsNotFound() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(28), 20, 40, 5);
+            graph.indexData();
+            assertNull(graph.findNode(20));
+            assertNull(graph.findNode(null));
+            try (Graph.NodeIndex<Integer, Long, Integer> index = graph.index(data -> data / 10)) {
+                assertEquals(10, index.find(1).size());
+                assertNull(index.findFirst(2));
+            }
+        }
+    }
+
+    private static void assertLookups(Graph<Integer, Long> graph, boolean indexed, boolean uniqueData) {
+        if (indexed) graph.indexData();
+        Graph.NodeIndex<Integer, Long, Integer> index = graph.index(data -> data % 5);
+        Random random = new Random(27);
+        int created = 0;
+        for (int step = 0; step < 2000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 5 || graph.nodes().isEmpty()) {
+                graph.newNode(uniqueData ? created : random.nextInt(60));
+                created++;
+            } else if (operation < 8) {
+                graph.removeNode(graph.node(random.nextInt(graph.nodes().size())));
+            } else if (operation < 9) {
+                Graph.Node<Integer, Long> from = graph.node(random.nextInt(graph.nodes().size()));
+                from.newConnection(graph.node(random.nextInt(graph.nodes().size())), 1L);
+            } else {
+                graph.reorder(Graph.NodeOrder.degreeSorted(graph));
+            }
+            int data = random.nextInt(uniqueData ? created + 1 : 60);
+            assertEquals(scan(graph, data), graph.findNode(data), "step " + step);
+            int key = random.nextInt(5);
+            assertEquals(scanKey(graph, key), ids(index.find(key)), "step " + step);
+        }
+        index.close();
+    }
+
+    /**
+     * @return the node with the lowest id that has the data
+     */
+    private static Graph.Node<Integer, Long> scan(Graph<Integer, Long> graph, int data) {
+        for (int id = 0; id < graph.nodes().size(); id++) {
+            if (graph.node(id).data() == data) return graph.node(id);
+        }
+        return null;
+    }
+
+    private static List<Integer> scanKey(Graph<Integer, Long> graph, int key) {
+        List<Graph.Node<Integer, Long>> nodes = new ArrayList<>();
+        for (Graph.Node<Integer, Long> node : graph.nodes()) {
+            if (node.data() % 5 == key) nodes.add(node);
+        }
+        return ids(nodes);
+    }
+
+    private static List<Integer> ids(List<Graph.Node<Integer, Long>> nodes) {
+        List<Integer> ids = new ArrayList<>();
+        for (Graph.Node<Integer, Long> node : nodes) {
+            ids.add(node.id());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,101 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NodeOrderTest {
+
+    @Test
+    void ordersArePermutations() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(17), 300, 900, 10);
+        for (Graph.NodeOrder order : orders(graph)) {
+            assertEquals(graph.nodeIdBound(), order.size());
+            for (int id = 0; id < order.size(); id++) {
+                assertEquals(id, order.newId(order.oldId(id)));
+                assertEquals(id, order.oldId(order.newId(id)));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Graph.NodeOrder(new int[]{0, 2, 2}));
+        assertThrows(IllegalArgumentException.class, () -> new Graph.NodeOrder(new int[]{0, 3, 1}));
+    }
+
+    @Test
+    void reorderKeepsNodesAndConnections() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> reference = TestGraphs.fill(factory.get(), new Random(18), 200, 800, 50);
+            for (Graph.NodeOrder order : orders(reference)) {
+                Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(18), 200, 800, 50);
+                List<Graph.Node<Integer, Long>> nodes = new ArrayList<>(graph.nodes());
+                List<String> connections = describe(graph);
+                graph.reorder(order);
+                assertEquals(connections, describe(graph));
+                for (Graph.Node<Integer, Long> node : nodes) {
+                    assertEquals(order.newId(node.data()), node.id());
+                    assertEquals(node, graph.node(node.id()));
+                }
+                long[] expected = TestGraphs.distances(reference, reference.node(0));
+                long[] distances = TestGraphs.distances(graph, graph.node(order.newId(0)));
+                for (int id = 0; id < expected.length; id++) {
+                    assertEquals(expected[id], distances[order.newId(id)]);
+                }
+                Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(graph.node(order.newId(0)), graph.node(order.newId(199)))));
+                assertEquals(expected[199] == Long.MAX_VALUE ? -1 : expected[199], TestGraphs.cost(path));
+            }
+        }
+    }
+
+    @Test
+    void ordersFollowTheirCriterion() {
+        Graph<Integer, Long> graph = TestGraphs.fillAcyclic(Graph.linkedGraph(), new Random(19), 200, 600, 1, 10);
+        Graph.NodeOrder byKey = Graph.NodeOrder.byKey(graph, data -> data % 7);
+        for (int id = 1; id < byKey.size(); id++) {
+            int previous = graph.node(byKey.oldId(id - 1)).data();
+            int current = graph.node(byKey.oldId(id)).data();
+            assertTrue(previous % 7 < current % 7 || previous % 7 == current % 7 && previous < current);
+        }
+
+        int[] degrees = new int[graph.nodeIdBound()];
+        graph.forEachEdge((from, to, way) -> {
+            degrees[from]++;
+            degrees[to]++;
+        });
+        Graph.NodeOrder degreeSorted = Graph.NodeOrder.degreeSorted(graph);
+        for (int id = 1; id < degreeSorted.size(); id++) {
+            assertTrue(degrees[degreeSorted.oldId(id - 1)] >= degrees[degreeSorted.oldId(id)]);
+        }
+
+        Graph.NodeOrder topological = Graph.NodeOrder.topological(graph);
+        graph.forEachEdge((from, to, way) -> assertTrue(topological.newId(from) < topological.newId(to)));
+    }
+
+    private static List<Graph.NodeOrder> orders(Graph<Integer, Long> graph) {
+        List<Graph.NodeOrder> orders = new ArrayList<>();
+        orders.add(Graph.NodeOrder.cuthillMcKee(graph));
+        orders.add(Graph.NodeOrder.reverseCuthillMcKee(graph));
+        orders.add(Graph.NodeOrder.degreeSorted(graph));
+        orders.add(Graph.NodeOrder.byKey(graph, data -> -data));
+        orders.add(Graph.NodeOrder.zOrder(graph, data -> data % 20 - 10, data -> data / 20));
+        return orders;
+    }
+
+    /**
+     * @return the connections by the data of their nodes, sorted
+     */
+    private static List<String> describe(Graph<Integer, Long> graph) {
+        List<String> connections = new ArrayList<>();
+        for (Graph.Node.Connection<Integer, Long> connection : graph.connections()) {
+            connections.add(connection.from().data() + ">" + connection.to().data() + ":" + connection.way());
+        }
+        Collections.sort(connections);
+        return connections;
+    }
+}
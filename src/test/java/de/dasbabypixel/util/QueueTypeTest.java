@@ -0,0 +1,50 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueueTypeTest {
+
+    @Test
+    void everyQueueFindsTheShortestPath() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            for (long maxWeight : new long[]{0, 1, 10, 1000}) {
+                Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(maxWeight), 400, 2000, maxWeight);
+                Random random = new Random(25);
+                for (int i = 0; i < 50; i++) {
+                    Graph.Node<Integer, Long> start = graph.node(random.nextInt(400));
+                    Graph.Node<Integer, Long> target = graph.node(random.nextInt(400));
+                    long expected = TestGraphs.distances(graph, start)[target.id()];
+                    expected = expected == Long.MAX_VALUE ? -1 : expected;
+                    Graph.Algorithm.DijkstraData<Integer, Long> data = TestGraphs.data(start, target);
+                    assertEquals(expected, TestGraphs.cost(graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(data))));
+                    for (Graph.Algorithm.QueueType queue : Graph.Algorithm.QueueType.values()) {
+                        Graph.Algorithm.DijkstraData<Integer, Long> declared = data.withMaxWeight(maxWeight);
+                        Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.<Integer, Long>dijkstra(queue).withData(declared));
+                        assertEquals(expected, TestGraphs.cost(path), queue + ", max weight " + maxWeight);
+                        if (path != null) TestGraphs.assertPath(path, start, target);
+                        if (queue != Graph.Algorithm.QueueType.DIAL) {
+                            assertEquals(expected, TestGraphs.cost(graph.search(Graph.Algorithm.<Integer, Long>dijkstra(queue).withData(data))), queue.name());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void unfittingWeightsAreRejected() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(26), 100, 1000, 50);
+        Graph.Algorithm.DijkstraData<Integer, Long> data = TestGraphs.data(graph.node(0), graph.node(99));
+        assertThrows(IllegalArgumentException.class, () -> graph.search(Graph.Algorithm.<Integer, Long>dijkstra(Graph.Algorithm.QueueType.DIAL).withData(data)));
+        assertThrows(IllegalArgumentException.class, () -> data.withMaxWeight(-1));
+        for (Graph.Algorithm.QueueType queue : Graph.Algorithm.QueueType.values()) {
+            assertThrows(IllegalArgumentException.class, () -> graph.search(Graph.Algorithm.<Integer, Long>dijkstra(queue).withData(data.withMaxWeight(10))), queue.name());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchAsyncTest {
+
+    @Test
+    void asyncSearchFindsTheSamePath() throws Exception {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(8), 500, 2500, 100);
+        Graph.Algorithm.AlgorithmWithData<Graph.Algorithm.DijkstraData<Integer, Long>, Integer, Long, Graph.Path<Integer, Long>> search = Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(graph.node(0), graph.node(499)));
+        long expected = TestGraphs.cost(graph.search(search));
+        assertEquals(expected, TestGraphs.cost(graph.searchAsync(search, Runnable::run).get()));
+        assertEquals(expected, TestGraphs.cost(graph.searchAsync(search, ForkJoinPool.commonPool()).get(10, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void cancelledSearchNeverRuns() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(9), 50, 200, 10);
+        AtomicInteger weights = new AtomicInteger();
+        Graph.Algorithm.DijkstraData<Integer, Long> data = new Graph.Algorithm.DijkstraData<>(graph.node(0), graph.node(49), connection -> {
+            weights.incrementAndGet();
+            return connection.way();
+        });
+        List<Runnable> queued = new ArrayList<>();
+        CompletableFuture<Graph.Path<Integer, Long>> future = graph.searchAsync(Graph.Algorithm.<Integer, Long>dijkstra().withData(data), queued::add);
+        assertTrue(future.cancel(true));
+        queued.forEach(Runnable::run);
+        assertTrue(future.isCancelled());
+        assertEquals(0, weights.get());
+    }
+
+    @Test
+    void expiredDeadlineCompletesWithTimeout() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(10), 50, 200, 10);
+        CompletableFuture<Graph.Path<Integer, Long>> future = graph.searchAsync(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(graph.node(0), graph.node(49))), Runnable::run, 0, TimeUnit.NANOSECONDS);
+        ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+        assertTrue(exception.getCause() instanceof TimeoutException);
+    }
+}
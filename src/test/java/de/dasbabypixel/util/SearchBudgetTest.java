@@ -0,0 +1,72 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchBudgetTest {
+
+    private static final Graph.Algorithm.QueueType[] QUEUES = {Graph.Algorithm.QueueType.AUTO, Graph.Algorithm.QueueType.BINARY_HEAP, Graph.Algorithm.QueueType.RADIX_HEAP};
+
+    @Test
+    void settledNodeLimitReturnsPartialPath() {
+        Graph<Integer, Long> graph = chain(100);
+        for (Graph.Algorithm.QueueType queue : QUEUES) {
+            Graph.Algorithm.SearchBudget budget = Graph.Algorithm.SearchBudget.unlimited().withMaxSettledNodes(10);
+            Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.<Integer, Long>dijkstra(queue).withData(TestGraphs.data(graph.node(0), graph.node(99)).withBudget(budget)));
+            assertTrue(path instanceof Graph.PartialPath, queue.name());
+            Graph.PartialPath<Integer, Long> partial = (Graph.PartialPath<Integer, Long>) path;
+            assertEquals(Graph.Algorithm.SearchBudget.Reason.SETTLED_NODES, partial.reason());
+            assertEquals(10, partial.frontier().id());
+            assertPartial(graph, partial);
+        }
+    }
+
+    @Test
+    void distanceLimitReturnsPartialPath() {
+        Graph<Integer, Long> graph = chain(100);
+        for (Graph.Algorithm.QueueType queue : QUEUES) {
+            Graph.Algorithm.SearchBudget budget = Graph.Algorithm.SearchBudget.unlimited().withMaxDistance(15);
+            Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.<Integer, Long>dijkstra(queue).withData(TestGraphs.data(graph.node(0), graph.node(99)).withBudget(budget)));
+            assertTrue(path instanceof Graph.PartialPath, queue.name());
+            Graph.PartialPath<Integer, Long> partial = (Graph.PartialPath<Integer, Long>) path;
+            assertEquals(Graph.Algorithm.SearchBudget.Reason.DISTANCE, partial.reason());
+            assertTrue(partial.frontierDistance() > 15);
+            assertPartial(graph, partial);
+        }
+    }
+
+    @Test
+    void sufficientBudgetFindsTheWholePath() {
+        Graph<Integer, Long> graph = chain(100);
+        Graph.Algorithm.SearchBudget budget = Graph.Algorithm.SearchBudget.unlimited().withMaxSettledNodes(100).withMaxDistance(1000);
+        Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(graph.node(0), graph.node(99)).withBudget(budget)));
+        assertFalse(path instanceof Graph.PartialPath);
+        assertEquals(TestGraphs.distances(graph, graph.node(0))[99], TestGraphs.cost(path));
+    }
+
+    private static void assertPartial(Graph<Integer, Long> graph, Graph.PartialPath<Integer, Long> partial) {
+        TestGraphs.assertPath(partial, graph.node(0), partial.frontier());
+        assertEquals(partial.frontierDistance(), TestGraphs.cost(partial));
+        assertEquals(TestGraphs.distances(graph, graph.node(0))[partial.frontier().id()], partial.frontierDistance());
+    }
+
+    /**
+     * Nodes in a line, every connection has the weight 2, with shortcuts of weight 5 over two nodes.
+     */
+    private static Graph<Integer, Long> chain(int length) {
+        Graph<Integer, Long> graph = Graph.linkedGraph();
+        List<Graph.Node<Integer, Long>> nodes = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            nodes.add(graph.newNode(i));
+            if (i > 0) nodes.get(i - 1).newConnection(nodes.get(i), 2L);
+            if (i > 1) nodes.get(i - 2).newConnection(nodes.get(i), 5L);
+        }
+        return graph;
+    }
+}
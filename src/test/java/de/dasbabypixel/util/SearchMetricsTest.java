@@ -0,0 +1,92 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchMetricsTest {
+
+    @Test
+    void statsCountTheWorkOfASearch() {
+        Graph<Integer, Long> graph = TestGraphs.fill(Graph.linkedGraph(), new Random(1), 200, 800, 50);
+        Graph.Algorithm.SearchStats stats = new Graph.Algorithm.SearchStats();
+        Graph.Algorithm.DijkstraData<Integer, Long> data = TestGraphs.data(graph.node(0), graph.node(199)).withStats(stats);
+        graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(data));
+        assertTrue(stats.nodesSettled() > 0);
+        assertTrue(stats.edgesRelaxed() >= stats.nodesSettled() - 1);
+        assertTrue(stats.queuePushes() >= stats.nodesSettled());
+        assertTrue(stats.wallTimeNanos() > 0);
+    }
+
+    @Test
+    void searchesThatThrowAreRecordedAsCancelled() {
+        Graph.Algorithm.SearchMetrics metrics = Graph.Algorithm.SearchMetrics.global();
+        boolean enabled = metrics.enabled();
+        metrics.enabled(true);
+        metrics.reset();
+        try {
+            Graph<Integer, Long> graph = Graph.linkedGraph();
+            Graph.Node<Integer, Long> a = graph.newNode(0);
+            Graph.Node<Integer, Long> b = graph.newNode(1);
+            a.newConnection(b, 1L);
+            graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(a, b)));
+            Graph.Algorithm.DijkstraData<Integer, Long> failing = new Graph.Algorithm.DijkstraData<>(a, b, connection -> {
+                throw new IllegalStateException("No weight");
+            });
+            assertThrows(IllegalStateException.class, () -> graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(failing)));
+            assertEquals(2, metrics.searches());
+            assertEquals(1, metrics.found());
+            assertEquals(1, metrics.cancelled());
+        } finally {
+            metrics.reset();
+            metrics.enabled(enabled);
+        }
+    }
+
+    @Test
+    void searchesPastTheirDeadlineAreRecordedAsCancelled() throws InterruptedException {
+        Graph.Algorithm.SearchMetrics metrics = Graph.Algorithm.SearchMetrics.global();
+        boolean enabled = metrics.enabled();
+        metrics.enabled(true);
+        metrics.reset();
+        try {
+            // A long chain, the first weight takes longer than the deadline so a later checkpoint cancels the search
+            Graph<Integer, Long> graph = Graph.linkedGraph();
+            List<Graph.Node<Integer, Long>> nodes = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                nodes.add(graph.newNode(i));
+                if (i > 0) nodes.get(i - 1).newConnection(nodes.get(i), 1L);
+            }
+            boolean[] slept = new boolean[1];
+            Graph.Algorithm.DijkstraData<Integer, Long> data = new Graph.Algorithm.DijkstraData<>(nodes.get(0), nodes.get(1999), connection -> {
+                if (!slept[0]) {
+                    slept[0] = true;
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return connection.way();
+            });
+            CompletableFuture<Graph.Path<Integer, Long>> future = graph.searchAsync(Graph.Algorithm.<Integer, Long>dijkstra().withData(data), Runnable::run, 20, TimeUnit.MILLISECONDS);
+            ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+            assertTrue(exception.getCause() instanceof TimeoutException);
+            assertEquals(1, metrics.searches());
+            assertEquals(1, metrics.cancelled());
+        } finally {
+            metrics.reset();
+            metrics.enabled(enabled);
+        }
+    }
+}
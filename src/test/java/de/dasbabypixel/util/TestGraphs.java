@@ -0,0 +1,117 @@
+package de.dasbabypixel.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Random graphs and straightforward reference implementations the optimized algorithms are compared against.
+ * Node data is the id the node had when it was created, ways are the weights.
+ */
+final class TestGraphs {
+
+    private TestGraphs() {
+    }
+
+    /**
+     * @return factories for every mutable directed graph implementation
+     */
+    static List<Supplier<Graph<Integer, Long>>> directed() {
+        List<Supplier<Graph<Integer, Long>>> graphs = new ArrayList<>();
+        graphs.add(Graph::linkedGraph);
+        graphs.add(Graph::arrayGraph);
+        return graphs;
+    }
+
+    /**
+     * Adds {@code nodes} nodes and {@code connections} random connections with weights from {@code 0} to {@code maxWeight}.
+     *
+     * @return the given graph
+     */
+    static Graph<Integer, Long> fill(Graph<Integer, Long> graph, Random random, int nodes, int connections, long maxWeight) {
+        List<Graph.Node<Integer, Long>> created = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            created.add(graph.newNode(i));
+        }
+        for (int i = 0; i < connections; i++) {
+            Graph.Node<Integer, Long> from = created.get(random.nextInt(nodes));
+            Graph.Node<Integer, Long> to = created.get(random.nextInt(nodes));
+            from.newConnection(to, (long) (random.nextDouble() * (maxWeight + 1)));
+        }
+        return graph;
+    }
+
+    /**
+     * Like {@link #fill(Graph, Random, int, int, long)}, but connections only lead from lower to higher ids.
+     */
+    static Graph<Integer, Long> fillAcyclic(Graph<Integer, Long> graph, Random random, int nodes, int connections, long minWeight, long maxWeight) {
+        List<Graph.Node<Integer, Long>> created = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            created.add(graph.newNode(i));
+        }
+        for (int i = 0; i < connections && nodes > 1; i++) {
+            int from = random.nextInt(nodes - 1);
+            int to = from + 1 + random.nextInt(nodes - from - 1);
+            created.get(from).newConnection(created.get(to), minWeight + (long) (random.nextDouble() * (maxWeight - minWeight + 1)));
+        }
+        return graph;
+    }
+
+    static Graph.Algorithm.DijkstraData<Integer, Long> data(Graph.Node<Integer, Long> start, Graph.Node<Integer, Long> target) {
+        return new Graph.Algorithm.DijkstraData<>(start, target, Graph.Node.Connection::way);
+    }
+
+    /**
+     * @return the sum of the ways of the path, or -1 if there is no path
+     */
+    static long cost(Graph.Path<Integer, Long> path) {
+        if (path == null) return -1;
+        long cost = 0;
+        for (Graph.Node.Connection<Integer, Long> connection : path) {
+            cost += connection.way();
+        }
+        return cost;
+    }
+
+    /**
+     * Checks that the connections of the path are connected and lead from {@code start} to {@code target}.
+     */
+    static void assertPath(Graph.Path<Integer, Long> path, Graph.Node<Integer, Long> start, Graph.Node<Integer, Long> target) {
+        Graph.Node<Integer, Long> current = start;
+        for (Graph.Node.Connection<Integer, Long> connection : path) {
+            if (!connection.from().equals(current)) throw new AssertionError("Path is not connected at " + connection);
+            current = connection.to();
+        }
+        if (!current.equals(target)) throw new AssertionError("Path ends at " + current + " instead of " + target);
+    }
+
+    /**
+     * Textbook Dijkstra over {@link Graph.Node#connections()}, independent of the searches of the library.
+     *
+     * @return the distances from the source indexed by node id, {@link Long#MAX_VALUE} for unreachable nodes
+     */
+    static long[] distances(Graph<Integer, Long> graph, Graph.Node<Integer, Long> source) {
+        long[] distances = new long[graph.nodeIdBound()];
+        Arrays.fill(distances, Long.MAX_VALUE);
+        distances[source.id()] = 0;
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        queue.add(new long[]{0, source.id()});
+        while (!queue.isEmpty()) {
+            long[] entry = queue.poll();
+            int node = (int) entry[1];
+            if (entry[0] > distances[node]) continue;
+            for (Graph.Node.Connection<Integer, Long> connection : graph.node(node).connections()) {
+                int to = connection.to().id();
+                long distance = entry[0] + connection.way();
+                if (distance < distances[to]) {
+                    distances[to] = distance;
+                    queue.add(new long[]{distance, to});
+                }
+            }
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,219 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TraversalTest {
+
+    @Test
+    void neighborsAndEdgesMatchTheConnections() {
+        List<Graph<Integer, Long>> graphs = new ArrayList<>();
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            graphs.add(TestGraphs.fill(factory.get(), new Random(5), 200, 900, 40));
+        }
+        graphs.add(Graph.compress(graphs.get(0)));
+        for (Graph<Integer, Long> graph : graphs) {
+            assertTraversal(graph);
+        }
+    }
+
+    @Test
+    void nodeAndIdAreInverse() {
+        for (Supplier<Graph<Integer, Long>> factory : TestGraphs.directed()) {
+            Graph<Integer, Long> graph = TestGraphs.fill(factory.get(), new Random(6), 50, 100, 10);
+            graph.removeNode(graph.node(10));
+            for (int id = 0; id < graph.nodes().size(); id++) {
+                assertEquals(id, graph.node(id).id());
+            }
+        }
+    }
+
+    @Test
+    void defaultsWorkForOtherImplementations() {
+        Random random = new Random(7);
+        FixedGraph graph = new FixedGraph(30);
+        for (int i = 0; i < 90; i++) {
+            graph.connect(random.nextInt(30), random.nextInt(30), random.nextInt(20));
+        }
+        for (int id = 0; id < 30; id++) {
+            Graph.Node<Integer, Long> node = graph.node(id);
+            assertEquals(id, node.id());
+            List<Graph.Node.Connection<Integer, Long>> origins = new ArrayList<>();
+            for (Graph.Node.Connection<Integer, Long> connection : graph.connections()) {
+                if (connection.to() == node) origins.add(connection);
+            }
+            assertEquals(origins, node.origins());
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> graph.node(30));
+        assertTraversal(graph);
+        Graph.Path<Integer, Long> path = graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(graph.node(0), graph.node(29))));
+        long expected = TestGraphs.distances(graph, graph.node(0))[29];
+        assertEquals(expected == Long.MAX_VALUE ? -1 : expected, TestGraphs.cost(path));
+    }
+
+    private static void assertTraversal(Graph<Integer, Long> graph) {
+        List<String> expected = new ArrayList<>();
+        for (int id = 0; id < graph.nodes().size(); id++) {
+            Graph.Node<Integer, Long> node = graph.node(id);
+            List<String> neighbors = new ArrayList<>();
+            for (Graph.Node.Connection<Integer, Long> connection : node.connections()) {
+                neighbors.add(connection.to().id() + ":" + connection.way());
+                expected.add(id + ">" + connection.to().id() + ":" + connection.way());
+            }
+            List<String> visited = new ArrayList<>();
+            graph.forEachNeighbor(id, (to, way) -> visited.add(to + ":" + way));
+            assertEquals(neighbors, visited);
+        }
+        List<String> edges = new ArrayList<>();
+        graph.forEachEdge((from, to, way) -> edges.add(from + ">" + to + ":" + way));
+        assertEquals(expected, edges);
+    }
+
+    /**
+     * A read-only graph that only implements the abstract methods, so every default of the interfaces is used.
+     */
+    private static final class FixedGraph implements Graph<Integer, Long> {
+        private final List<Graph.Node<Integer, Long>> nodes = new ArrayList<>();
+        private final List<Graph.Node.Connection<Integer, Long>> connections = new ArrayList<>();
+
+        private FixedGraph(int count) {
+            for (int i = 0; i < count; i++) {
+                nodes.add(new FixedNode(this, i));
+            }
+        }
+
+        private void connect(int from, int to, long way) {
+            FixedNode node = (FixedNode) nodes.get(from);
+            FixedConnection connection = new FixedConnection(node, nodes.get(to), way);
+            node.connections.add(connection);
+            connections.add(connection);
+        }
+
+        @Override
+        public Collection<Graph.Node<Integer, Long>> nodes() {
+            return Collections.unmodifiableList(nodes);
+        }
+
+        @Override
+        public Collection<Graph.Node.Connection<Integer, Long>> connections() {
+            return Collections.unmodifiableList(connections);
+        }
+
+        @Override
+        public Graph.Node<Integer, Long> newNode(Integer data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeNode(Graph.Node<Integer, Long> node) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Graph.Node.Connection<Integer, Long> newConnection(Graph.Node<Integer, Long> from, Graph.Node<Integer, Long> to, Long way) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeConnection(Graph.Node.Connection<Integer, Long> connection) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class FixedNode implements Graph.Node<Integer, Long> {
+        private final FixedGraph graph;
+        private final int data;
+        private final List<Graph.Node.Connection<Integer, Long>> connections = new ArrayList<>();
+
+        private FixedNode(FixedGraph graph, int data) {
+            this.graph = graph;
+            this.data = data;
+        }
+
+        @Override
+        public List<Graph.Node.Connection<Integer, Long>> connections() {
+            return Collections.unmodifiableList(connections);
+        }
+
+        @Override
+        public Graph.Node.Connection<Integer, Long> newConnection(Graph.Node<Integer, Long> to, Long way) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeConnection(Graph.Node.Connection<Integer, Long> connection) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Integer data() {
+            return data;
+        }
+
+        @Override
+        public Graph<Integer, Long> graph() {
+            return graph;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<Graph.Node<Integer, Long>> reachableNodes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return "FixedNode{" + data + '}';
+        }
+    }
+
+    private static final class FixedConnection implements Graph.Node.Connection<Integer, Long> {
+        private final Graph.Node<Integer, Long> from;
+        private final Graph.Node<Integer, Long> to;
+        private final long way;
+
+        private FixedConnection(Graph.Node<Integer, Long> from, Graph.Node<Integer, Long> to, long way) {
+            this.from = from;
+            this.to = to;
+            this.way = way;
+        }
+
+        @Override
+        public Graph.Node<Integer, Long> from() {
+            return from;
+        }
+
+        @Override
+        public Graph.Node<Integer, Long> to() {
+            return to;
+        }
+
+        @Override
+        public Graph<Integer, Long> graph() {
+            return from.graph();
+        }
+
+        @Override
+        public Long way() {
+            return way;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
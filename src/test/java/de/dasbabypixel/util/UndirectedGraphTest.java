@@ -0,0 +1,111 @@
+package de.dasbabypixel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UndirectedGraphTest {
+
+    @Test
+    void searchesMatchADirectedGraphWithBothDirections() {
+        Random random = new Random(31);
+        Graph<Integer, Long> undirected = Graph.undirectedLinkedGraph();
+        Graph<Integer, Long> directed = Graph.linkedGraph();
+        fillBoth(undirected, directed, random, 500, 1500);
+        assertTrue(undirected.undirected());
+        for (int source = 0; source < 500; source += 50) {
+            assertArrayEquals(TestGraphs.distances(directed, directed.node(source)), TestGraphs.distances(undirected, undirected.node(source)));
+            long[] distances = undirected.search(Graph.Algorithm.<Integer, Long>deltaStepping().withData(new Graph.Algorithm.SingleSourceData<>(undirected.node(source), Graph.Node.Connection::way)));
+            assertArrayEquals(TestGraphs.distances(directed, directed.node(source)), distances);
+        }
+        for (int i = 0; i < 50; i++) {
+            Graph.Node<Integer, Long> start = undirected.node(random.nextInt(500));
+            Graph.Node<Integer, Long> target = undirected.node(random.nextInt(500));
+            Graph.Path<Integer, Long> path = undirected.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(start, target)));
+            Graph.Path<Integer, Long> back = undirected.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(target, start)));
+            assertEquals(TestGraphs.cost(path), TestGraphs.cost(back));
+            if (path != null) TestGraphs.assertPath(path, start, target);
+        }
+        Graph.Algorithm.SpanningForest<Integer, Long> forest = undirected.search(Graph.Algorithm.<Integer, Long>minimumSpanningForest().withData(Graph.Node.Connection::way));
+        assertEquals(directed.search(Graph.Algorithm.<Integer, Long>minimumSpanningForest().withData(Graph.Node.Connection::way)).totalWeight(), forest.totalWeight());
+    }
+
+    @Test
+    void connectionsAreStoredOnce() {
+        Graph<Integer, Long> graph = Graph.undirectedLinkedGraph();
+        Graph<Integer, Long> directed = Graph.linkedGraph();
+        fillBoth(graph, directed, new Random(32), 100, 300);
+        assertEquals(300, graph.connections().size());
+        List<String> edges = new ArrayList<>();
+        graph.forEachEdge((from, to, way) -> {
+            assertTrue(from <= to);
+            edges.add(from + ">" + to + ":" + way);
+        });
+        assertEquals(300, edges.size());
+        List<String> connections = new ArrayList<>();
+        for (Graph.Node.Connection<Integer, Long> connection : graph.connections()) {
+            int from = Math.min(connection.from().id(), connection.to().id());
+            int to = Math.max(connection.from().id(), connection.to().id());
+            connections.add(from + ">" + to + ":" + connection.way());
+        }
+        Collections.sort(edges);
+        Collections.sort(connections);
+        assertEquals(edges, connections);
+        for (Graph.Node<Integer, Long> node : graph.nodes()) {
+            for (Graph.Node.Connection<Integer, Long> connection : node.connections()) {
+                assertEquals(node, connection.from());
+            }
+            for (Graph.Node.Connection<Integer, Long> connection : node.origins()) {
+                assertEquals(node, connection.to());
+            }
+        }
+        assertThrows(Graph.CycleException.class, graph::topologicalOrder);
+    }
+
+    @Test
+    void removalsAffectBothEndpoints() {
+        Graph<Integer, Long> graph = Graph.undirectedLinkedGraph();
+        Graph.Node<Integer, Long> a = graph.newNode(0);
+        Graph.Node<Integer, Long> b = graph.newNode(1);
+        Graph.Node<Integer, Long> c = graph.newNode(2);
+        a.newConnection(b, 1L);
+        b.newConnection(c, 2L);
+        c.newConnection(a, 3L);
+        // Removed from the perspective of the endpoint that did not create it
+        b.connections().stream().filter(connection -> connection.to().equals(a)).findFirst().orElseThrow(AssertionError::new).remove();
+        assertEquals(2, graph.connections().size());
+        assertEquals(1, a.connections().size());
+        assertEquals(1, b.connections().size());
+        assertEquals(5, TestGraphs.cost(graph.search(Graph.Algorithm.<Integer, Long>dijkstra().withData(TestGraphs.data(a, b)))));
+        graph.removeNode(c);
+        assertEquals(0, graph.connections().size());
+        assertTrue(a.connections().isEmpty());
+        assertTrue(b.origins().isEmpty());
+    }
+
+    /**
+     * Adds the same random connections to an undirected graph once and to a directed graph in both directions.
+     */
+    private static void fillBoth(Graph<Integer, Long> undirected, Graph<Integer, Long> directed, Random random, int nodes, int connections) {
+        for (int i = 0; i < nodes; i++) {
+            undirected.newNode(i);
+            directed.newNode(i);
+        }
+        for (int i = 0; i < connections; i++) {
+            int from = random.nextInt(nodes);
+            int to = random.nextInt(nodes);
+            long way = random.nextInt(100);
+            undirected.node(from).newConnection(undirected.node(to), way);
+            directed.node(from).newConnection(directed.node(to), way);
+            if (from != to) directed.node(to).newConnection(directed.node(from), way);
+        }
+    }
+}